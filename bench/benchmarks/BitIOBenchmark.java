@@ -0,0 +1,123 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utils.BitInputStream;
+import utils.BitOutputStream;
+import utils.UnsynchronizedBitOutputStream;
+
+/**
+ * Writes and reads raw bits, one at a time and several at once, through the
+ * synchronized and unsynchronized streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitIOBenchmark {
+
+	@Param({ "1048576" })
+	public int size;
+
+	private byte[] data;
+
+	@Setup
+	public void setUp ()
+	{
+		data = new byte[size];
+		new Random(17).nextBytes(data);
+	}
+
+	@Benchmark
+	public void writeBit (Megabytes counter) throws IOException
+	{
+		writeBits(new BitOutputStream(OutputStream.nullOutputStream(), false), 1);
+		counter.add(data.length);
+	}
+
+	@Benchmark
+	public void writeBitUnsynchronized (Megabytes counter) throws IOException
+	{
+		writeBits(new UnsynchronizedBitOutputStream(OutputStream.nullOutputStream(), false), 1);
+		counter.add(data.length);
+	}
+
+	@Benchmark
+	public void writeBits8 (Megabytes counter) throws IOException
+	{
+		writeBits(new UnsynchronizedBitOutputStream(OutputStream.nullOutputStream(), false), 8);
+		counter.add(data.length);
+	}
+
+	@Benchmark
+	public int readBit (Megabytes counter) throws IOException
+	{
+		BitInputStream bitInputStream = new BitInputStream(ByteBuffer.wrap(data));
+		int sum = 0;
+
+		for (long i = 8L * (data.length - 2); i > 0; i--)
+		{
+			sum += bitInputStream.readBit();
+		}
+
+		counter.add(data.length);
+		return sum;
+	}
+
+	@Benchmark
+	public long readBits8 (Megabytes counter) throws IOException
+	{
+		BitInputStream bitInputStream = new BitInputStream(ByteBuffer.wrap(data));
+		long sum = 0;
+
+		for (int i = data.length - 2; i > 0; i--)
+		{
+			sum += bitInputStream.readBits(8);
+		}
+
+		counter.add(data.length);
+		return sum;
+	}
+
+	private void writeBits (BitOutputStream stream, int count) throws IOException
+	{
+		if (count == 1)
+		{
+			for (byte b : data)
+			{
+				for (int shift = 7; shift >= 0; shift--)
+				{
+					stream.writeBit((b >>> shift) & 1);
+				}
+			}
+		}
+
+		else
+		{
+			for (byte b : data)
+			{
+				stream.writeBits(b, 8);
+			}
+		}
+
+		stream.close();
+	}
+}
@@ -0,0 +1,116 @@
+package benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import huffman.HuffmanDecoder;
+import huffman.HuffmanTree;
+import utils.BitInputStream;
+import utils.BitOutputStream;
+import utils.UnsynchronizedBitOutputStream;
+
+/**
+ * Encodes and decodes symbols in memory, without the container: one
+ * <code>writeCode</code> per symbol, one <code>readCode</code> tree walk per
+ * symbol, and the table-driven decoder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeBenchmark {
+
+	@Param({ "text", "skewed", "uniform", "binary" })
+	public String input;
+
+	@Param({ "65536", "1048576" })
+	public int size;
+
+	private byte[] data;
+	private byte[] encoded;
+	private HuffmanTree tree;
+	private HuffmanDecoder decoder;
+
+	@Setup
+	public void setUp () throws IOException
+	{
+		data = Inputs.create(input, size);
+		tree = new HuffmanTree(Inputs.countBytes(data));
+		decoder = tree.getDecoder();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitOutputStream bitOutputStream = new UnsynchronizedBitOutputStream(out, false);
+
+		for (byte b : data)
+		{
+			tree.writeCode((char) (b & 0xFF), bitOutputStream);
+		}
+
+		bitOutputStream.close();
+		encoded = out.toByteArray();
+	}
+
+	@Benchmark
+	public void writeCode (Megabytes counter) throws IOException
+	{
+		BitOutputStream bitOutputStream = new UnsynchronizedBitOutputStream(OutputStream.nullOutputStream(), false);
+
+		for (byte b : data)
+		{
+			tree.writeCode((char) (b & 0xFF), bitOutputStream);
+		}
+
+		bitOutputStream.close();
+		counter.add(data.length);
+	}
+
+	@Benchmark
+	public int readCode (Megabytes counter) throws IOException
+	{
+		BitInputStream bitInputStream = new BitInputStream(ByteBuffer.wrap(encoded));
+		int sum = 0;
+
+		for (int i = 0; i < data.length; i++)
+		{
+			sum += tree.readCode(bitInputStream);
+		}
+
+		counter.add(data.length);
+		return sum;
+	}
+
+	@Benchmark
+	public int decoderRead (Megabytes counter) throws IOException
+	{
+		BitInputStream bitInputStream = new BitInputStream(ByteBuffer.wrap(encoded));
+		int[] symbols = new int[8192];
+		int sum = 0;
+		int count = decoder.read(bitInputStream, symbols, 0, symbols.length);
+
+		while (count > 0)
+		{
+			sum += symbols[count - 1];
+			count = decoder.read(bitInputStream, symbols, 0, symbols.length);
+		}
+
+		counter.add(data.length);
+		return sum;
+	}
+}
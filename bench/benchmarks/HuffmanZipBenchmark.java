@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import huffmanzip.HuffmanZip;
+
+/**
+ * Compresses and decompresses whole files through the public entry points,
+ * including file I/O and the worker pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HuffmanZipBenchmark {
+
+	@Param({ "text", "skewed", "uniform", "binary" })
+	public String input;
+
+	@Param({ "1048576", "16777216", "134217728" })
+	public int size;
+
+	/** Worker threads of the encoder; the decoder always uses every core. */
+	@Param({ "1", "4" })
+	public int threads;
+
+	private Path directory;
+	private Path source;
+	private Path compressed;
+	private Path decoded;
+
+	@Setup
+	public void setUp () throws IOException
+	{
+		directory  = Files.createTempDirectory("hzbench");
+		source     = directory.resolve("encode.bin");
+		compressed = directory.resolve("decode.bin.hz");
+		decoded    = directory.resolve("decode.bin");
+
+		Files.write(source, Inputs.create(input, size));
+		HuffmanZip.encode(source.toString(), threads);
+		Files.move(Path.of(source + ".hz"), compressed);
+	}
+
+	/** The decoder asks before replacing its output, so remove it first. */
+	@Setup(Level.Invocation)
+	public void removeOutput () throws IOException
+	{
+		Files.deleteIfExists(decoded);
+	}
+
+	@TearDown
+	public void tearDown () throws IOException
+	{
+		for (Path path : new Path[] { source, Path.of(source + ".hz"), compressed, decoded })
+		{
+			Files.deleteIfExists(path);
+		}
+
+		Files.deleteIfExists(directory);
+	}
+
+	@Benchmark
+	public void encode (Megabytes counter) throws IOException
+	{
+		HuffmanZip.encode(source.toString(), threads);
+		counter.add(size);
+	}
+
+	@Benchmark
+	public void decode (Megabytes counter) throws IOException, ClassNotFoundException
+	{
+		HuffmanZip.decode(compressed.toString());
+		counter.add(size);
+	}
+}
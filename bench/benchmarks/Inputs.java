@@ -0,0 +1,90 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks. Every input is generated from a fixed
+ * seed, so runs on different machines and versions measure the same bytes.
+ *
+ * <ul>
+ * <li><code>text</code>: the war-and-peace fixture, repeated up to the size</li>
+ * <li><code>skewed</code>: bytes with geometrically decreasing frequencies, giving long codes</li>
+ * <li><code>uniform</code>: 64 symbols with equal frequencies, giving 6-bit codes</li>
+ * <li><code>binary</code>: random bytes, which do not compress</li>
+ * </ul>
+ */
+public final class Inputs {
+
+	/** Fixture used by the tests, relative to the repository root. */
+	private static final String FIXTURE = "test/resources/war-and-peace.txt";
+
+	private Inputs ()
+	{
+	}
+
+	/**
+	 * Builds an input.
+	 *
+	 * @param kind one of "text", "skewed", "uniform" or "binary"
+	 * @param size length of the input in bytes
+	 * @return the input
+	 * @throws IOException if the fixture cannot be read
+	 */
+	public static byte[] create (String kind, int size) throws IOException
+	{
+		byte[] data = new byte[size];
+		Random random = new Random(17);
+
+		switch (kind)
+		{
+			case "text":
+				byte[] fixture = Files.readAllBytes(Paths.get(FIXTURE));
+
+				for (int i = 0; i < size; i += fixture.length)
+				{
+					System.arraycopy(fixture, 0, data, i, Math.min(fixture.length, size - i));
+				}
+				break;
+			case "skewed":
+				for (int i = 0; i < size; i++)
+				{
+					data[i] = (byte) Math.min(255, Integer.numberOfTrailingZeros(random.nextInt() | (1 << 30)));
+				}
+				break;
+			case "uniform":
+				for (int i = 0; i < size; i++)
+				{
+					data[i] = (byte) ('0' + random.nextInt(64));
+				}
+				break;
+			case "binary":
+				random.nextBytes(data);
+				break;
+			default:
+				throw new IllegalArgumentException("unknown input " + kind);
+		}
+
+		return data;
+	}
+
+	/**
+	 * Counts the bytes of an input.
+	 *
+	 * @param data the input
+	 * @return the number of occurrences of each byte value
+	 */
+	public static long[] countBytes (byte[] data)
+	{
+		long[] frequencies = new long[256];
+
+		for (byte b : data)
+		{
+			frequencies[b & 0xFF]++;
+		}
+
+		return frequencies;
+	}
+}
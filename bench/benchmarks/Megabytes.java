@@ -0,0 +1,35 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the megabytes processed by a benchmark. JMH divides the counter by
+ * the measured time, so it shows up as MB/s next to the operation rate.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Megabytes {
+
+	/** Megabytes (10^6 bytes) processed in the current iteration. */
+	public double megabytes;
+
+	@Setup(Level.Iteration)
+	public void reset ()
+	{
+		megabytes = 0;
+	}
+
+	/**
+	 * Adds the bytes processed by one operation.
+	 *
+	 * @param bytes number of bytes
+	 */
+	public void add (long bytes)
+	{
+		megabytes += bytes / 1e6;
+	}
+}
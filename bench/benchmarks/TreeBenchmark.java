@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import huffman.CodeTable;
+import huffman.HuffmanCodeLengths;
+import huffman.HuffmanTree;
+import huffman.LengthLimitedCode;
+
+/**
+ * Builds codes from the frequencies of an input: the object tree from a
+ * <code>TreeMap</code> and from an array, the array-based code lengths, and
+ * length-limited lengths. The tree is built once per block, so this is the
+ * fixed cost of every block whatever its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmark {
+
+	@Param({ "text", "skewed", "uniform", "binary" })
+	public String input;
+
+	private long[] frequencies;
+	private TreeMap<Character, Integer> map;
+
+	@Setup
+	public void setUp () throws IOException
+	{
+		frequencies = Inputs.countBytes(Inputs.create(input, 1 << 20));
+		map = new TreeMap<> ();
+
+		for (int symbol = 0; symbol < frequencies.length; symbol++)
+		{
+			if (frequencies[symbol] > 0)
+			{
+				map.put((char) symbol, (int) frequencies[symbol]);
+			}
+		}
+	}
+
+	@Benchmark
+	public CodeTable treeFromMap ()
+	{
+		return new HuffmanTree(map).getCanonicalCodeTable();
+	}
+
+	@Benchmark
+	public CodeTable treeFromArray ()
+	{
+		return new HuffmanTree(frequencies).getCanonicalCodeTable();
+	}
+
+	@Benchmark
+	public CodeTable codeLengths ()
+	{
+		return CodeTable.canonical(HuffmanCodeLengths.compute(frequencies));
+	}
+
+	@Benchmark
+	public int[] lengthLimited11 ()
+	{
+		return LengthLimitedCode.lengths(frequencies, 11);
+	}
+}
@@ -0,0 +1,319 @@
+package huffman;
+
+import java.io.IOException;
+import utils.BitInputStream;
+import utils.BitOutputStream;
+
+/**
+ * A dense lookup table mapping each symbol to its Huffman code.
+ *
+ * <p>
+ * The table is indexed directly by symbol value, so encoding a symbol is a
+ * single array lookup instead of a walk from the root of the tree. Codes are
+ * stored right-aligned in a <code>long</code>, most significant bit first,
+ * together with their length in bits.
+ * </p>
+ */
+public class CodeTable {
+
+	/** Code bits of each symbol, right-aligned. */
+	private final long[] codes;
+
+	/** Code length of each symbol in bits, 0 if the symbol has no code. */
+	private final int[]  lengths;
+
+	/** Whether each symbol has an entry (a code of length 0 is valid for a single-symbol tree). */
+	private final boolean[] present;
+
+	/** Largest symbol that can be stored in a serialized table. */
+	public static final int MAX_SYMBOL = (1 << 21) - 1;
+
+	/** Longest code length that can be stored in a serialized table. */
+	public static final int MAX_LENGTH = 60;
+
+	/**
+	 * Constructs an empty table able to hold symbols in <code>[0, size)</code>.
+	 *
+	 * @param size one more than the largest symbol value
+	 */
+	CodeTable (int size)
+	{
+		codes   = new long[size];
+		lengths = new int[size];
+		present = new boolean[size];
+	}
+
+	/**
+	 * Assigns a code to a symbol.
+	 *
+	 * @param symbol the symbol
+	 * @param code   the code bits, right-aligned
+	 * @param length the code length in bits
+	 */
+	void put (int symbol, long code, int length)
+	{
+		codes[symbol]   = code;
+		lengths[symbol] = length;
+		present[symbol] = true;
+	}
+
+	/**
+	 * Builds the canonical Huffman code for the given code lengths. Symbols are
+	 * ordered by code length, then by value, and receive consecutive codes, so
+	 * the lengths alone are enough to rebuild the exact same table.
+	 *
+	 * @param lengths code length of each symbol, 0 for symbols without a code
+	 * @return the canonical code table
+	 * @throws IllegalArgumentException if a length is out of range or the lengths
+	 *         do not describe a prefix code
+	 */
+	public static CodeTable canonical (int[] lengths)
+	{
+		CodeTable table = new CodeTable(lengths.length);
+		int[] countPerLength = new int[MAX_LENGTH + 1];
+
+		for (int length : lengths)
+		{
+			if (length < 0 || length > MAX_LENGTH)
+			{
+				throw new IllegalArgumentException("invalid code length " + length);
+			}
+
+			countPerLength[length]++;
+		}
+
+		countPerLength[0] = 0;
+
+		// first code of each length
+		long[] nextCode = new long[MAX_LENGTH + 1];
+		long code = 0;
+
+		for (int length = 1; length <= MAX_LENGTH; length++)
+		{
+			code = (code + countPerLength[length - 1]) << 1;
+			nextCode[length] = code;
+
+			if (countPerLength[length] > 0 && code + countPerLength[length] - 1 > mask(length))
+			{
+				throw new IllegalArgumentException("code lengths do not describe a prefix code");
+			}
+		}
+
+		for (int symbol = 0; symbol < lengths.length; symbol++)
+		{
+			int length = lengths[symbol];
+
+			if (length > 0)
+			{
+				table.put(symbol, nextCode[length]++, length);
+			}
+		}
+
+		return table;
+	}
+
+	/**
+	 * Reads a table written by <code>writeTo</code> and rebuilds its canonical codes.
+	 *
+	 * @param stream BitInputStream to read the table from
+	 * @return the canonical code table
+	 * @throws IOException if an I/O error occurs, or if the table is malformed
+	 */
+	public static CodeTable readFrom (BitInputStream stream) throws IOException
+	{
+		int count = (int) stream.readBits(21);
+
+		if (count == 0)
+		{
+			return new CodeTable(0);
+		}
+
+		int lengthBits = (int) stream.readBits(6);
+		int[] symbols = new int[count];
+		int[] lengths = new int[count];
+		int symbol = -1;
+
+		for (int i = 0; i < count; i++)
+		{
+			symbol += readGamma(stream);
+
+			if (symbol > MAX_SYMBOL)
+			{
+				throw new IOException("invalid symbol in code table");
+			}
+
+			symbols[i] = symbol;
+			lengths[i] = (int) stream.readBits(lengthBits);
+		}
+
+		int[] byLength = new int[symbol + 1];
+
+		for (int i = 0; i < count; i++)
+		{
+			byLength[symbols[i]] = lengths[i];
+		}
+
+		try
+		{
+			return canonical(byLength);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("invalid code table: " + e.getMessage());
+		}
+	}
+
+	// ----- GETTER METHODS -----
+
+	/**
+	 * Returns the code bits of a symbol, right-aligned.
+	 *
+	 * @param symbol the symbol
+	 * @return the code bits
+	 */
+	public long getCode (int symbol)
+	{
+		return codes[symbol];
+	}
+
+	/**
+	 * Returns the code length of a symbol in bits.
+	 *
+	 * @param symbol the symbol
+	 * @return the code length
+	 */
+	public int getLength (int symbol)
+	{
+		return lengths[symbol];
+	}
+
+	/**
+	 * Returns the number of slots in this table, one more than the largest symbol.
+	 *
+	 * @return the table size
+	 */
+	public int size ()
+	{
+		return codes.length;
+	}
+
+	/**
+	 * Returns the number of symbols that have a code.
+	 *
+	 * @return the symbol count
+	 */
+	public int getSymbolCount ()
+	{
+		int count = 0;
+
+		for (boolean p : present)
+		{
+			if (p)
+			{
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	// ----- LOGIC METHODS -----
+
+	/**
+	 * Checks whether a symbol has a code in this table.
+	 *
+	 * @param symbol the symbol to check
+	 * @return true if the symbol can be encoded
+	 */
+	public boolean contains (int symbol)
+	{
+		return symbol >= 0 && symbol < present.length && present[symbol];
+	}
+
+	/**
+	 * Writes the code of a symbol to a BitOutputStream.
+	 *
+	 * @param symbol symbol to encode
+	 * @param stream BitOutputStream to write bits into
+	 * @throws IOException if an I/O error occurs, or if the symbol has no code
+	 */
+	public void writeCode (int symbol, BitOutputStream stream) throws IOException
+	{
+		if (!contains(symbol))
+		{
+			throw new IOException("no code for symbol " + symbol);
+		}
+
+		stream.writeBits(codes[symbol], lengths[symbol]);
+	}
+
+	/**
+	 * Writes the code lengths of this table to a BitOutputStream, in a compact form
+	 * from which <code>readFrom</code> rebuilds the canonical codes: the symbol count,
+	 * then for every symbol in increasing order the gap from the previous symbol
+	 * (Elias-gamma coded) and its code length.
+	 *
+	 * @param stream BitOutputStream to write the table into
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void writeTo (BitOutputStream stream) throws IOException
+	{
+		int count = getSymbolCount();
+		stream.writeBits(count, 21);
+
+		if (count == 0)
+		{
+			return;
+		}
+
+		int maxLength = 0;
+
+		for (int length : lengths)
+		{
+			maxLength = Math.max(maxLength, length);
+		}
+
+		int lengthBits = 64 - Long.numberOfLeadingZeros(maxLength);
+		stream.writeBits(lengthBits, 6);
+
+		int previous = -1;
+
+		for (int symbol = 0; symbol < present.length; symbol++)
+		{
+			if (present[symbol])
+			{
+				writeGamma(symbol - previous, stream);
+				stream.writeBits(lengths[symbol], lengthBits);
+				previous = symbol;
+			}
+		}
+	}
+
+	private static void writeGamma (int value, BitOutputStream stream) throws IOException
+	{
+		int bits = 32 - Integer.numberOfLeadingZeros(value);
+
+		stream.writeBits(0, bits - 1);
+		stream.writeBits(value, bits);
+	}
+
+	private static int readGamma (BitInputStream stream) throws IOException
+	{
+		int zeros = 0;
+
+		while (stream.readBit() == 0)
+		{
+			if (++zeros > 21)
+			{
+				throw new IOException("invalid symbol gap in code table");
+			}
+		}
+
+		return (int) ((1L << zeros) | stream.readBits(zeros));
+	}
+
+	private static long mask (int bits)
+	{
+		return bits >= 64 ? -1L : (1L << bits) - 1;
+	}
+}
@@ -13,7 +13,7 @@ public class HNode {
 	/** The symbols contained in this node. */
 	private String symbols;
 	/** The cumulative frequency of the symbols in this node. */
-	private int    frequency;
+	private long   frequency;
 
     /**
      * Constructs a leaf node with a single character and its frequency.
@@ -21,7 +21,7 @@ public class HNode {
      * @param c the character stored in this leaf node
      * @param f the frequency of the character
      */
-    public HNode (char c, int f)
+    public HNode (char c, long f)
 	{
 		left  = null;
 		right = null;
@@ -83,7 +83,7 @@ public class HNode {
      * 
      * @return the frequency
      */
-    public int getFrequency() 
+    public long getFrequency() 
     {
         return frequency;
     }
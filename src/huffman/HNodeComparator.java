@@ -24,7 +24,7 @@ public class HNodeComparator implements Comparator<HNode> {
     @Override
     public int compare(HNode a, HNode b) 
 	{
-        int freqCompare = Integer.compare(a.getFrequency(), b.getFrequency());
+        int freqCompare = Long.compare(a.getFrequency(), b.getFrequency());
         
         if (freqCompare != 0) 
         {
@@ -0,0 +1,184 @@
+package huffman;
+
+/**
+ * Computes Huffman code lengths with primitive arrays, without building a
+ * tree of node objects.
+ *
+ * <p>
+ * The symbols are sorted by frequency once, then merged with the linear
+ * two-queue method: the leaves wait in one queue, and every merged node is
+ * appended to a second queue, which is sorted by construction because merged
+ * weights never decrease. The two lightest nodes are always at the head of
+ * one of the queues, so each merge costs constant time. Ties go to the leaf
+ * queue, then to the lower symbol, so the lengths are deterministic.
+ * </p>
+ *
+ * <p>
+ * Node <code>i &lt; n</code> is the <code>i</code>-th lightest leaf, and the
+ * merged nodes follow in creation order, the root last. Since a parent is
+ * always created after its children, depths are resolved in one backward pass
+ * over the parent links.
+ * </p>
+ */
+public final class HuffmanCodeLengths {
+
+	private HuffmanCodeLengths ()
+	{
+	}
+
+	/**
+	 * Computes the Huffman code length of every symbol. A single symbol gets a
+	 * code of length 1. Codes longer than {@link CodeTable#MAX_LENGTH} are
+	 * limited to it.
+	 *
+	 * @param frequencies frequency of each symbol, indexed by symbol value; 0 for symbols without a code
+	 * @return code length of each symbol, 0 for symbols without a code
+	 */
+	public static int[] compute (long[] frequencies)
+	{
+		int[] lengths = new int[frequencies.length];
+		int[] leaves  = sortedSymbols(frequencies);
+		int n = leaves.length;
+
+		if (n == 0)
+		{
+			return lengths;
+		}
+
+		if (n == 1)
+		{
+			lengths[leaves[0]] = 1;
+			return lengths;
+		}
+
+		long[] weight = new long[2 * n - 1];
+		int[]  parent = new int[2 * n - 1];
+
+		for (int i = 0; i < n; i++)
+		{
+			weight[i] = frequencies[leaves[i]];
+		}
+
+		int leaf   = 0;  // head of the leaf queue
+		int merged = n;  // head of the merged queue
+		int next   = n;  // next merged node to create
+
+		while (next < 2 * n - 1)
+		{
+			int a = (leaf < n && (merged == next || weight[leaf] <= weight[merged])) ? leaf++ : merged++;
+			int b = (leaf < n && (merged == next || weight[leaf] <= weight[merged])) ? leaf++ : merged++;
+
+			weight[next] = weight[a] + weight[b];
+			parent[a] = next;
+			parent[b] = next;
+			next++;
+		}
+
+		// reuse the weights as depths, the root being the last node
+		long[] depth = weight;
+		depth[2 * n - 2] = 0;
+		int maxLength = 0;
+
+		for (int i = 2 * n - 3; i >= 0; i--)
+		{
+			depth[i] = depth[parent[i]] + 1;
+		}
+
+		for (int i = 0; i < n; i++)
+		{
+			lengths[leaves[i]] = (int) depth[i];
+			maxLength = Math.max(maxLength, lengths[leaves[i]]);
+		}
+
+		if (maxLength > CodeTable.MAX_LENGTH)
+		{
+			return LengthLimitedCode.lengths(frequencies, CodeTable.MAX_LENGTH);
+		}
+
+		return lengths;
+	}
+
+	/**
+	 * Computes the canonical code table of a frequency array.
+	 *
+	 * @param frequencies frequency of each symbol, indexed by symbol value
+	 * @param maxLength   the longest code allowed, in bits, or 0 for no limit
+	 * @return the canonical code table
+	 * @throws IllegalArgumentException if <code>maxLength</code> is too small for the number of symbols
+	 */
+	public static CodeTable canonicalTable (long[] frequencies, int maxLength)
+	{
+		int[] lengths = compute(frequencies);
+
+		if (maxLength > 0)
+		{
+			for (int length : lengths)
+			{
+				if (length > maxLength)
+				{
+					return CodeTable.canonical(LengthLimitedCode.lengths(frequencies, maxLength));
+				}
+			}
+		}
+
+		return CodeTable.canonical(lengths);
+	}
+
+	/**
+	 * Returns the symbols with a non-zero frequency, sorted by frequency, then by
+	 * symbol. The symbols start in increasing order and the merge sort is stable.
+	 */
+	private static int[] sortedSymbols (long[] frequencies)
+	{
+		int n = 0;
+
+		for (long frequency : frequencies)
+		{
+			if (frequency > 0)
+			{
+				n++;
+			}
+		}
+
+		int[] symbols = new int[n];
+
+		for (int symbol = 0, i = 0; symbol < frequencies.length; symbol++)
+		{
+			if (frequencies[symbol] > 0)
+			{
+				symbols[i++] = symbol;
+			}
+		}
+
+		int[] buffer = new int[n];
+
+		for (int width = 1; width < n; width *= 2)
+		{
+			for (int lo = 0; lo < n - width; lo += 2 * width)
+			{
+				int mid = lo + width;
+				int hi  = Math.min(lo + 2 * width, n);
+				int i = lo, j = mid, k = lo;
+
+				while (i < mid && j < hi)
+				{
+					buffer[k++] = frequencies[symbols[j]] < frequencies[symbols[i]] ? symbols[j++] : symbols[i++];
+				}
+
+				while (i < mid)
+				{
+					buffer[k++] = symbols[i++];
+				}
+
+				while (j < hi)
+				{
+					buffer[k++] = symbols[j++];
+				}
+
+				System.arraycopy(buffer, lo, symbols, lo, hi - lo);
+			}
+		}
+
+		return symbols;
+	}
+}
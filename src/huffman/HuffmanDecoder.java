@@ -0,0 +1,357 @@
+package huffman;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import utils.BitInputStream;
+
+/**
+ * Table-driven decoder for Huffman codes.
+ *
+ * <p>
+ * Instead of following one tree pointer per bit, the decoder peeks the next
+ * {@value #PRIMARY_BITS} bits of the stream and resolves a whole symbol with a
+ * single lookup in a primary table. Codes longer than the primary table are
+ * resolved through secondary tables, one extra lookup per level. When two
+ * codes fit together in the primary window the entry holds both symbols,
+ * so a single lookup decodes two symbols at once.
+ * </p>
+ *
+ * <p>
+ * Every table entry is packed into a <code>long</code>:
+ * </p>
+ * <pre>
+ * bits 62-63  entry type (invalid, one symbol, two symbols, sub-table)
+ * bits  0- 7  length of the first code, or width of the sub-table
+ * bits  8-15  length of the second code
+ * bits 16-39  first symbol, or offset of the sub-table
+ * bits 40-61  second symbol
+ * </pre>
+ */
+public class HuffmanDecoder {
+
+	/** Number of bits resolved by the primary table. */
+	public static final int PRIMARY_BITS = 11;
+
+	/** Number of bits resolved by each secondary table. */
+	private static final int SECONDARY_BITS = 8;
+
+	private static final long TYPE_INVALID = 0L;
+	private static final long TYPE_ONE     = 1L;
+	private static final long TYPE_TWO     = 2L;
+	private static final long TYPE_TABLE   = 3L;
+
+	/** Largest symbol that fits in the second symbol field of an entry. */
+	private static final int MAX_PAIRED_SYMBOL = (1 << 22) - 1;
+
+	/** Primary table followed by all secondary tables. */
+	private final long[] table;
+
+	/** Number of bits indexing the primary table. */
+	private final int primaryBits;
+
+	/**
+	 * Constructs a decoder for the codes of a code table.
+	 *
+	 * @param codeTable table mapping symbols to their codes
+	 */
+	public HuffmanDecoder (CodeTable codeTable)
+	{
+		List<Integer> symbols = new ArrayList<> ();
+		int maxLength = 0;
+
+		for (int symbol = 0; symbol < codeTable.size(); symbol++)
+		{
+			if (codeTable.contains(symbol) && codeTable.getLength(symbol) > 0)
+			{
+				symbols.add(symbol);
+				maxLength = Math.max(maxLength, codeTable.getLength(symbol));
+			}
+		}
+
+		primaryBits = Math.max(1, Math.min(PRIMARY_BITS, maxLength));
+
+		List<long[]> tables = new ArrayList<> ();
+		long[] primary = new long[1 << primaryBits];
+		tables.add(primary);
+
+		int size = fill(primary, primaryBits, 0, symbols, codeTable, tables, primary.length);
+
+		table = new long[size];
+		int offset = 0;
+
+		for (long[] t : tables)
+		{
+			System.arraycopy(t, 0, table, offset, t.length);
+			offset += t.length;
+		}
+
+		pairSymbols(codeTable);
+	}
+
+	/**
+	 * Fills a table with the codes that share a prefix of <code>skip</code> bits,
+	 * creating sub-tables for the codes that do not fit.
+	 *
+	 * @return the total number of entries allocated so far
+	 */
+	private int fill (long[] t, int width, int skip, List<Integer> symbols,
+	                  CodeTable codeTable, List<long[]> tables, int allocated)
+	{
+		List<List<Integer>> overflow = new ArrayList<> ();
+
+		for (int i = 0; i < t.length; i++)
+		{
+			overflow.add(null);
+		}
+
+		for (int symbol : symbols)
+		{
+			int  length = codeTable.getLength(symbol) - skip;
+			long code   = codeTable.getCode(symbol) & mask(length);
+
+			if (length <= width)
+			{
+				int first = (int) (code << (width - length));
+				int count = 1 << (width - length);
+
+				for (int i = first; i < first + count; i++)
+				{
+					t[i] = entry(TYPE_ONE, length, 0, symbol, 0);
+				}
+			}
+
+			else
+			{
+				int index = (int) (code >>> (length - width));
+
+				if (overflow.get(index) == null)
+				{
+					overflow.set(index, new ArrayList<> ());
+				}
+
+				overflow.get(index).add(symbol);
+			}
+		}
+
+		for (int i = 0; i < t.length; i++)
+		{
+			List<Integer> group = overflow.get(i);
+
+			if (group == null)
+			{
+				continue;
+			}
+
+			int longest = 0;
+
+			for (int symbol : group)
+			{
+				longest = Math.max(longest, codeTable.getLength(symbol) - skip - width);
+			}
+
+			int subWidth = Math.min(SECONDARY_BITS, longest);
+			long[] sub = new long[1 << subWidth];
+			int offset = allocated;
+
+			tables.add(sub);
+			t[i] = entry(TYPE_TABLE, subWidth, 0, offset, 0);
+
+			allocated = fill(sub, subWidth, skip + width, group, codeTable, tables, allocated + sub.length);
+		}
+
+		return allocated;
+	}
+
+	/**
+	 * Upgrades primary entries to two-symbol entries wherever the bits left
+	 * after the first code hold a complete second code.
+	 */
+	private void pairSymbols (CodeTable codeTable)
+	{
+		int size = 1 << primaryBits;
+		long[] single = new long[size];
+		System.arraycopy(table, 0, single, 0, size);
+
+		for (int i = 0; i < size; i++)
+		{
+			long first = single[i];
+
+			if (type(first) != TYPE_ONE || symbol1(first) > MAX_PAIRED_SYMBOL)
+			{
+				continue;
+			}
+
+			int rest = primaryBits - length1(first);
+
+			if (rest == 0)
+			{
+				continue;
+			}
+
+			long second = single[(i << length1(first)) & (size - 1)];
+
+			if (type(second) == TYPE_ONE && length1(second) <= rest && symbol1(second) <= MAX_PAIRED_SYMBOL)
+			{
+				table[i] = entry(TYPE_TWO, length1(first), length1(second), symbol1(first), symbol1(second));
+			}
+		}
+	}
+
+	// ----- LOGIC METHODS -----
+
+	/**
+	 * Reads the next symbol from a BitInputStream.
+	 *
+	 * @param stream BitInputStream to read bits from
+	 * @return decoded symbol
+	 * @throws IOException if an I/O error occurs, or if the stream holds no valid code
+	 */
+	public int readSymbol (BitInputStream stream) throws IOException
+	{
+		if (stream.ensureBits(1) == 0)
+		{
+			throw new IOException("no bits left in the stream");
+		}
+
+		long e = table[(int) stream.peekBits(primaryBits)];
+		int width = primaryBits;
+
+		while (type(e) == TYPE_TABLE)
+		{
+			stream.skipBits(width);
+			width = length1(e);
+			e = table[symbol1(e) + (int) stream.peekBits(width)];
+		}
+
+		// the first code of a pair entry is a code of its own
+		if (type(e) == TYPE_INVALID || stream.ensureBits(length1(e)) < length1(e))
+		{
+			throw new IOException("invalid code in the stream");
+		}
+
+		stream.skipBits(length1(e));
+		return symbol1(e);
+	}
+
+	/**
+	 * Decodes up to <code>len</code> symbols from a BitInputStream.
+	 *
+	 * @param stream BitInputStream to read bits from
+	 * @param dst    array receiving the decoded symbols
+	 * @param off    index of the first symbol in <code>dst</code>
+	 * @param len    maximum number of symbols to decode
+	 * @return the number of symbols decoded, 0 if the stream has no bits left
+	 * @throws IOException if an I/O error occurs, or if the stream holds an invalid code
+	 */
+	public int read (BitInputStream stream, int[] dst, int off, int len) throws IOException
+	{
+		return read(stream, dst, off, len, -1);
+	}
+
+	/**
+	 * Decodes up to <code>len</code> symbols from a BitInputStream, stopping
+	 * right after an escape symbol, so that the caller can read the raw bits
+	 * that follow its code.
+	 *
+	 * @param stream BitInputStream to read bits from
+	 * @param dst    array receiving the decoded symbols
+	 * @param off    index of the first symbol in <code>dst</code>
+	 * @param len    maximum number of symbols to decode
+	 * @param escape symbol after which decoding stops, or -1 for none
+	 * @return the number of symbols decoded, 0 if the stream has no bits left;
+	 *         if the last one is the escape symbol, the stream is positioned after its code
+	 * @throws IOException if an I/O error occurs, or if the stream holds an invalid code
+	 */
+	public int read (BitInputStream stream, int[] dst, int off, int len, int escape) throws IOException
+	{
+		int n = 0;
+
+		while (n < len && stream.ensureBits(1) > 0)
+		{
+			long e = table[(int) stream.peekBits(primaryBits)];
+
+			if (type(e) == TYPE_TWO)
+			{
+				int both = length1(e) + length2(e);
+
+				if (n + 1 < len && symbol1(e) != escape && stream.ensureBits(both) == both)
+				{
+					stream.skipBits(both);
+					dst[off + n++] = symbol1(e);
+					dst[off + n++] = symbol2(e);
+
+					if (symbol2(e) == escape)
+					{
+						return n;
+					}
+
+					continue;
+				}
+
+				e = entry(TYPE_ONE, length1(e), 0, symbol1(e), 0);
+			}
+
+			int width = primaryBits;
+
+			while (type(e) == TYPE_TABLE)
+			{
+				stream.skipBits(width);
+				width = length1(e);
+				e = table[symbol1(e) + (int) stream.peekBits(width)];
+			}
+
+			if (type(e) == TYPE_INVALID || stream.ensureBits(length1(e)) < length1(e))
+			{
+				throw new IOException("invalid code in the stream");
+			}
+
+			stream.skipBits(length1(e));
+			dst[off + n++] = symbol1(e);
+
+			if (symbol1(e) == escape)
+			{
+				return n;
+			}
+		}
+
+		return n;
+	}
+
+	// ----- ENTRY PACKING -----
+
+	private static long entry (long type, int length1, int length2, int symbol1, int symbol2)
+	{
+		return (type << 62) | ((long) symbol2 << 40) | ((long) symbol1 << 16) | (length2 << 8) | length1;
+	}
+
+	private static long type (long e)
+	{
+		return e >>> 62;
+	}
+
+	private static int length1 (long e)
+	{
+		return (int) (e & 0xFF);
+	}
+
+	private static int length2 (long e)
+	{
+		return (int) ((e >>> 8) & 0xFF);
+	}
+
+	private static int symbol1 (long e)
+	{
+		return (int) ((e >>> 16) & 0xFFFFFF);
+	}
+
+	private static int symbol2 (long e)
+	{
+		return (int) ((e >>> 40) & 0x3FFFFF);
+	}
+
+	private static long mask (int bits)
+	{
+		return bits >= 64 ? -1L : (1L << bits) - 1;
+	}
+}
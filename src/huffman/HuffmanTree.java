@@ -22,6 +22,12 @@ public class HuffmanTree {
 	/** Root node of the Huffman Tree */
     private HNode root;
 
+	/** Code of every symbol in the tree, built once after construction */
+	private CodeTable codeTable;
+
+	/** Table-driven decoder for the codes of this tree, built on first use */
+	private HuffmanDecoder decoder;
+
     /**
      * Constructs a Huffman Tree from character frequencies.
      *
@@ -41,6 +47,33 @@ public class HuffmanTree {
             pQueue.add(hNode);
 		}
 		
+		int size = frequencies.isEmpty() ? 0 : frequencies.lastKey() + 1;
+		build(pQueue, size);
+	}
+
+    /**
+     * Constructs a Huffman Tree from a dense frequency array, such as the
+     * byte histogram of a binary file. Symbols with a frequency of 0 get no code.
+     *
+     * @param frequencies frequency of each symbol, indexed by symbol value
+     */
+    public HuffmanTree (long[] frequencies)
+	{
+		PriorityQueue<HNode> pQueue = new PriorityQueue<> (new HNodeComparator());
+
+		for (int symbol = 0; symbol < frequencies.length; symbol++)
+		{
+			if (frequencies[symbol] > 0)
+			{
+				pQueue.add(new HNode((char) symbol, frequencies[symbol]));
+			}
+		}
+
+		build(pQueue, frequencies.length);
+	}
+
+	private void build (PriorityQueue<HNode> pQueue, int size)
+	{
 		while (pQueue.size() > 1)
 		{
 			HNode left = pQueue.poll();
@@ -52,6 +85,118 @@ public class HuffmanTree {
 		}
 		
 		root = pQueue.poll();
+		codeTable = new CodeTable(size);
+
+		if (root != null)
+		{
+			fillCodeTable(codeTable, root, 0L, 0);
+		}
+	}
+
+	private void fillCodeTable (CodeTable table, HNode curr, long code, int length)
+	{
+		if (curr.isLeaf())
+		{
+			table.put(curr.getSymbol(), code, length);
+		}
+
+		else
+		{
+			fillCodeTable(table, curr.getLeft(), code << 1, length + 1);
+			fillCodeTable(table, curr.getRight(), (code << 1) | 1, length + 1);
+		}
+	}
+
+    // ----- GETTER METHODS -----
+
+	/**
+     * Returns the precomputed code table of this tree.
+     *
+     * @return table mapping every symbol of the tree to its code
+     */
+    public CodeTable getCodeTable ()
+	{
+		return codeTable;
+	}
+
+	/**
+     * Returns the canonical code table with the same code lengths as this tree.
+     * A tree holding a single symbol gives it a code of length 1.
+     *
+     * @return canonical code table, which can be rebuilt from its code lengths alone
+     */
+    public CodeTable getCanonicalCodeTable ()
+	{
+		int[] lengths = new int[codeTable.size()];
+
+		for (int symbol = 0; symbol < lengths.length; symbol++)
+		{
+			if (codeTable.contains(symbol))
+			{
+				lengths[symbol] = Math.max(1, codeTable.getLength(symbol));
+			}
+		}
+
+		return CodeTable.canonical(lengths);
+	}
+
+	/**
+     * Returns a canonical code table whose codes are at most <code>maxLength</code>
+     * bits long. If the tree already respects the limit, this is the table of
+     * {@link #getCanonicalCodeTable()}; otherwise the lengths are recomputed from
+     * the frequencies of the leaves with {@link LengthLimitedCode}, which costs
+     * the fewest extra bits.
+     *
+     * @param maxLength the longest code allowed, in bits
+     * @return canonical code table with bounded code lengths
+     * @throws IllegalArgumentException if <code>maxLength</code> is out of range, or too small
+     *         for the number of symbols
+     */
+    public CodeTable getCanonicalCodeTable (int maxLength)
+	{
+		CodeTable table = getCanonicalCodeTable();
+
+		for (int symbol = 0; symbol < table.size(); symbol++)
+		{
+			if (table.getLength(symbol) > maxLength)
+			{
+				long[] frequencies = new long[table.size()];
+				collectFrequencies(root, frequencies);
+
+				return CodeTable.canonical(LengthLimitedCode.lengths(frequencies, maxLength));
+			}
+		}
+
+		return table;
+	}
+
+	private void collectFrequencies (HNode curr, long[] frequencies)
+	{
+		if (curr.isLeaf())
+		{
+			frequencies[curr.getSymbol()] = Math.max(1, curr.getFrequency());
+		}
+
+		else
+		{
+			collectFrequencies(curr.getLeft(), frequencies);
+			collectFrequencies(curr.getRight(), frequencies);
+		}
+	}
+
+	/**
+     * Returns a table-driven decoder for the codes of this tree.
+     *
+     * @return decoder resolving whole symbols per table lookup
+     */
+    public HuffmanDecoder getDecoder ()
+	{
+		if (decoder == null)
+		{
+			decoder = new HuffmanDecoder(codeTable);
+		}
+
+		return decoder;
 	}
 
     // ----- LOGIC METHODS -----
@@ -163,24 +308,7 @@ public class HuffmanTree {
      */
     public void writeCode (char symbol, BitOutputStream stream) throws IOException
 	{
-		HNode curHNode = root;
-		
-		while (!curHNode.isLeaf())
-		{
-			HNode curLeft = curHNode.getLeft();
-            HNode curRight = curHNode.getRight();
-
-			if (curLeft.contains(symbol)) 
-			{
-	            stream.writeBit(0);
-	            curHNode = curLeft;
-	        }
-	        else
-	        {
-	        	stream.writeBit(1);
-	            curHNode = curRight;
-	        }
-		}
+		codeTable.writeCode(symbol, stream);
 	}
 
 	/**
@@ -0,0 +1,159 @@
+package huffman;
+
+import java.util.Arrays;
+
+/**
+ * Computes optimal code lengths under a maximum code length, with the
+ * package-merge algorithm.
+ *
+ * <p>
+ * A plain Huffman tree puts no bound on the depth of rare symbols, so skewed
+ * distributions can produce codes too long for a fixed-size lookup table.
+ * Package-merge finds, among all prefix codes whose codes are at most
+ * <code>maxLength</code> bits, one with the smallest encoded size.
+ * </p>
+ *
+ * <p>
+ * The symbols, sorted by frequency, are repeatedly paired into packages whose
+ * weight is the sum of the pair, and the packages are merged back with the
+ * symbols, <code>maxLength - 1</code> times. The code length of a symbol is
+ * the number of times it appears in the <code>2n - 2</code> lightest items
+ * of the final list.
+ * </p>
+ */
+public final class LengthLimitedCode {
+
+	private LengthLimitedCode ()
+	{
+	}
+
+	/**
+	 * Computes length-limited code lengths.
+	 *
+	 * @param frequencies frequency of each symbol, indexed by symbol value; 0 for symbols without a code
+	 * @param maxLength   the longest code allowed, in bits
+	 * @return code length of each symbol, 0 for symbols without a code
+	 * @throws IllegalArgumentException if <code>maxLength</code> is out of range, or too small
+	 *         for the number of symbols
+	 */
+	public static int[] lengths (long[] frequencies, int maxLength)
+	{
+		if (maxLength < 1 || maxLength > CodeTable.MAX_LENGTH)
+		{
+			throw new IllegalArgumentException("invalid maximum code length " + maxLength);
+		}
+
+		int[] lengths = new int[frequencies.length];
+		int n = 0;
+
+		for (long frequency : frequencies)
+		{
+			if (frequency > 0)
+			{
+				n++;
+			}
+		}
+
+		if (n > 0 && maxLength < 63 && n > (1L << maxLength))
+		{
+			throw new IllegalArgumentException(n + " symbols do not fit in codes of at most " + maxLength + " bits");
+		}
+
+		// leaves sorted by frequency, then by symbol
+		Integer[] order = new Integer[n];
+
+		for (int symbol = 0, i = 0; symbol < frequencies.length; symbol++)
+		{
+			if (frequencies[symbol] > 0)
+			{
+				order[i++] = symbol;
+			}
+		}
+
+		Arrays.sort(order, (a, b) -> Long.compare(frequencies[a], frequencies[b]));
+
+		if (n == 1)
+		{
+			lengths[order[0]] = 1;
+			return lengths;
+		}
+
+		// nodes 0..n-1 are the leaves, the others are packages of two nodes
+		int capacity = n * maxLength + 1;
+		long[] weights = new long[capacity];
+		int[]  left    = new int[capacity];
+		int[]  right   = new int[capacity];
+		int nodes = n;
+
+		for (int i = 0; i < n; i++)
+		{
+			weights[i] = frequencies[order[i]];
+			left[i]    = -1;
+		}
+
+		int[] list = new int[2 * n];
+		int size = n;
+
+		for (int i = 0; i < n; i++)
+		{
+			list[i] = i;
+		}
+
+		for (int level = 1; level < maxLength; level++)
+		{
+			int[] merged = new int[2 * n];
+			int mergedSize = 0;
+			int leaf = 0;
+
+			for (int p = 0; p + 1 < size; p += 2)
+			{
+				int pack = nodes++;
+				weights[pack] = weights[list[p]] + weights[list[p + 1]];
+				left[pack]    = list[p];
+				right[pack]   = list[p + 1];
+
+				while (leaf < n && weights[leaf] <= weights[pack])
+				{
+					merged[mergedSize++] = leaf++;
+				}
+
+				merged[mergedSize++] = pack;
+			}
+
+			while (leaf < n)
+			{
+				merged[mergedSize++] = leaf++;
+			}
+
+			list = merged;
+			size = mergedSize;
+		}
+
+		// every occurrence of a leaf in the selected items adds one bit to its code
+		int[] stack = new int[capacity];
+
+		for (int i = 0; i < 2 * n - 2; i++)
+		{
+			int top = 0;
+			stack[top++] = list[i];
+
+			while (top > 0)
+			{
+				int node = stack[--top];
+
+				if (left[node] < 0)
+				{
+					lengths[order[node]]++;
+				}
+
+				else
+				{
+					stack[top++] = left[node];
+					stack[top++] = right[node];
+				}
+			}
+		}
+
+		return lengths;
+	}
+}
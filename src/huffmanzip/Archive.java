@@ -0,0 +1,435 @@
+package huffmanzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import huffman.CodeTable;
+import huffman.HuffmanDecoder;
+import utils.BitInputStream;
+
+/**
+ * An archive of many files, read through its directory.
+ *
+ * <p>
+ * Opening an archive reads its header and its directory only. Listing the
+ * files needs nothing more, and extracting a file reads its own blocks with
+ * positional reads, without touching the other files. Files can be extracted
+ * concurrently from several threads.
+ * </p>
+ */
+public final class Archive implements Closeable {
+
+    /** Size of the directory offset and magic bytes at the very end of an archive */
+    private static final int TAIL_SIZE = 12;
+
+    /**
+     * A file stored in an archive.
+     */
+    public static final class Entry {
+
+        private final String name;
+        private final long   size;
+        private final long   offset;
+        private final int    table;
+        private final int[]  bodyLengths;
+
+        private Entry (String name, long size, long offset, int table, int[] bodyLengths)
+        {
+            this.name        = name;
+            this.size        = size;
+            this.offset      = offset;
+            this.table       = table;
+            this.bodyLengths = bodyLengths;
+        }
+
+        /**
+         * Returns the name of the file, its path with '/' separators.
+         *
+         * @return the name
+         */
+        public String getName ()
+        {
+            return name;
+        }
+
+        /**
+         * Returns the uncompressed size of the file.
+         *
+         * @return the size in bytes
+         */
+        public long getSize ()
+        {
+            return size;
+        }
+
+        /**
+         * Returns the size of the compressed blocks of the file.
+         *
+         * @return the compressed size in bytes, without its directory entry
+         */
+        public long getCompressedSize ()
+        {
+            long compressed = 0;
+
+            for (int length : bodyLengths)
+            {
+                compressed += length;
+            }
+
+            return compressed;
+        }
+    }
+
+    private final FileChannel channel;
+    private final int blockSize;
+
+    /** Whether every block body ends with a checksum */
+    private final boolean checksums;
+
+    private final HuffmanDecoder[] decoders;
+
+    /** ID of each table that is a trained table, whose decoder is null until it is given */
+    private final int[] trainedIds;
+    private final List<Entry> entries;
+    private final HashMap<String, Entry> byName = new HashMap<> ();
+
+    private Archive (FileChannel channel, TrainedTable trainedTable) throws IOException
+    {
+        this.channel = channel;
+
+        long size = channel.size();
+        ByteBuffer head = BlockIndex.readFully(channel, 0, (int) Math.min(size, 12));
+
+        if (head.remaining() < 12 || head.get() != HzFormat.MAGIC[0] || head.get() != HzFormat.MAGIC[1]
+                || head.get() != HzFormat.VERSION_ARCHIVE)
+        {
+            throw new IOException("not an archive");
+        }
+
+        checksums = (head.get() & HzFormat.FLAG_CHECKSUMS) != 0;
+        blockSize = head.getInt();
+
+        if (blockSize < HzFormat.MIN_BLOCK_SIZE || blockSize > HzFormat.MAX_BLOCK_SIZE)
+        {
+            throw new IOException("invalid block size " + blockSize);
+        }
+
+        int tableCount = head.getInt();
+
+        if (tableCount < 0 || tableCount > 1 << 16)
+        {
+            throw new IOException("invalid table count " + tableCount);
+        }
+
+        decoders   = new HuffmanDecoder[tableCount];
+        trainedIds = new int[tableCount];
+        long position = 12;
+
+        for (int i = 0; i < tableCount; i++)
+        {
+            int length = BlockIndex.readFully(channel, position, 4).getInt();
+
+            if (length == -1 && position + 8 <= size)
+            {
+                // the table is only needed to extract files, not to list them
+                trainedIds[i] = BlockIndex.readFully(channel, position + 4, 4).getInt();
+
+                if (trainedTable != null)
+                {
+                    decoders[i] = TrainedTable.check(trainedTable, trainedIds[i]).getDecoder();
+                }
+
+                position += 8;
+                continue;
+            }
+
+            if (length < 0 || position + 4 + length > size)
+            {
+                throw new IOException("invalid table " + i);
+            }
+
+            ByteBuffer table = BlockIndex.readFully(channel, position + 4, length);
+            decoders[i] = new HuffmanDecoder(CodeTable.readFrom(new BitInputStream(table)));
+            position += 4 + length;
+        }
+
+        entries = readDirectory(position, size);
+
+        for (Entry entry : entries)
+        {
+            byName.put(entry.name, entry);
+        }
+    }
+
+    /**
+     * Opens an archive and reads its directory.
+     *
+     * @param path the archive file
+     * @return the open archive
+     * @throws IOException if an I/O error occurs, or if the file is not a valid archive
+     */
+    public static Archive open (Path path) throws IOException
+    {
+        return open(path, null);
+    }
+
+    /**
+     * Opens an archive compressed with a trained table and reads its directory.
+     *
+     * @param path  the archive file
+     * @param table the trained table the archive was compressed with, or null
+     * @return the open archive
+     * @throws IOException if an I/O error occurs, if the file is not a valid archive, or
+     *                     if it refers to a trained table other than the given one
+     */
+    public static Archive open (Path path, TrainedTable table) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try
+        {
+            return new Archive(channel, table);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private List<Entry> readDirectory (long bodies, long size) throws IOException
+    {
+        if (size < bodies + TAIL_SIZE)
+        {
+            throw new IOException("truncated archive");
+        }
+
+        ByteBuffer tail = BlockIndex.readFully(channel, size - TAIL_SIZE, TAIL_SIZE);
+        long directory = tail.getLong();
+        byte[] magic = new byte[HzFormat.DIRECTORY_MAGIC.length];
+        tail.get(magic);
+
+        if (!Arrays.equals(magic, HzFormat.DIRECTORY_MAGIC) || directory < bodies || directory > size - TAIL_SIZE - 4)
+        {
+            throw new IOException("invalid archive directory");
+        }
+
+        if (size - TAIL_SIZE - directory > Integer.MAX_VALUE)
+        {
+            throw new IOException("archive directory too large");
+        }
+
+        ByteBuffer buffer = BlockIndex.readFully(channel, directory, (int) (size - TAIL_SIZE - directory));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array(), 0, buffer.limit()));
+        int count = in.readInt();
+
+        if (count < 0 || count > buffer.limit() / 22)  // an entry takes at least 22 bytes
+        {
+            throw new IOException("invalid archive directory");
+        }
+
+        List<Entry> list = new ArrayList<> (count);
+
+        for (int i = 0; i < count; i++)
+        {
+            String name = in.readUTF();
+            long length = in.readLong();
+            long offset = in.readLong();
+            int  table  = in.readInt();
+
+            if (length < 0 || table < -1 || table >= decoders.length
+                    || length > (long) blockSize * (in.available() / 4))
+            {
+                throw new IOException("invalid archive entry " + name);
+            }
+
+            int[] bodyLengths = new int[ArchiveWriter.blockCount(length, blockSize)];
+            long end = offset;
+
+            for (int k = 0; k < bodyLengths.length; k++)
+            {
+                bodyLengths[k] = in.readInt();
+
+                if (bodyLengths[k] < 1)
+                {
+                    throw new IOException("invalid archive entry " + name);
+                }
+
+                end += bodyLengths[k];
+            }
+
+            if (bodyLengths.length > 0 && (offset < bodies || end > directory))
+            {
+                throw new IOException("invalid archive entry " + name);
+            }
+
+            list.add(new Entry(name, length, offset, table, bodyLengths));
+        }
+
+        if (in.available() > 0)
+        {
+            throw new IOException("invalid archive directory");
+        }
+
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the files of the archive, in the order they were added.
+     *
+     * @return the entries, unmodifiable
+     */
+    public List<Entry> getEntries ()
+    {
+        return entries;
+    }
+
+    /**
+     * Returns the file with the given name.
+     *
+     * @param name the name, with '/' separators
+     * @return the entry, or null if the archive has no file of that name
+     */
+    public Entry getEntry (String name)
+    {
+        return byName.get(name);
+    }
+
+    /**
+     * Decodes a file of the archive, one block at a time.
+     *
+     * @param entry an entry of this archive
+     * @param out   stream the file is written to, left open
+     * @throws IOException if an I/O error occurs, if the entry is malformed, or if it
+     *                     needs a trained table the archive was not opened with
+     */
+    public void extract (Entry entry, OutputStream out) throws IOException
+    {
+        HuffmanDecoder sharedDecoder = entry.table < 0 ? null : decoders[entry.table];
+
+        if (entry.table >= 0 && sharedDecoder == null)
+        {
+            TrainedTable.check(null, trainedIds[entry.table]);
+        }
+        long position = entry.offset;
+        byte[] data = new byte[(int) Math.min(blockSize, entry.size)];
+
+        for (int k = 0; k < entry.bodyLengths.length; k++)
+        {
+            int length = (int) Math.min(blockSize, entry.size - (long) k * blockSize);
+            ByteBuffer body = BlockIndex.readFully(channel, position, entry.bodyLengths[k]);
+
+            BlockCodec.decode(body, data, 0, length, sharedDecoder, checksums);
+            out.write(data, 0, length);
+            position += entry.bodyLengths[k];
+        }
+    }
+
+    /**
+     * Decodes every block of every file and checks it against its checksum,
+     * without writing anything. Blocks are decoded concurrently.
+     *
+     * @param threads number of worker threads
+     * @param stats   receives the number of blocks and of uncompressed bytes checked, or null
+     * @return the number of blocks checked against their checksum, 0 if the archive has none
+     * @throws IOException if an I/O error occurs, or naming the first block found malformed or
+     *                     not matching its checksum
+     */
+    int verify (int threads, CompressionStats stats) throws IOException
+    {
+        ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[blockSize]);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Void>> tasks = new ArrayDeque<> ();
+        int blocks = 0;
+        long size = 0;
+
+        try
+        {
+            for (Entry entry : entries)
+            {
+                HuffmanDecoder sharedDecoder = entry.table < 0 ? null : decoders[entry.table];
+
+                if (entry.table >= 0 && sharedDecoder == null)
+                {
+                    TrainedTable.check(null, trainedIds[entry.table]);
+                }
+
+                long position = entry.offset;
+
+                for (int k = 0; k < entry.bodyLengths.length; k++)
+                {
+                    int block = k;
+                    long offset = position;
+                    int length = (int) Math.min(blockSize, entry.size - (long) k * blockSize);
+
+                    tasks.add(pool.submit(() -> {
+                        try
+                        {
+                            ByteBuffer body = BlockIndex.readFully(channel, offset, entry.bodyLengths[block]);
+                            BlockCodec.decode(body, buffers.get(), 0, length, sharedDecoder, checksums);
+                        }
+                        catch (IOException | RuntimeException e)
+                        {
+                            throw new IOException(entry.name + ", block " + block + ": " + e.getMessage(), e);
+                        }
+                        return null;
+                    }));
+
+                    if (tasks.size() >= 2 * threads)
+                    {
+                        BlockCompressor.await(tasks.poll());
+                    }
+
+                    position += entry.bodyLengths[k];
+                }
+
+                blocks += entry.bodyLengths.length;
+                size += entry.size;
+            }
+
+            while (!tasks.isEmpty())
+            {
+                BlockCompressor.await(tasks.poll());
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+
+        if (stats != null)
+        {
+            stats.blocks.add(blocks);
+            stats.inputBytes.add(size);
+        }
+
+        return checksums ? blocks : 0;
+    }
+
+    /**
+     * Closes the archive file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close () throws IOException
+    {
+        channel.close();
+    }
+}
@@ -0,0 +1,345 @@
+package huffmanzip;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import huffman.CodeTable;
+import huffman.HuffmanCodeLengths;
+import utils.BitOutputStream;
+import utils.FrequencyCounter;
+import utils.UnsynchronizedBitOutputStream;
+
+/**
+ * Writes an archive of many files, see {@link HzFormat}.
+ *
+ * <p>
+ * Every block of every file is a separate task, so small files are encoded
+ * in parallel with each other and large files in parallel with themselves.
+ * Blocks are written in order as they complete, with at most two blocks per
+ * worker in flight, and the directory is written once all files are done.
+ * </p>
+ */
+final class ArchiveWriter {
+
+    private ArchiveWriter ()
+    {
+    }
+
+    /**
+     * A file to archive.
+     */
+    private static final class Input {
+
+        final Path   path;
+        final String name;
+        final long   size;
+
+        /** Offset in the archive of the first block body, 0 for an empty file */
+        long offset;
+
+        /** Length of every block body */
+        int[] bodyLengths;
+
+        /** Number of block bodies written so far */
+        int written;
+
+        Input (Path path, String name) throws IOException
+        {
+            this.path = path;
+            this.name = name;
+            this.size = Files.size(path);
+        }
+    }
+
+    /**
+     * Creates an archive.
+     *
+     * @param archive the archive file; replaced if it exists
+     * @param paths   the files and directories to archive; directories are archived recursively
+     * @param options the block size, number of worker threads and maximum code length, and whether
+     *                all files share one table, built from them or trained
+     * @return totals of the compression
+     * @throws IOException if an I/O error occurs, or if two files would have the same name
+     */
+    static CompressionStats create (Path archive, List<Path> paths, Options options) throws IOException
+    {
+        CompressionStats stats = new CompressionStats();
+        stats.start("archive", options.stats);
+
+        List<Input> inputs = collect(archive, paths);
+        ExecutorService pool = Executors.newFixedThreadPool(options.threads);
+        boolean sampled = options.sharedTable && options.table == null && options.sampleFraction > 0
+                && inputs.stream().anyMatch(input -> FrequencyCounter.sampleCount(input.size, options.sampleFraction) > 0);
+        CodeTable sharedTable;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(archive.toFile()), 1 << 20)))
+        {
+            sharedTable = options.table != null ? options.table.getCodeTable()
+                        : options.sharedTable ? sharedTable(inputs, options, sampled, pool, stats) : null;
+
+            HzFormat.writeHeader(out, HzFormat.VERSION_ARCHIVE, HzFormat.FLAG_CHECKSUMS);
+            out.writeInt(options.blockSize);
+            out.writeInt(sharedTable == null ? 0 : 1);
+
+            if (options.table != null)
+            {
+                out.writeInt(-1);
+                out.writeInt(options.table.getId());
+            }
+
+            else if (sharedTable != null)
+            {
+                ByteArrayOutputStream table = new ByteArrayOutputStream();
+                BitOutputStream bitOutputStream = new UnsynchronizedBitOutputStream(table, false);
+                sharedTable.writeTo(bitOutputStream);
+                bitOutputStream.close();
+
+                out.writeInt(table.size());
+                table.writeTo(out);
+            }
+
+            ArrayDeque<Future<byte[]>> bodies = new ArrayDeque<> ();
+            ArrayDeque<Input> owners = new ArrayDeque<> ();
+            long position = out.size();
+
+            for (Input input : inputs)
+            {
+                input.bodyLengths = new int[blockCount(input.size, options.blockSize)];
+
+                for (long from = 0; from < input.size; from += options.blockSize)
+                {
+                    long start = from;
+                    int length = (int) Math.min(options.blockSize, input.size - from);
+
+                    bodies.add(pool.submit(() -> encode(input.path, start, length, sharedTable, options, stats)));
+                    owners.add(input);
+
+                    if (bodies.size() >= 2 * options.threads)
+                    {
+                        position = write(out, position, owners.poll(), BlockCompressor.await(bodies.poll()), stats);
+                    }
+                }
+            }
+
+            while (!bodies.isEmpty())
+            {
+                position = write(out, position, owners.poll(), BlockCompressor.await(bodies.poll()), stats);
+            }
+
+            long directory = position;
+            out.writeInt(inputs.size());
+
+            for (Input input : inputs)
+            {
+                out.writeUTF(input.name);
+                out.writeLong(input.size);
+                out.writeLong(input.offset);
+                out.writeInt(sharedTable == null ? -1 : 0);
+
+                for (int length : input.bodyLengths)
+                {
+                    out.writeInt(length);
+                }
+            }
+
+            out.writeLong(directory);
+            out.write(HzFormat.DIRECTORY_MAGIC);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+
+        if (sampled)
+        {
+            long[] exact = stats.getExactFrequencies();
+            stats.addSampleCosts(exact, BlockCodec.codedBits(exact, sharedTable), options.maxLength);
+        }
+
+        // the blocks only count their bodies, not the header and directory
+        stats.outputBytes.reset();
+        stats.outputBytes.add(Files.size(archive));
+        stats.finish();
+
+        return stats;
+    }
+
+    /**
+     * Returns the number of blocks of a file.
+     *
+     * @param size      uncompressed size of the file
+     * @param blockSize uncompressed size of every block but the last
+     * @return the block count, 0 for an empty file
+     */
+    static int blockCount (long size, int blockSize)
+    {
+        return (int) ((size + blockSize - 1) / blockSize);
+    }
+
+    /**
+     * Lists the regular files under the given paths, sorted by name within each
+     * directory. A file is named by its path relative to the parent of the given
+     * path it was found under, with '/' separators.
+     */
+    private static List<Input> collect (Path archive, List<Path> paths) throws IOException
+    {
+        Path self = archive.toAbsolutePath().normalize();
+        List<Input> inputs = new ArrayList<> ();
+        HashSet<String> names = new HashSet<> ();
+
+        for (Path path : paths)
+        {
+            Path root = path.toAbsolutePath().normalize();
+            Path base = root.getParent() == null ? root : root.getParent();
+            List<Path> files;
+
+            try (Stream<Path> walk = Files.walk(root))
+            {
+                files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+
+            for (Path file : files)
+            {
+                if (file.toAbsolutePath().normalize().equals(self))
+                {
+                    continue;
+                }
+
+                String name = base.relativize(file.toAbsolutePath().normalize()).toString().replace(File.separatorChar, '/');
+
+                if (!names.add(name))
+                {
+                    throw new IOException("duplicate archive entry " + name);
+                }
+
+                inputs.add(new Input(file, name));
+            }
+        }
+
+        return inputs;
+    }
+
+    /**
+     * Counts the bytes of all files, one task per file, and builds the table they share.
+     * When sampling, the counts of large files are estimated from samples.
+     */
+    private static CodeTable sharedTable (List<Input> inputs, Options options, boolean sampled, ExecutorService pool,
+                                          CompressionStats stats) throws IOException
+    {
+        CompressionStats.Timer timer = CompressionStats.timer(stats);
+        List<Future<long[]>> counts = new ArrayList<> ();
+        long[] frequencies = new long[256];
+
+        for (Input input : inputs)
+        {
+            counts.add(pool.submit(() -> sampled
+                    ? FrequencyCounter.sampleBytes(input.path, options.sampleFraction, 1)
+                    : FrequencyCounter.countBytes(input.path, 1)));
+        }
+
+        for (int k = 0; k < counts.size(); k++)
+        {
+            long[] fileFrequencies = BlockCompressor.await(counts.get(k));
+            double scale = 1;
+
+            if (sampled)
+            {
+                // small files are counted entirely and large ones sampled, so weigh each by its size
+                long counted = 0;
+
+                for (long frequency : fileFrequencies)
+                {
+                    counted += frequency;
+                }
+
+                scale = counted == 0 ? 0 : (double) inputs.get(k).size / counted;
+            }
+
+            for (int i = 0; i < frequencies.length; i++)
+            {
+                frequencies[i] += Math.round(fileFrequencies[i] * scale);
+            }
+        }
+
+        timer.lap(CompressionStats.Phase.COUNT);
+
+        if (sampled)
+        {
+            CodeTable table = BlockCodec.estimatedTable(frequencies, options.maxLength);
+            timer.lap(CompressionStats.Phase.BUILD);
+
+            return table;
+        }
+
+        CodeTable table = CodeTable.canonical(HuffmanCodeLengths.compute(frequencies));
+
+        if (options.maxLength > 0)
+        {
+            CodeTable limited = HuffmanCodeLengths.canonicalTable(frequencies, options.maxLength);
+            stats.limitPenaltyBits.add(BlockCodec.codedBits(frequencies, limited) - BlockCodec.codedBits(frequencies, table));
+            table = limited;
+        }
+
+        stats.entropyBits.add(CompressionStats.entropyBits(frequencies));
+        timer.lap(CompressionStats.Phase.BUILD);
+
+        return table;
+    }
+
+    /**
+     * Reads and encodes one block of a file.
+     */
+    private static byte[] encode (Path path, long position, int length, CodeTable sharedTable, Options options,
+                                  CompressionStats stats) throws IOException
+    {
+        ByteBuffer data;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            data = BlockIndex.readFully(channel, position, length);
+        }
+
+        // archives store no sync points, so the LZ77 window and the order-1 context run the whole block
+        return BlockCodec.encode(data, sharedTable, options, 0, new long[0], stats);
+    }
+
+    /**
+     * Writes the next block body of a file.
+     *
+     * @return the archive position after the body
+     */
+    private static long write (DataOutputStream out, long position, Input input, byte[] body,
+                               CompressionStats stats) throws IOException
+    {
+        CompressionStats.Timer timer = CompressionStats.timer(stats);
+
+        if (input.written == 0)
+        {
+            input.offset = position;
+        }
+
+        input.bodyLengths[input.written++] = body.length;
+        out.write(body);
+
+        timer.lap(CompressionStats.Phase.WRITE);
+        return position + body.length;
+    }
+}
@@ -0,0 +1,560 @@
+package huffmanzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+import huffman.CodeTable;
+import huffman.HuffmanCodeLengths;
+import huffman.HuffmanDecoder;
+import utils.BitInputStream;
+import utils.BitOutputStream;
+import utils.UnsynchronizedBitOutputStream;
+
+/**
+ * Encodes and decodes the body of a single block of a block container.
+ *
+ * <p>
+ * A body starts with a method byte. Huffman-coded bodies are followed by the
+ * block's own code table, its order-1 tables (see {@link ContextModel}), its
+ * LZ77 literal/length and distance tables (see {@link Lz77}), its
+ * Burrows-Wheeler header and table (see {@link BurrowsWheeler}), or use
+ * the container's shared table, then the encoded bits and the usual trailer byte. Blocks that Huffman coding would not shrink,
+ * such as already compressed data, are stored as they are.
+ * </p>
+ *
+ * <p>
+ * Every body written ends with the CRC32C of the uncompressed block, which
+ * whole-block decoding checks. <code>java.util.zip.CRC32C</code> is an
+ * intrinsic on current JVMs, so the check costs little next to decoding.
+ * </p>
+ */
+final class BlockCodec {
+
+    /** Number of symbols decoded per call to the table-driven decoder */
+    private static final int BUFFER_SIZE = 8192;
+
+    private BlockCodec ()
+    {
+    }
+
+    /**
+     * Counts the bytes of a block.
+     *
+     * @param data the block, from its position to its limit
+     * @return the number of occurrences of each byte value
+     */
+    static long[] countBytes (ByteBuffer data)
+    {
+        long[] frequencies = new long[256];
+
+        for (int i = data.position(); i < data.limit(); i++)
+        {
+            frequencies[data.get(i) & 0xFF]++;
+        }
+
+        return frequencies;
+    }
+
+    /**
+     * Encodes a block. The block can live on the heap or in a mapped file;
+     * the buffer's position is left unchanged.
+     *
+     * @param data        the block, from its position to its limit
+     * @param sharedTable the container's shared table, or null to give the block its own table
+     * @param options     the sync interval and the maximum code length of the block's own table
+     * @param syncPoints  receives the bit offset in the body of every sync point,
+     *                    <code>HzFormat.syncPointCount</code> of them
+     * @param stats       totals and phase times to add the block to, or null
+     * @return the block body, ending with its checksum
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException if the block is transformed with Burrows-Wheeler
+     *                                  and the sync interval is not 0
+     */
+    static byte[] encode (ByteBuffer data, CodeTable sharedTable, Options options, long[] syncPoints,
+                          CompressionStats stats) throws IOException
+    {
+        return encode(data, sharedTable, options, options.syncInterval, syncPoints, stats);
+    }
+
+    /**
+     * Encodes a block with the given sync interval instead of the one of the
+     * options, for blocks whose sync points are not stored.
+     *
+     * @param data         the block, from its position to its limit
+     * @param sharedTable  the container's shared table, or null to give the block its own table
+     * @param options      the maximum code length of the block's own table
+     * @param syncInterval bytes between two sync points, 0 for none
+     * @param syncPoints   receives the bit offset in the body of every sync point,
+     *                     <code>HzFormat.syncPointCount</code> of them
+     * @param stats        totals and phase times to add the block to, or null
+     * @return the block body, ending with its checksum
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException if the block is transformed with Burrows-Wheeler
+     *                                  and the sync interval is not 0
+     */
+    static byte[] encode (ByteBuffer data, CodeTable sharedTable, Options options, int syncInterval,
+                          long[] syncPoints, CompressionStats stats) throws IOException
+    {
+        if (sharedTable == null && options.bwt && syncInterval != 0)
+        {
+            // a transformed block can only be decoded from its start
+            throw new IllegalArgumentException("a Burrows-Wheeler block has no sync points");
+        }
+
+        BlockEncodeEvent event = new BlockEncodeEvent();
+        event.begin();
+
+        CompressionStats.Timer timer = CompressionStats.timer(stats);
+        CodeTable codeTable = sharedTable;
+        ContextModel model = null;
+        Lz77 lz = null;
+        BurrowsWheeler bwt = null;
+        int method = HzFormat.METHOD_HUFFMAN_SHARED;
+        int off = data.position();
+        int len = data.remaining();
+        long penalty = 0;
+        double entropy = 0;
+
+        long[] frequencies = null;
+
+        if (codeTable == null && options.lzLevel > 0)
+        {
+            // match finding counts the codes as it goes, so its time is counting time
+            lz = Lz77.parse(data, syncInterval, options.lzLevel, options.lzWindow);
+            event.countTime = timer.lap(CompressionStats.Phase.COUNT);
+
+            lz.build(options.maxLength);
+            method = HzFormat.METHOD_LZ77;
+            penalty = lz.getLimitPenaltyBits();
+            entropy = stats == null ? 0 : lz.getEntropyBits();
+            event.buildTime = timer.lap(CompressionStats.Phase.BUILD);
+        }
+
+        else if (codeTable == null && options.bwt)
+        {
+            // sorting the suffixes plays the role of counting
+            bwt = BurrowsWheeler.transform(data);
+            event.countTime = timer.lap(CompressionStats.Phase.COUNT);
+
+            bwt.build(options.maxLength);
+            method = HzFormat.METHOD_BWT;
+            penalty = bwt.getLimitPenaltyBits();
+            entropy = stats == null ? 0 : bwt.getEntropyBits();
+            event.buildTime = timer.lap(CompressionStats.Phase.BUILD);
+        }
+
+        else if (codeTable == null && options.order1)
+        {
+            long[][] counts = ContextModel.count(data, syncInterval);
+            event.countTime = timer.lap(CompressionStats.Phase.COUNT);
+
+            model = ContextModel.build(counts, syncInterval, options.maxLength);
+
+            if (model == null)
+            {
+                frequencies = ContextModel.order0(counts);
+            }
+
+            else
+            {
+                method = HzFormat.METHOD_HUFFMAN_ORDER1;
+                penalty = model.getLimitPenaltyBits();
+
+                for (long[] context : counts)
+                {
+                    entropy += stats == null || context == null ? 0 : CompressionStats.entropyBits(context);
+                }
+            }
+
+            event.buildTime = timer.lap(CompressionStats.Phase.BUILD);
+        }
+
+        if (codeTable == null && model == null && lz == null && bwt == null)
+        {
+            if (frequencies == null)
+            {
+                frequencies = countBytes(data);
+                event.countTime = timer.lap(CompressionStats.Phase.COUNT);
+            }
+
+            codeTable = CodeTable.canonical(HuffmanCodeLengths.compute(frequencies));
+            method = HzFormat.METHOD_HUFFMAN;
+
+            if (options.maxLength > 0)
+            {
+                CodeTable limited = HuffmanCodeLengths.canonicalTable(frequencies, options.maxLength);
+                penalty = codedBits(frequencies, limited) - codedBits(frequencies, codeTable);
+                codeTable = limited;
+            }
+
+            if (stats != null)
+            {
+                entropy = CompressionStats.entropyBits(frequencies);
+            }
+
+            event.buildTime += timer.lap(CompressionStats.Phase.BUILD);
+        }
+
+        else if (sharedTable != null && options.sampleFraction > 0 && stats != null)
+        {
+            // the shared table was estimated; count exactly what it encodes to report the cost
+            stats.addExactFrequencies(countBytes(data));
+            event.countTime = timer.lap(CompressionStats.Phase.COUNT);
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(len / 2 + 64);
+        body.write(method);
+
+        BitOutputStream bitOutputStream = new UnsynchronizedBitOutputStream(body, false);
+
+        if (method == HzFormat.METHOD_HUFFMAN)
+        {
+            codeTable.writeTo(bitOutputStream);
+            event.tableTime = timer.lap(CompressionStats.Phase.TABLE);
+        }
+
+        else if (method == HzFormat.METHOD_HUFFMAN_ORDER1)
+        {
+            model.writeTo(bitOutputStream);
+            event.tableTime = timer.lap(CompressionStats.Phase.TABLE);
+        }
+
+        else if (method == HzFormat.METHOD_LZ77)
+        {
+            lz.writeTo(bitOutputStream);
+            event.tableTime = timer.lap(CompressionStats.Phase.TABLE);
+        }
+
+        else if (method == HzFormat.METHOD_BWT)
+        {
+            bwt.writeTo(bitOutputStream);
+            event.tableTime = timer.lap(CompressionStats.Phase.TABLE);
+
+            // the sync interval is 0, so there are no sync points to record
+            bwt.writeSymbols(bitOutputStream);
+        }
+
+        long tableBits = bitOutputStream.getBitPosition();
+        int step = syncInterval == 0 ? Math.max(len, 1) : syncInterval;
+
+        for (int start = off, sync = 0; bwt == null && start < off + len; start += step)
+        {
+            if (start > off)
+            {
+                syncPoints[sync++] = 8 + bitOutputStream.getBitPosition();
+            }
+
+            if (lz != null)
+            {
+                lz.writeSegment((start - off) / step, bitOutputStream);
+                continue;
+            }
+
+            if (model != null)
+            {
+                int context = 0;
+
+                for (int i = start; i < Math.min(start + step, off + len); i++)
+                {
+                    int b = data.get(i) & 0xFF;
+                    model.get(context).writeCode(b, bitOutputStream);
+                    context = b;
+                }
+
+                continue;
+            }
+
+            for (int i = start; i < Math.min(start + step, off + len); i++)
+            {
+                codeTable.writeCode(data.get(i) & 0xFF, bitOutputStream);
+            }
+        }
+
+        long bits = bitOutputStream.getBitPosition() - tableBits;
+        bitOutputStream.close();
+
+        byte[] result;
+
+        if (body.size() > len)
+        {
+            result = new byte[len + 1 + HzFormat.CHECKSUM_SIZE];
+            result[0] = HzFormat.METHOD_STORED;
+            data.duplicate().get(result, 1, len);
+
+            for (int k = 0; k < syncPoints.length; k++)
+            {
+                syncPoints[k] = 8L * (1 + (long) (k + 1) * syncInterval);
+            }
+
+            bits = 8L * len;
+            penalty = 0;
+        }
+
+        else
+        {
+            body.write(new byte[HzFormat.CHECKSUM_SIZE]);
+            result = body.toByteArray();
+        }
+
+        ByteBuffer.wrap(result).putInt(result.length - HzFormat.CHECKSUM_SIZE, checksum(data));
+        event.encodeTime = timer.lap(CompressionStats.Phase.ENCODE);
+
+        if (stats != null)
+        {
+            stats.blocks.increment();
+            stats.inputBytes.add(len);
+            stats.outputBytes.add(result.length);
+            stats.symbols.add(len);
+            stats.codedBits.add(bits);
+            stats.entropyBits.add(entropy);
+            stats.limitPenaltyBits.add(penalty);
+        }
+
+        event.end();
+
+        if (event.shouldCommit())
+        {
+            event.method      = result[0];
+            event.inputBytes  = len;
+            event.outputBytes = result.length;
+            event.commit();
+        }
+
+        return result;
+    }
+
+    /**
+     * Builds a table shared by many blocks from byte frequencies estimated on
+     * samples. Every byte value is counted once more than it was seen, so that
+     * bytes the samples missed still have a code.
+     *
+     * @param sampled   number of occurrences of each byte value in the samples
+     * @param maxLength the longest code allowed, in bits, or 0 for no limit
+     * @return the table
+     */
+    static CodeTable estimatedTable (long[] sampled, int maxLength)
+    {
+        long[] smoothed = new long[256];
+
+        for (int i = 0; i < smoothed.length; i++)
+        {
+            smoothed[i] = sampled[i] + 1;
+        }
+
+        return HuffmanCodeLengths.canonicalTable(smoothed, maxLength);
+    }
+
+    /**
+     * Returns the number of bits taken by the codes of the given symbols.
+     *
+     * @param frequencies frequency of each symbol
+     * @param codeTable   a table holding a code for every symbol with a frequency
+     * @return the encoded size in bits, without the table
+     */
+    static long codedBits (long[] frequencies, CodeTable codeTable)
+    {
+        long bits = 0;
+
+        for (int symbol = 0; symbol < frequencies.length; symbol++)
+        {
+            if (frequencies[symbol] > 0)
+            {
+                bits += frequencies[symbol] * codeTable.getLength(symbol);
+            }
+        }
+
+        return bits;
+    }
+
+    /**
+     * Returns the CRC32C of a block.
+     *
+     * @param data the block, from its position to its limit; the position is left unchanged
+     * @return the checksum
+     */
+    static int checksum (ByteBuffer data)
+    {
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Decodes a block, and checks it against the checksum at the end of its body.
+     *
+     * @param body          the block body, from its position to its limit
+     * @param dst           array receiving the decoded bytes
+     * @param off           offset of the block in <code>dst</code>
+     * @param len           length of the decoded block
+     * @param sharedDecoder decoder for the container's shared table, or null if it has none
+     * @param checksum      whether the body ends with a checksum
+     * @throws IOException if the body is malformed, or if the decoded block does not match its checksum
+     */
+    static void decode (ByteBuffer body, byte[] dst, int off, int len, HuffmanDecoder sharedDecoder, boolean checksum)
+            throws IOException
+    {
+        decode(body, 0, dst, off, len, sharedDecoder, 0, -1, checksum);
+
+        if (checksum)
+        {
+            int expected = body.getInt(body.limit() - HzFormat.CHECKSUM_SIZE);
+            int actual   = checksum(ByteBuffer.wrap(dst, off, len));
+
+            if (actual != expected)
+            {
+                throw new IOException(String.format("checksum mismatch: block decodes to CRC32C %08x, %08x was stored",
+                        actual, expected));
+            }
+        }
+    }
+
+    /**
+     * Decodes a range of a block, starting from a sync point before it.
+     *
+     * @param body          the block body, from its position to its limit
+     * @param from          offset of the range in the block
+     * @param dst           array receiving the decoded bytes
+     * @param off           offset of the range in <code>dst</code>
+     * @param len           length of the range
+     * @param sharedDecoder decoder for the container's shared table, or null if it has none
+     * @param syncOffset    offset in the block of the sync point, at most <code>from</code>
+     * @param syncBit       bit offset of the sync point in the body, or -1 for the start of the block
+     * @param checksum      whether the body ends with a checksum; a range is not checked against it
+     * @throws IOException if the body is malformed
+     */
+    static void decode (ByteBuffer body, int from, byte[] dst, int off, int len, HuffmanDecoder sharedDecoder,
+                        int syncOffset, long syncBit, boolean checksum) throws IOException
+    {
+        if (checksum)
+        {
+            if (body.remaining() <= HzFormat.CHECKSUM_SIZE)
+            {
+                throw new IOException("block too short for its checksum");
+            }
+
+            body = body.duplicate().limit(body.limit() - HzFormat.CHECKSUM_SIZE);
+        }
+
+        if (!body.hasRemaining())
+        {
+            throw new IOException("empty block");
+        }
+
+        int start  = body.position();
+        int method = body.get();
+
+        if (method == HzFormat.METHOD_STORED)
+        {
+            if (body.remaining() < from + len)
+            {
+                throw new IOException("stored block has the wrong length");
+            }
+
+            body.position(start + 1 + from);
+            body.get(dst, off, len);
+            return;
+        }
+
+        BitInputStream bitInputStream = new BitInputStream(body);
+        HuffmanDecoder decoder = null;
+        ContextModel model = null;
+        Lz77 lz = null;
+
+        if (method == HzFormat.METHOD_HUFFMAN)
+        {
+            decoder = new HuffmanDecoder(CodeTable.readFrom(bitInputStream));
+        }
+
+        else if (method == HzFormat.METHOD_HUFFMAN_ORDER1)
+        {
+            model = ContextModel.readFrom(bitInputStream);
+        }
+
+        else if (method == HzFormat.METHOD_LZ77)
+        {
+            lz = Lz77.readFrom(bitInputStream);
+        }
+
+        else if (method == HzFormat.METHOD_BWT)
+        {
+            BurrowsWheeler.decode(bitInputStream, from, dst, off, len);
+            return;
+        }
+
+        else if (method == HzFormat.METHOD_HUFFMAN_SHARED && sharedDecoder != null)
+        {
+            decoder = sharedDecoder;
+        }
+
+        else
+        {
+            throw new IOException("unsupported block method " + method);
+        }
+
+        int skip = from;
+
+        if (syncBit >= 0)
+        {
+            if (syncBit < 8 || (syncBit >>> 3) >= body.limit() - start)
+            {
+                throw new IOException("invalid sync point");
+            }
+
+            ByteBuffer rest = body.duplicate();
+            rest.position(start + (int) (syncBit >>> 3));
+
+            bitInputStream = new BitInputStream(rest.slice());
+            bitInputStream.skipBits((int) (syncBit & 7));
+            skip = from - syncOffset;
+        }
+
+        if (lz != null)
+        {
+            lz.decode(bitInputStream, skip, dst, off, len);
+            return;
+        }
+
+        if (model != null)
+        {
+            model.decode(bitInputStream, syncBit >= 0 ? syncOffset : 0, skip, dst, off, len);
+            return;
+        }
+
+        int[] symbols = new int[Math.min(BUFFER_SIZE, Math.max(skip + len, 1))];
+
+        while (skip > 0)
+        {
+            skip -= read(decoder, bitInputStream, symbols, Math.min(symbols.length, skip));
+        }
+
+        int done = 0;
+
+        while (done < len)
+        {
+            int count = read(decoder, bitInputStream, symbols, Math.min(symbols.length, len - done));
+
+            for (int i = 0; i < count; i++)
+            {
+                dst[off + done + i] = (byte) symbols[i];
+            }
+
+            done += count;
+        }
+    }
+
+    private static int read (HuffmanDecoder decoder, BitInputStream bitInputStream, int[] symbols, int len)
+            throws IOException
+    {
+        int count = decoder.read(bitInputStream, symbols, 0, len);
+
+        if (count == 0)
+        {
+            throw new IOException("truncated block");
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,210 @@
+package huffmanzip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import huffman.CodeTable;
+import utils.MappedFile;
+
+/**
+ * Compresses a stream into a block container, encoding blocks concurrently.
+ *
+ * <p>
+ * The input is cut into blocks of a fixed size that are handed to a pool of
+ * worker threads. Finished blocks are written strictly in input order; at most
+ * two blocks per worker are in flight at a time, which bounds memory use.
+ * </p>
+ */
+final class BlockCompressor {
+
+    private BlockCompressor ()
+    {
+    }
+
+    /**
+     * Supplies the blocks to compress, in order.
+     */
+    interface BlockSource {
+
+        /**
+         * Returns the next block.
+         *
+         * @return the block, from its position to its limit, or null after the last block
+         * @throws IOException if an I/O error occurs
+         */
+        ByteBuffer next () throws IOException;
+    }
+
+    /**
+     * Compresses a stream into a block container.
+     *
+     * @param in          stream to compress, read to its end
+     * @param out         stream the container is written to, left open
+     * @param options     the block size, number of worker threads, sync interval and maximum code length
+     * @param sharedTable table shared by all blocks, or null to give every block its own
+     * @return totals of the compression
+     * @throws IOException if an I/O error occurs
+     */
+    static CompressionStats compress (InputStream in, OutputStream out, Options options,
+                                      CodeTable sharedTable) throws IOException
+    {
+        int blockSize = options.blockSize;
+        boolean[] done = { false };
+
+        BlockSource source = () -> {
+            byte[] block = done[0] ? new byte[0] : in.readNBytes(blockSize);
+            done[0] = block.length < blockSize;
+
+            return block.length == 0 ? null : ByteBuffer.wrap(block);
+        };
+
+        return compress(source, out, options, sharedTable);
+    }
+
+    /**
+     * Compresses a memory-mapped file into a block container. Blocks are
+     * encoded straight from the mapped windows, without being copied.
+     *
+     * @param in          the mapped file, with windows a multiple of the block size
+     * @param size        the size of the file
+     * @param out         stream the container is written to, left open
+     * @param options     the block size, number of worker threads, sync interval and maximum code length
+     * @param sharedTable table shared by all blocks, or null to give every block its own
+     * @return totals of the compression
+     * @throws IOException if an I/O error occurs
+     */
+    static CompressionStats compress (MappedFile in, long size, OutputStream out, Options options,
+                                      CodeTable sharedTable) throws IOException
+    {
+        int blockSize = options.blockSize;
+        long[] position = { 0 };
+
+        BlockSource source = () -> {
+            if (position[0] >= size)
+            {
+                return null;
+            }
+
+            int length = (int) Math.min(blockSize, size - position[0]);
+            ByteBuffer block = in.slice(position[0], length);
+            position[0] += length;
+
+            return block;
+        };
+
+        return compress(source, out, options, sharedTable);
+    }
+
+    /**
+     * Compresses the blocks of a source into a block container.
+     *
+     * @param source      supplies the blocks to compress
+     * @param out         stream the container is written to, left open
+     * @param options     the block size, number of worker threads, sync interval and maximum code length
+     * @param sharedTable table shared by all blocks, or null to give every block its own
+     * @return totals of the compression
+     * @throws IOException if an I/O error occurs
+     */
+    static CompressionStats compress (BlockSource source, OutputStream out, Options options,
+                                      CodeTable sharedTable) throws IOException
+    {
+        int threads = options.threads;
+        CodeTable table = options.table == null ? sharedTable : options.table.getCodeTable();
+        BlockWriter writer = new BlockWriter(out, options.blockSize, options.table == null ? sharedTable : null,
+                options.table, options.syncInterval);
+        CompressionStats stats = new CompressionStats();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<byte[]>> bodies = new ArrayDeque<> ();
+        ArrayDeque<Integer> lengths = new ArrayDeque<> ();
+        ArrayDeque<long[]> syncPoints = new ArrayDeque<> ();
+
+        try
+        {
+            ByteBuffer block = source.next();
+
+            while (block != null)
+            {
+                ByteBuffer data = block;
+                long[] sync = new long[HzFormat.syncPointCount(data.remaining(), options.syncInterval)];
+
+                bodies.add(pool.submit(() -> BlockCodec.encode(data, table, options, sync, stats)));
+                lengths.add(data.remaining());
+                syncPoints.add(sync);
+
+                if (bodies.size() >= 2 * threads)
+                {
+                    write(writer, lengths.poll(), await(bodies.poll()), syncPoints.poll(), stats);
+                }
+
+                block = source.next();
+            }
+
+            while (!bodies.isEmpty())
+            {
+                write(writer, lengths.poll(), await(bodies.poll()), syncPoints.poll(), stats);
+            }
+
+            CompressionStats.Timer timer = CompressionStats.timer(stats);
+            writer.finish();
+            timer.lap(CompressionStats.Phase.WRITE);
+
+            return stats;
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void write (BlockWriter writer, int length, byte[] body, long[] syncPoints,
+                               CompressionStats stats) throws IOException
+    {
+        CompressionStats.Timer timer = CompressionStats.timer(stats);
+        writer.writeBlock(length, body, syncPoints);
+        timer.lap(CompressionStats.Phase.WRITE);
+    }
+
+    /**
+     * Waits for a task, rethrowing its I/O errors.
+     *
+     * @param task the task
+     * @return the task's result
+     * @throws IOException if the task failed or the thread was interrupted
+     */
+    static <T> T await (Future<T> task) throws IOException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a block");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package huffmanzip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import huffman.HuffmanDecoder;
+import utils.MappedFile;
+
+/**
+ * Decompresses a block container file, decoding blocks concurrently.
+ *
+ * <p>
+ * The block index at the end of the container gives the position of every
+ * block in both files, so workers read their block with a positional read,
+ * decode it, and write the result straight to its final offset in the output
+ * file with a positional write. Blocks can complete in any order; at most two
+ * blocks per worker are in flight at a time.
+ * </p>
+ *
+ * <p>
+ * In mapped mode both files are mapped in memory instead: block bodies are
+ * decoded straight from the mapped container, and decoded blocks are copied
+ * into the mapped output file, with no system call per block.
+ * </p>
+ *
+ * <p>
+ * A container without an index, as written by {@link HuffmanOutputStream},
+ * is read sequentially instead; its blocks are still decoded concurrently.
+ * </p>
+ */
+final class BlockDecompressor {
+
+    private BlockDecompressor ()
+    {
+    }
+
+    /**
+     * Decompresses a block container file.
+     *
+     * @param source  the container file
+     * @param target  the file to write the uncompressed data to; replaced if it exists
+     * @param threads number of worker threads
+     * @param mapped  whether to map both files in memory instead of using positional reads and writes
+     * @param table   the trained table the container was compressed with, or null
+     * @throws IOException if an I/O error occurs or the container is malformed
+     */
+    static void decompress (Path source, Path target, int threads, boolean mapped, TrainedTable table)
+            throws IOException
+    {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ))
+        {
+            InputStream header = new BufferedInputStream(Channels.newInputStream(in.position(0)));
+
+            if (HzFormat.readVersion(header) != HzFormat.VERSION_BLOCKS)
+            {
+                throw new IOException("not a block container");
+            }
+
+            BlockReader reader = new BlockReader(header, table);
+
+            if (!reader.hasIndex())
+            {
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), 1 << 20))
+                {
+                    decompress(reader, out, threads);
+                }
+
+                return;
+            }
+
+            BlockIndex index = BlockIndex.readFrom(in, reader.getBlockSize(), reader.getSyncInterval());
+
+            if (index == null)
+            {
+                throw new IOException("the block container has no index");
+            }
+
+            // the target is only created once the container is known to be readable
+            try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                decompress(in, out, reader, index, threads, mapped);
+            }
+        }
+    }
+
+    /**
+     * Decodes every block of a block container file and checks it against its
+     * checksum, without writing anything. Blocks are decoded concurrently, each
+     * worker into a buffer of its own.
+     *
+     * @param source  the container file
+     * @param threads number of worker threads
+     * @param table   the trained table the container was compressed with, or null
+     * @param stats   receives the number of blocks and of uncompressed bytes checked, or null
+     * @return the number of blocks checked against their checksum, 0 if the container has none
+     * @throws IOException if an I/O error occurs, or naming the first block found malformed or
+     *                     not matching its checksum
+     */
+    static int verify (Path source, int threads, TrainedTable table, CompressionStats stats) throws IOException
+    {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ))
+        {
+            InputStream header = new BufferedInputStream(Channels.newInputStream(in.position(0)));
+
+            if (HzFormat.readVersion(header) != HzFormat.VERSION_BLOCKS)
+            {
+                throw new IOException("not a block container");
+            }
+
+            BlockReader reader = new BlockReader(header, table);
+
+            if (!reader.hasIndex())
+            {
+                return verify(reader, stats);
+            }
+
+            BlockIndex index = BlockIndex.readFrom(in, reader.getBlockSize(), reader.getSyncInterval());
+
+            if (index == null)
+            {
+                throw new IOException("the block container has no index");
+            }
+
+            HuffmanDecoder sharedDecoder = reader.getSharedDecoder();
+            boolean checksums = reader.hasChecksums();
+            ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[reader.getBlockSize()]);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            ArrayDeque<Future<Void>> tasks = new ArrayDeque<> ();
+
+            try
+            {
+                for (int i = 0; i < index.size(); i++)
+                {
+                    int block = i;
+
+                    tasks.add(pool.submit(() -> {
+                        try
+                        {
+                            ByteBuffer body = BlockIndex.readFully(in, index.getBodyOffset(block),
+                                    index.getBodyLength(block));
+                            BlockCodec.decode(body, buffers.get(), 0, index.getLength(block), sharedDecoder, checksums);
+                        }
+                        catch (IOException | RuntimeException e)
+                        {
+                            throw new IOException("block " + block + " at offset " + index.getUncompressedOffset(block)
+                                    + ": " + e.getMessage(), e);
+                        }
+                        return null;
+                    }));
+
+                    if (tasks.size() >= 2 * threads)
+                    {
+                        BlockCompressor.await(tasks.poll());
+                    }
+                }
+
+                while (!tasks.isEmpty())
+                {
+                    BlockCompressor.await(tasks.poll());
+                }
+            }
+            finally
+            {
+                pool.shutdownNow();
+            }
+
+            if (stats != null)
+            {
+                stats.blocks.add(index.size());
+                stats.inputBytes.add(index.getUncompressedSize());
+            }
+
+            return checksums ? index.size() : 0;
+        }
+    }
+
+    /**
+     * Decodes and checks every block of a container without an index, one after the other.
+     */
+    private static int verify (BlockReader reader, CompressionStats stats) throws IOException
+    {
+        int blocks = 0;
+        long offset = 0;
+
+        while (reader.next())
+        {
+            try
+            {
+                reader.decode();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                throw new IOException("block " + blocks + " at offset " + offset + ": " + e.getMessage(), e);
+            }
+
+            blocks++;
+            offset += reader.getLength();
+        }
+
+        if (stats != null)
+        {
+            stats.blocks.add(blocks);
+            stats.inputBytes.add(offset);
+        }
+
+        return reader.hasChecksums() ? blocks : 0;
+    }
+
+    /**
+     * Decodes the blocks of an open container into the output file.
+     */
+    private static void decompress (FileChannel in, FileChannel out, BlockReader reader, BlockIndex index,
+                                    int threads, boolean mapped) throws IOException
+    {
+        HuffmanDecoder sharedDecoder = reader.getSharedDecoder();
+        boolean checksums = reader.hasChecksums();
+        MappedFile mappedIn  = null;
+        MappedFile mappedOut = null;
+
+        if (mapped)
+        {
+            mappedIn  = new MappedFile(in, FileChannel.MapMode.READ_ONLY, MappedFile.DEFAULT_WINDOW_SIZE,
+                    in.size());
+            mappedOut = new MappedFile(out, FileChannel.MapMode.READ_WRITE, MappedFile.DEFAULT_WINDOW_SIZE,
+                    index.getUncompressedSize());
+        }
+
+        MappedFile mapIn  = mappedIn;
+        MappedFile mapOut = mappedOut;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Void>> tasks = new ArrayDeque<> ();
+
+        try
+        {
+            for (int i = 0; i < index.size(); i++)
+            {
+                int block = i;
+
+                tasks.add(pool.submit(() -> {
+                    if (mapped)
+                    {
+                        decodeBlock(mapIn, mapOut, index, block, sharedDecoder, checksums);
+                    }
+                    else
+                    {
+                        decodeBlock(in, out, index, block, sharedDecoder, checksums);
+                    }
+                    return null;
+                }));
+
+                if (tasks.size() >= 2 * threads)
+                {
+                    BlockCompressor.await(tasks.poll());
+                }
+            }
+
+            while (!tasks.isEmpty())
+            {
+                BlockCompressor.await(tasks.poll());
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Decodes one block from a mapped container into its place in the mapped output file.
+     */
+    private static void decodeBlock (MappedFile in, MappedFile out, BlockIndex index, int block,
+                                     HuffmanDecoder sharedDecoder, boolean checksums) throws IOException
+    {
+        ByteBuffer body = in.slice(index.getBodyOffset(block), index.getBodyLength(block));
+        byte[] data = new byte[index.getLength(block)];
+
+        BlockCodec.decode(body, data, 0, data.length, sharedDecoder, checksums);
+
+        out.slice(index.getUncompressedOffset(block), data.length).put(data);
+    }
+
+    /**
+     * Extracts a range of the uncompressed data of a block container file. Only
+     * the blocks overlapping the range are read, and each of them is decoded
+     * from the last sync point before the range, if the container has sync points.
+     *
+     * @param source the container file
+     * @param offset offset of the range in the uncompressed data
+     * @param length length of the range; it is cut at the end of the data
+     * @param out    stream the range is written to, left open
+     * @param table  the trained table the container was compressed with, or null
+     * @throws IOException if an I/O error occurs or the container is malformed
+     * @throws IllegalArgumentException if the offset or the length is negative
+     */
+    static void extract (Path source, long offset, long length, OutputStream out, TrainedTable table)
+            throws IOException
+    {
+        if (offset < 0 || length < 0)
+        {
+            throw new IllegalArgumentException("invalid range " + offset + "+" + length);
+        }
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ))
+        {
+            InputStream header = new BufferedInputStream(Channels.newInputStream(in.position(0)));
+
+            if (HzFormat.readVersion(header) != HzFormat.VERSION_BLOCKS)
+            {
+                throw new IOException("not a block container");
+            }
+
+            BlockReader reader = new BlockReader(header, table);
+
+            if (!reader.hasIndex())
+            {
+                extract(reader, offset, length, out);
+                return;
+            }
+
+            BlockIndex index = BlockIndex.readFrom(in, reader.getBlockSize(), reader.getSyncInterval());
+
+            if (index == null)
+            {
+                throw new IOException("the block container has no index");
+            }
+
+            long end = Math.min(index.getUncompressedSize(), offset + Math.min(length, Long.MAX_VALUE - offset));
+            long position = offset;
+
+            while (position < end)
+            {
+                int block = index.findBlock(position);
+                int from  = (int) (position - index.getUncompressedOffset(block));
+                int len   = (int) Math.min(end - position, index.getLength(block) - from);
+
+                // nearest sync point at or before the start of the range
+                int sync = index.getSyncInterval() == 0 ? 0 : from / index.getSyncInterval();
+                long syncBit = sync == 0 ? -1 : index.getSyncPoint(block, sync);
+
+                ByteBuffer body = BlockIndex.readFully(in, index.getBodyOffset(block), index.getBodyLength(block));
+                byte[] data = new byte[len];
+
+                BlockCodec.decode(body, from, data, 0, len, reader.getSharedDecoder(), sync * index.getSyncInterval(), syncBit,
+                        reader.hasChecksums());
+                out.write(data);
+                position += len;
+            }
+
+            out.flush();
+        }
+    }
+
+    /**
+     * Extracts a range from a container without an index, reading its blocks in
+     * order and decoding those overlapping the range.
+     */
+    private static void extract (BlockReader reader, long offset, long length, OutputStream out) throws IOException
+    {
+        long end = offset + Math.min(length, Long.MAX_VALUE - offset);
+        long position = 0;
+
+        while (position < end && reader.next())
+        {
+            int blockLength = reader.getLength();
+
+            if (position + blockLength > offset)
+            {
+                int from = (int) Math.max(0, offset - position);
+                int to   = (int) Math.min(blockLength, end - position);
+                out.write(reader.decode(), from, to - from);
+            }
+
+            position += blockLength;
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Decompresses a block container from a stream in a single pass. Blocks are
+     * decoded concurrently as they are read and written out in order, with at
+     * most two blocks per worker in flight.
+     *
+     * @param in      stream positioned right after the version byte
+     * @param out     stream the uncompressed data is written to, left open
+     * @param threads number of worker threads
+     * @param table   the trained table the container was compressed with, or null
+     * @throws IOException if an I/O error occurs or the container is malformed
+     */
+    static void decompress (InputStream in, OutputStream out, int threads, TrainedTable table) throws IOException
+    {
+        decompress(new BlockReader(in, table), out, threads);
+    }
+
+    /**
+     * Decodes the blocks of a container read sequentially, concurrently, and
+     * writes them out in order.
+     */
+    private static void decompress (BlockReader reader, OutputStream out, int threads) throws IOException
+    {
+        HuffmanDecoder sharedDecoder = reader.getSharedDecoder();
+        boolean checksums = reader.hasChecksums();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<byte[]>> blocks = new ArrayDeque<> ();
+
+        try
+        {
+            while (reader.next())
+            {
+                byte[] body = reader.getBody();
+                int length = reader.getLength();
+
+                blocks.add(pool.submit(() -> {
+                    byte[] data = new byte[length];
+                    BlockCodec.decode(ByteBuffer.wrap(body), data, 0, length, sharedDecoder, checksums);
+                    return data;
+                }));
+
+                if (blocks.size() >= 2 * threads)
+                {
+                    out.write(BlockCompressor.await(blocks.poll()));
+                }
+            }
+
+            while (!blocks.isEmpty())
+            {
+                out.write(BlockCompressor.await(blocks.poll()));
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Decodes one block and writes it at its offset in the output file.
+     */
+    private static void decodeBlock (FileChannel in, FileChannel out, BlockIndex index, int block,
+                                     HuffmanDecoder sharedDecoder, boolean checksums) throws IOException
+    {
+        ByteBuffer body = BlockIndex.readFully(in, index.getBodyOffset(block), index.getBodyLength(block));
+        byte[] data = new byte[index.getLength(block)];
+
+        BlockCodec.decode(body, data, 0, data.length, sharedDecoder, checksums);
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = index.getUncompressedOffset(block);
+
+        while (buffer.hasRemaining())
+        {
+            out.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package huffmanzip;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event spanning the encoding of one block, with the time
+ * spent in each phase.
+ */
+@Name("huffmanzip.BlockEncode")
+@Label("Block Encode")
+@Category("HuffmanZip")
+@Description("Encoding of one block of a block container")
+final class BlockEncodeEvent extends jdk.jfr.Event {
+
+    @Label("Method")
+    @Description("Method byte of the block body")
+    int method;
+
+    @Label("Uncompressed Size")
+    @DataAmount
+    int inputBytes;
+
+    @Label("Compressed Size")
+    @DataAmount
+    int outputBytes;
+
+    @Label("Counting Time")
+    @Timespan
+    long countTime;
+
+    @Label("Code Building Time")
+    @Timespan
+    long buildTime;
+
+    @Label("Table Writing Time")
+    @Timespan
+    long tableTime;
+
+    @Label("Encoding Time")
+    @Timespan
+    long encodeTime;
+}
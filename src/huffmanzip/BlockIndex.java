@@ -0,0 +1,339 @@
+package huffmanzip;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The index at the end of a block container: for every block, the offset of
+ * its header in the container, the offset of its data in the uncompressed
+ * file, and both lengths, then the sync points of all blocks if the container
+ * has them. It lets readers locate and decode blocks independently of each
+ * other, and start decoding in the middle of a block.
+ */
+final class BlockIndex {
+
+    /** Size of an index entry in bytes */
+    static final int ENTRY_SIZE = 24;
+
+    /** Size of the index offset and magic bytes at the very end of the container */
+    static final int TAIL_SIZE = 12;
+
+    private long[] offsets = new long[16];
+    private long[] uncompressedOffsets = new long[16];
+    private int[]  lengths = new int[16];
+    private int[]  bodyLengths = new int[16];
+    private int[]  syncStarts = new int[16];
+    private int    count = 0;
+
+    /** Bytes between two sync points, 0 if the container has none */
+    private final int syncInterval;
+
+    /** Sync points of all blocks, in block order */
+    private long[] syncPoints = new long[16];
+    private int    syncCount = 0;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param syncInterval bytes between two sync points, 0 if the container has none
+     */
+    BlockIndex (int syncInterval)
+    {
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Appends an entry.
+     *
+     * @param offset             offset of the block header in the container
+     * @param uncompressedOffset offset of the block in the uncompressed data
+     * @param length             uncompressed length of the block
+     * @param bodyLength         length of the block body
+     * @param blockSyncPoints    bit offsets in the body of the sync points of the block
+     */
+    void add (long offset, long uncompressedOffset, int length, int bodyLength, long[] blockSyncPoints)
+    {
+        if (count == offsets.length)
+        {
+            offsets = Arrays.copyOf(offsets, 2 * count);
+            uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, 2 * count);
+            lengths = Arrays.copyOf(lengths, 2 * count);
+            bodyLengths = Arrays.copyOf(bodyLengths, 2 * count);
+            syncStarts = Arrays.copyOf(syncStarts, 2 * count);
+        }
+
+        while (syncCount + blockSyncPoints.length > syncPoints.length)
+        {
+            syncPoints = Arrays.copyOf(syncPoints, 2 * syncPoints.length);
+        }
+
+        offsets[count] = offset;
+        uncompressedOffsets[count] = uncompressedOffset;
+        lengths[count] = length;
+        bodyLengths[count] = bodyLength;
+        syncStarts[count] = syncCount;
+        count++;
+
+        System.arraycopy(blockSyncPoints, 0, syncPoints, syncCount, blockSyncPoints.length);
+        syncCount += blockSyncPoints.length;
+    }
+
+    // ----- GETTER METHODS -----
+
+    /**
+     * Returns the number of blocks.
+     *
+     * @return the block count
+     */
+    int size ()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the offset of the body of a block in the container.
+     *
+     * @param i the block number
+     * @return the body offset
+     */
+    long getBodyOffset (int i)
+    {
+        return offsets[i] + HzFormat.BLOCK_HEADER_SIZE;
+    }
+
+    /**
+     * Returns the offset of a block in the uncompressed data.
+     *
+     * @param i the block number
+     * @return the uncompressed offset
+     */
+    long getUncompressedOffset (int i)
+    {
+        return uncompressedOffsets[i];
+    }
+
+    /**
+     * Returns the uncompressed length of a block.
+     *
+     * @param i the block number
+     * @return the uncompressed length
+     */
+    int getLength (int i)
+    {
+        return lengths[i];
+    }
+
+    /**
+     * Returns the length of the body of a block.
+     *
+     * @param i the block number
+     * @return the body length
+     */
+    int getBodyLength (int i)
+    {
+        return bodyLengths[i];
+    }
+
+    /**
+     * Returns the total length of the uncompressed data.
+     *
+     * @return the uncompressed size
+     */
+    long getUncompressedSize ()
+    {
+        return count == 0 ? 0 : uncompressedOffsets[count - 1] + lengths[count - 1];
+    }
+
+    /**
+     * Returns the number of bytes between two sync points.
+     *
+     * @return the sync interval, 0 if the container has no sync points
+     */
+    int getSyncInterval ()
+    {
+        return syncInterval;
+    }
+
+    /**
+     * Returns a sync point of a block.
+     *
+     * @param i the block number
+     * @param k the sync point number, from 1 to <code>HzFormat.syncPointCount</code> of the block;
+     *          sync point <code>k</code> is at offset <code>k * getSyncInterval()</code> in the block
+     * @return the bit offset of the sync point in the block body
+     */
+    long getSyncPoint (int i, int k)
+    {
+        return syncPoints[syncStarts[i] + k - 1];
+    }
+
+    /**
+     * Finds the block holding a byte of the uncompressed data.
+     *
+     * @param position offset in the uncompressed data, less than the uncompressed size
+     * @return the block number
+     */
+    int findBlock (long position)
+    {
+        int low  = 0;
+        int high = count - 1;
+
+        while (low < high)
+        {
+            int mid = (low + high + 1) >>> 1;
+
+            if (uncompressedOffsets[mid] <= position)
+            {
+                low = mid;
+            }
+
+            else
+            {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }
+
+    // ----- SERIALIZATION -----
+
+    /**
+     * Writes the index, followed by its offset and the index magic bytes.
+     *
+     * @param out    stream to write to
+     * @param offset offset of the index in the container
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo (DataOutputStream out, long offset) throws IOException
+    {
+        out.writeInt(count);
+
+        for (int i = 0; i < count; i++)
+        {
+            out.writeLong(offsets[i]);
+            out.writeLong(uncompressedOffsets[i]);
+            out.writeInt(lengths[i]);
+            out.writeInt(bodyLengths[i]);
+        }
+
+        for (int i = 0; i < syncCount; i++)
+        {
+            out.writeLong(syncPoints[i]);
+        }
+
+        out.writeLong(offset);
+        out.write(HzFormat.INDEX_MAGIC);
+    }
+
+    /**
+     * Reads the index at the end of a container.
+     *
+     * @param channel      channel reading the container
+     * @param blockSize    the block size from the container header
+     * @param syncInterval the sync interval from the container header, 0 if it has no sync points
+     * @return the index, or null if the container does not end with one
+     * @throws IOException if an I/O error occurs or the index is malformed
+     */
+    static BlockIndex readFrom (FileChannel channel, int blockSize, int syncInterval) throws IOException
+    {
+        long size = channel.size();
+
+        if (size < TAIL_SIZE)
+        {
+            return null;
+        }
+
+        ByteBuffer tail = readFully(channel, size - TAIL_SIZE, TAIL_SIZE);
+        long offset = tail.getLong();
+        byte[] magic = new byte[HzFormat.INDEX_MAGIC.length];
+        tail.get(magic);
+
+        if (!Arrays.equals(magic, HzFormat.INDEX_MAGIC))
+        {
+            return null;
+        }
+
+        if (offset < 0 || offset > size - TAIL_SIZE - 4)
+        {
+            throw new IOException("invalid block index offset");
+        }
+
+        ByteBuffer entries = readFully(channel, offset, (int) Math.min(Integer.MAX_VALUE, size - TAIL_SIZE - offset));
+        int count = entries.getInt();
+
+        if (count < 0 || (long) count * ENTRY_SIZE > entries.remaining())
+        {
+            throw new IOException("invalid block index");
+        }
+
+        BlockIndex index = new BlockIndex(syncInterval);
+        ByteBuffer sync = entries.duplicate();
+        sync.position(entries.position() + count * ENTRY_SIZE);
+        long expected = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            long blockOffset = entries.getLong();
+            long uncompressedOffset = entries.getLong();
+            int length = entries.getInt();
+            int bodyLength = entries.getInt();
+
+            if (uncompressedOffset != expected || length < 0 || length > blockSize || bodyLength < 1
+                    || blockOffset < 0 || blockOffset + HzFormat.BLOCK_HEADER_SIZE + bodyLength > offset)
+            {
+                throw new IOException("invalid block index entry " + i);
+            }
+
+            long[] blockSyncPoints = new long[HzFormat.syncPointCount(length, syncInterval)];
+
+            if ((long) blockSyncPoints.length * 8 > sync.remaining())
+            {
+                throw new IOException("invalid block index");
+            }
+
+            for (int k = 0; k < blockSyncPoints.length; k++)
+            {
+                blockSyncPoints[k] = sync.getLong();
+            }
+
+            index.add(blockOffset, uncompressedOffset, length, bodyLength, blockSyncPoints);
+            expected += length;
+        }
+
+        if (sync.hasRemaining())
+        {
+            throw new IOException("invalid block index");
+        }
+
+        return index;
+    }
+
+    /**
+     * Reads a range of a channel with positional reads.
+     *
+     * @param channel  the channel
+     * @param position offset of the range
+     * @param length   length of the range
+     * @return a buffer holding the range, ready to be read
+     * @throws IOException if an I/O error occurs or the channel ends early
+     */
+    static ByteBuffer readFully (FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new IOException("unexpected end of file");
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,257 @@
+package huffmanzip;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import huffman.CodeTable;
+import huffman.HuffmanDecoder;
+import utils.BitInputStream;
+
+/**
+ * Reads a block container sequentially, one block at a time.
+ */
+final class BlockReader {
+
+    /** Stream the container is read from */
+    private final DataInputStream in;
+
+    /** Uncompressed size of every block but the last */
+    private final int blockSize;
+
+    /** Bytes between two sync points, 0 if the container has none */
+    private final int syncInterval;
+
+    /** Number of sync points of the blocks read so far */
+    private long syncCount;
+
+    /** Whether every block body ends with a checksum */
+    private final boolean checksums;
+
+    /** Whether an index follows the end marker */
+    private final boolean indexed;
+
+    /** Decoder for the shared table, or null if each block has its own */
+    private final HuffmanDecoder sharedDecoder;
+
+    /** Uncompressed length of the current block */
+    private int length;
+
+    /** Body of the current block */
+    private byte[] body;
+
+    /**
+     * Reads the container header.
+     *
+     * @param in stream positioned right after the version byte
+     * @throws IOException if an I/O error occurs or the header is malformed
+     */
+    BlockReader (InputStream in) throws IOException
+    {
+        this(in, null);
+    }
+
+    /**
+     * Reads the container header.
+     *
+     * @param in           stream positioned right after the version byte
+     * @param trainedTable the trained table the container was compressed with, or null
+     * @throws IOException if an I/O error occurs, if the header is malformed, or if the
+     *                     container refers to a trained table other than the given one
+     */
+    BlockReader (InputStream in, TrainedTable trainedTable) throws IOException
+    {
+        this.in = new DataInputStream(in);
+
+        int flags = HzFormat.readInfo(in);
+        blockSize = this.in.readInt();
+
+        if (blockSize < HzFormat.MIN_BLOCK_SIZE || blockSize > HzFormat.MAX_BLOCK_SIZE)
+        {
+            throw new IOException("invalid block size " + blockSize);
+        }
+
+        syncInterval = (flags & HzFormat.FLAG_SYNC_POINTS) != 0 ? this.in.readInt() : 0;
+        checksums = (flags & HzFormat.FLAG_CHECKSUMS) != 0;
+        indexed = (flags & HzFormat.FLAG_NO_INDEX) == 0;
+
+        if (syncInterval < 0)
+        {
+            throw new IOException("invalid sync interval " + syncInterval);
+        }
+
+        if ((flags & HzFormat.FLAG_SHARED_TABLE) != 0)
+        {
+            byte[] table = new byte[this.in.readInt()];
+            this.in.readFully(table);
+
+            sharedDecoder = new HuffmanDecoder(CodeTable.readFrom(new BitInputStream(ByteBuffer.wrap(table))));
+        }
+
+        else if ((flags & HzFormat.FLAG_TABLE_ID) != 0)
+        {
+            sharedDecoder = TrainedTable.check(trainedTable, this.in.readInt()).getDecoder();
+        }
+
+        else
+        {
+            sharedDecoder = null;
+        }
+    }
+
+    /**
+     * Returns the uncompressed size of every block but the last.
+     *
+     * @return the block size
+     */
+    int getBlockSize ()
+    {
+        return blockSize;
+    }
+
+    /**
+     * Returns the number of bytes between two sync points.
+     *
+     * @return the sync interval, 0 if the container has no sync points
+     */
+    int getSyncInterval ()
+    {
+        return syncInterval;
+    }
+
+    /**
+     * Returns whether every block body ends with a checksum.
+     *
+     * @return true if the container has checksums
+     */
+    boolean hasChecksums ()
+    {
+        return checksums;
+    }
+
+    /**
+     * Returns whether the container has a block index after its end marker.
+     *
+     * @return false if the container can only be read sequentially
+     */
+    boolean hasIndex ()
+    {
+        return indexed;
+    }
+
+    /**
+     * Returns the decoder for the container's shared table.
+     *
+     * @return the shared decoder, or null if each block has its own table
+     */
+    HuffmanDecoder getSharedDecoder ()
+    {
+        return sharedDecoder;
+    }
+
+    /**
+     * Returns the uncompressed length of the current block.
+     *
+     * @return the block length
+     */
+    int getLength ()
+    {
+        return length;
+    }
+
+    /**
+     * Returns the body of the current block.
+     *
+     * @return the block body
+     */
+    byte[] getBody ()
+    {
+        return body;
+    }
+
+    /**
+     * Reads the next block.
+     *
+     * @return true if a block was read, false at the end marker
+     * @throws IOException if an I/O error occurs or the block is malformed
+     */
+    boolean next () throws IOException
+    {
+        length = in.readInt();
+
+        if (length == HzFormat.END_OF_BLOCKS)
+        {
+            return false;
+        }
+
+        int bodyLength = in.readInt();
+        int checksumSize = checksums ? HzFormat.CHECKSUM_SIZE : 0;
+
+        if (length < 0 || length > blockSize || bodyLength < 1 + checksumSize || bodyLength > length + 1 + checksumSize)
+        {
+            throw new IOException("invalid block header");
+        }
+
+        body = new byte[bodyLength];
+        in.readFully(body);
+        syncCount += HzFormat.syncPointCount(length, syncInterval);
+
+        return true;
+    }
+
+    /**
+     * Decodes the current block, and checks it if the container has checksums.
+     *
+     * @return the uncompressed bytes of the block
+     * @throws IOException if the block is malformed or does not match its checksum
+     */
+    byte[] decode () throws IOException
+    {
+        byte[] data = new byte[length];
+        BlockCodec.decode(ByteBuffer.wrap(body), data, 0, length, sharedDecoder, checksums);
+
+        return data;
+    }
+
+    /**
+     * Skips the block index that follows the end marker, if the container has
+     * one, leaving the stream right after the container.
+     *
+     * @throws IOException if an I/O error occurs or the index is malformed
+     */
+    void skipIndex () throws IOException
+    {
+        if (!indexed)
+        {
+            return;
+        }
+
+        int count = in.readInt();
+
+        if (count < 0)
+        {
+            throw new IOException("invalid block index");
+        }
+
+        long remaining = (long) count * BlockIndex.ENTRY_SIZE + syncCount * 8 + BlockIndex.TAIL_SIZE;
+
+        while (remaining > 0)
+        {
+            long skipped = in.skip(remaining);
+
+            // skip may stop short without being at the end, so read a byte to tell
+            if (skipped <= 0)
+            {
+                if (in.read() < 0)
+                {
+                    throw new IOException("unexpected end of file");
+                }
+
+                skipped = 1;
+            }
+
+            remaining -= skipped;
+        }
+    }
+}
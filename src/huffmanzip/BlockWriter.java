@@ -0,0 +1,157 @@
+package huffmanzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import huffman.CodeTable;
+import utils.BitOutputStream;
+import utils.UnsynchronizedBitOutputStream;
+
+/**
+ * Writes a block container: the header, then encoded blocks in the order
+ * they are given, then the end marker and the block index, if it has one.
+ */
+final class BlockWriter {
+
+    /** Stream the container is written to */
+    private final DataOutputStream out;
+
+    /** Number of bytes written so far */
+    private long position;
+
+    /** Uncompressed bytes written so far */
+    private long uncompressedPosition;
+
+    /** Index entries of the blocks written so far, or null if the container has no index */
+    private final BlockIndex index;
+
+    /**
+     * Writes the container header.
+     *
+     * @param out          stream to write the container to
+     * @param blockSize    uncompressed size of every block but the last
+     * @param sharedTable  table shared by the blocks, or null if each block has its own
+     * @param syncInterval bytes between two sync points, 0 for none
+     * @throws IOException if an I/O error occurs
+     */
+    BlockWriter (OutputStream out, int blockSize, CodeTable sharedTable, int syncInterval) throws IOException
+    {
+        this(out, blockSize, sharedTable, null, syncInterval);
+    }
+
+    /**
+     * Writes the container header.
+     *
+     * @param out          stream to write the container to
+     * @param blockSize    uncompressed size of every block but the last
+     * @param sharedTable  table shared by the blocks, or null if each block has its own or they share a trained table
+     * @param trainedTable trained table shared by the blocks, stored as its ID, or null
+     * @param syncInterval bytes between two sync points, 0 for none
+     * @throws IOException if an I/O error occurs
+     */
+    BlockWriter (OutputStream out, int blockSize, CodeTable sharedTable, TrainedTable trainedTable,
+                 int syncInterval) throws IOException
+    {
+        this(out, blockSize, sharedTable, trainedTable, syncInterval, true);
+    }
+
+    /**
+     * Writes the container header.
+     *
+     * @param out          stream to write the container to
+     * @param blockSize    uncompressed size of every block but the last
+     * @param sharedTable  table shared by the blocks, or null if each block has its own or they share a trained table
+     * @param trainedTable trained table shared by the blocks, stored as its ID, or null
+     * @param syncInterval bytes between two sync points, 0 for none; sync points are kept in the index
+     * @param indexed      whether to keep the index entries and write the index; without one the
+     *                     writer keeps nothing per block
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the container has sync points but no index
+     */
+    BlockWriter (OutputStream out, int blockSize, CodeTable sharedTable, TrainedTable trainedTable,
+                 int syncInterval, boolean indexed) throws IOException
+    {
+        if (syncInterval != 0 && !indexed)
+        {
+            throw new IllegalArgumentException("sync points need an index");
+        }
+
+        this.out = new DataOutputStream(out);
+        index = indexed ? new BlockIndex(syncInterval) : null;
+
+        int flags = (sharedTable == null ? 0 : HzFormat.FLAG_SHARED_TABLE)
+                  | (syncInterval == 0 ? 0 : HzFormat.FLAG_SYNC_POINTS)
+                  | (trainedTable == null ? 0 : HzFormat.FLAG_TABLE_ID)
+                  | (indexed ? 0 : HzFormat.FLAG_NO_INDEX)
+                  | HzFormat.FLAG_CHECKSUMS;
+        HzFormat.writeHeader(this.out, HzFormat.VERSION_BLOCKS, flags);
+        this.out.writeInt(blockSize);
+
+        if (syncInterval != 0)
+        {
+            this.out.writeInt(syncInterval);
+        }
+
+        if (sharedTable != null)
+        {
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            BitOutputStream bitOutputStream = new UnsynchronizedBitOutputStream(table, false);
+            sharedTable.writeTo(bitOutputStream);
+            bitOutputStream.close();
+
+            this.out.writeInt(table.size());
+            table.writeTo(this.out);
+        }
+
+        if (trainedTable != null)
+        {
+            this.out.writeInt(trainedTable.getId());
+        }
+
+        position = this.out.size();
+    }
+
+    /**
+     * Writes the next block.
+     *
+     * @param length     uncompressed length of the block
+     * @param body       the encoded block body, ending with its checksum
+     * @param syncPoints bit offsets in the body of the sync points of the block
+     * @throws IOException if an I/O error occurs
+     */
+    void writeBlock (int length, byte[] body, long[] syncPoints) throws IOException
+    {
+        if (index != null)
+        {
+            index.add(position, uncompressedPosition, length, body.length, syncPoints);
+        }
+
+        out.writeInt(length);
+        out.writeInt(body.length);
+        out.write(body);
+
+        position += HzFormat.BLOCK_HEADER_SIZE + body.length;
+        uncompressedPosition += length;
+    }
+
+    /**
+     * Writes the end marker and the block index, if the container has one, and
+     * flushes the stream, leaving it open.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void finish () throws IOException
+    {
+        out.writeInt(HzFormat.END_OF_BLOCKS);
+        position += 4;
+
+        if (index != null)
+        {
+            index.writeTo(out, position);
+        }
+
+        out.flush();
+    }
+}
@@ -0,0 +1,607 @@
+package huffmanzip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import huffman.CodeTable;
+import huffman.HuffmanCodeLengths;
+import huffman.HuffmanDecoder;
+import utils.BitInputStream;
+import utils.BitOutputStream;
+
+/**
+ * Burrows-Wheeler transform of a block, followed by move-to-front and
+ * zero-run coding, as in bzip2.
+ *
+ * <p>
+ * The transform sorts the suffixes of the block, built in linear time by
+ * SA-IS, and keeps the byte before each one: bytes that precede similar
+ * contexts end up next to each other. Move-to-front turns those runs into
+ * small numbers, mostly zeros, and every run of zeros is written in
+ * bijective base 2 with the digits {@link #RUN_A} (1) and {@link #RUN_B} (2).
+ * Other move-to-front values <code>v</code> become symbol <code>v + 1</code>.
+ * The symbols are coded with one Huffman table.
+ * </p>
+ *
+ * <pre>
+ * body: block length (32 bits) | primary index (32 bits) | symbol count (32 bits) | code table | symbol*
+ * </pre>
+ *
+ * <p>
+ * The primary index is the row of the sorted suffixes that starts the block,
+ * where the transform holds the end-of-block sentinel instead of a byte. A
+ * block has no sync points: every range is decoded from the whole block.
+ * </p>
+ */
+final class BurrowsWheeler {
+
+    /** Zero-run digit worth 1 at its position */
+    static final int RUN_A = 0;
+
+    /** Zero-run digit worth 2 at its position */
+    static final int RUN_B = 1;
+
+    /** Number of symbols: the two run digits and the move-to-front values 1 to 255 */
+    static final int SYMBOLS = 257;
+
+    private final int length;
+    private final int primary;
+
+    /** Move-to-front and zero-run symbols of the transform */
+    private final int[] symbols;
+    private final int size;
+
+    private final long[] frequencies = new long[SYMBOLS];
+
+    private CodeTable codeTable;
+    private long limitPenaltyBits;
+
+    private BurrowsWheeler (int length, int primary, int[] symbols, int size)
+    {
+        this.length  = length;
+        this.primary = primary;
+        this.symbols = symbols;
+        this.size    = size;
+
+        for (int i = 0; i < size; i++)
+        {
+            frequencies[symbols[i]]++;
+        }
+    }
+
+    /**
+     * Transforms a block and codes the result with move-to-front and zero runs.
+     *
+     * @param data the block, from its position to its limit
+     * @return the transformed block, with the frequencies of its symbols
+     */
+    static BurrowsWheeler transform (ByteBuffer data)
+    {
+        int n = data.remaining();
+        byte[] src = new byte[n];
+        data.duplicate().get(src);
+
+        int[] sa = suffixArray(src);
+        byte[] last = new byte[n];
+        int primary = 0;
+
+        // row 0 is the sentinel's suffix; its byte before is the last byte of the block
+        for (int i = 0, j = 0; i <= n; i++)
+        {
+            if (sa[i] == 0)
+            {
+                primary = i;
+            }
+
+            else
+            {
+                last[j++] = src[sa[i] - 1];
+            }
+        }
+
+        int[] symbols = new int[n + 1];
+        int size = 0;
+        int run = 0;
+        byte[] order = new byte[256];
+
+        for (int i = 0; i < order.length; i++)
+        {
+            order[i] = (byte) i;
+        }
+
+        for (int i = 0; i < n; i++)
+        {
+            byte b = last[i];
+
+            if (order[0] == b)
+            {
+                run++;
+                continue;
+            }
+
+            size = writeRun(run, symbols, size);
+            run = 0;
+
+            int v = 1;
+
+            while (order[v] != b)
+            {
+                v++;
+            }
+
+            System.arraycopy(order, 0, order, 1, v);
+            order[0] = b;
+            symbols[size++] = v + 1;
+        }
+
+        size = writeRun(run, symbols, size);
+
+        return new BurrowsWheeler(n, primary, symbols, size);
+    }
+
+    /**
+     * Writes a run of zeros in bijective base 2, least significant digit first.
+     */
+    private static int writeRun (int run, int[] symbols, int size)
+    {
+        while (run > 0)
+        {
+            run--;
+            symbols[size++] = (run & 1) == 0 ? RUN_A : RUN_B;
+            run >>>= 1;
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns the suffix array of a block followed by a sentinel smaller
+     * than every byte. The sentinel's suffix, <code>src.length</code>, comes
+     * first.
+     *
+     * @param src the block
+     * @return the start of every suffix, in sorted order, <code>src.length + 1</code> of them
+     */
+    static int[] suffixArray (byte[] src)
+    {
+        int n = src.length + 1;
+        int[] t = new int[n];
+
+        for (int i = 0; i < src.length; i++)
+        {
+            t[i] = (src[i] & 0xFF) + 1;
+        }
+
+        int[] sa = new int[n];
+        sais(t, sa, n, 257);
+
+        return sa;
+    }
+
+    /**
+     * Builds the suffix array of a string whose last symbol is a unique 0,
+     * by induced sorting (Nong, Zhang and Chan).
+     */
+    private static void sais (int[] t, int[] sa, int n, int k)
+    {
+        if (n == 1)
+        {
+            sa[0] = 0;
+            return;
+        }
+
+        boolean[] small = new boolean[n];
+        small[n - 1] = true;
+
+        for (int i = n - 2; i >= 0; i--)
+        {
+            small[i] = t[i] < t[i + 1] || (t[i] == t[i + 1] && small[i + 1]);
+        }
+
+        int[] bucket = new int[k];
+
+        // sort the LMS substrings: place them at their bucket ends and induce
+        bucketEnds(t, bucket, n, k);
+        Arrays.fill(sa, -1);
+
+        for (int i = 1; i < n; i++)
+        {
+            if (isLms(small, i))
+            {
+                sa[--bucket[t[i]]] = i;
+            }
+        }
+
+        induce(t, sa, small, bucket, n, k);
+
+        int n1 = 0;
+
+        for (int i = 0; i < n; i++)
+        {
+            if (isLms(small, sa[i]))
+            {
+                sa[n1++] = sa[i];
+            }
+        }
+
+        // name the LMS substrings; equal substrings get equal names
+        Arrays.fill(sa, n1, n, -1);
+        int name = 0;
+        int prev = -1;
+
+        for (int i = 0; i < n1; i++)
+        {
+            int pos = sa[i];
+            boolean diff = false;
+
+            for (int d = 0; d < n; d++)
+            {
+                if (prev == -1 || t[pos + d] != t[prev + d] || small[pos + d] != small[prev + d])
+                {
+                    diff = true;
+                    break;
+                }
+
+                if (d > 0 && (isLms(small, pos + d) || isLms(small, prev + d)))
+                {
+                    break;
+                }
+            }
+
+            if (diff)
+            {
+                name++;
+                prev = pos;
+            }
+
+            sa[n1 + pos / 2] = name - 1;
+        }
+
+        int[] s1 = new int[n1];
+
+        for (int i = n - 1, j = n1 - 1; i >= n1; i--)
+        {
+            if (sa[i] >= 0)
+            {
+                s1[j--] = sa[i];
+            }
+        }
+
+        // sort the LMS suffixes, recursing while names repeat
+        int[] sa1 = new int[n1];
+
+        if (name < n1)
+        {
+            sais(s1, sa1, n1, name);
+        }
+
+        else
+        {
+            for (int i = 0; i < n1; i++)
+            {
+                sa1[s1[i]] = i;
+            }
+        }
+
+        // induce the whole array from the sorted LMS suffixes
+        for (int i = 1, j = 0; i < n; i++)
+        {
+            if (isLms(small, i))
+            {
+                s1[j++] = i;
+            }
+        }
+
+        bucketEnds(t, bucket, n, k);
+        Arrays.fill(sa, -1);
+
+        for (int i = n1 - 1; i >= 0; i--)
+        {
+            int j = s1[sa1[i]];
+            sa[--bucket[t[j]]] = j;
+        }
+
+        induce(t, sa, small, bucket, n, k);
+    }
+
+    private static boolean isLms (boolean[] small, int i)
+    {
+        return i > 0 && small[i] && !small[i - 1];
+    }
+
+    /**
+     * Induces the order of the L-type suffixes from left to right, then of the
+     * S-type suffixes from right to left.
+     */
+    private static void induce (int[] t, int[] sa, boolean[] small, int[] bucket, int n, int k)
+    {
+        bucketStarts(t, bucket, n, k);
+
+        for (int i = 0; i < n; i++)
+        {
+            int j = sa[i] - 1;
+
+            if (j >= 0 && !small[j])
+            {
+                sa[bucket[t[j]]++] = j;
+            }
+        }
+
+        bucketEnds(t, bucket, n, k);
+
+        for (int i = n - 1; i >= 0; i--)
+        {
+            int j = sa[i] - 1;
+
+            if (j >= 0 && small[j])
+            {
+                sa[--bucket[t[j]]] = j;
+            }
+        }
+    }
+
+    private static void bucketStarts (int[] t, int[] bucket, int n, int k)
+    {
+        Arrays.fill(bucket, 0);
+
+        for (int i = 0; i < n; i++)
+        {
+            bucket[t[i]]++;
+        }
+
+        for (int c = 0, sum = 0; c < k; c++)
+        {
+            int count = bucket[c];
+            bucket[c] = sum;
+            sum += count;
+        }
+    }
+
+    private static void bucketEnds (int[] t, int[] bucket, int n, int k)
+    {
+        Arrays.fill(bucket, 0);
+
+        for (int i = 0; i < n; i++)
+        {
+            bucket[t[i]]++;
+        }
+
+        for (int c = 0, sum = 0; c < k; c++)
+        {
+            sum += bucket[c];
+            bucket[c] = sum;
+        }
+    }
+
+    /**
+     * Builds the code table of the symbols.
+     *
+     * @param maxLength the longest code allowed, in bits, or 0 for no limit
+     */
+    void build (int maxLength)
+    {
+        codeTable = HuffmanCodeLengths.canonicalTable(frequencies, maxLength);
+
+        if (maxLength > 0)
+        {
+            limitPenaltyBits = BlockCodec.codedBits(frequencies, codeTable)
+                    - BlockCodec.codedBits(frequencies, HuffmanCodeLengths.canonicalTable(frequencies, 0));
+        }
+    }
+
+    /**
+     * Returns the bits added by limiting the code lengths, compared with
+     * unlimited Huffman codes.
+     *
+     * @return the penalty in bits, 0 if the lengths were not limited
+     */
+    long getLimitPenaltyBits ()
+    {
+        return limitPenaltyBits;
+    }
+
+    /**
+     * Returns the entropy of the move-to-front and zero-run symbols.
+     *
+     * @return the size in bits
+     */
+    double getEntropyBits ()
+    {
+        return CompressionStats.entropyBits(frequencies);
+    }
+
+    /**
+     * Writes the block length, the primary index and the code table.
+     *
+     * @param stream BitOutputStream to write the header into
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo (BitOutputStream stream) throws IOException
+    {
+        stream.writeBits(length, 32);
+        stream.writeBits(primary, 32);
+        stream.writeBits(size, 32);
+        codeTable.writeTo(stream);
+    }
+
+    /**
+     * Writes the code of every symbol.
+     *
+     * @param stream BitOutputStream to write the symbols into
+     * @throws IOException if an I/O error occurs
+     */
+    void writeSymbols (BitOutputStream stream) throws IOException
+    {
+        for (int i = 0; i < size; i++)
+        {
+            codeTable.writeCode(symbols[i], stream);
+        }
+    }
+
+    /**
+     * Decodes a range of a block. The whole block is decoded and inverted,
+     * then the range is copied out.
+     *
+     * @param stream BitInputStream positioned after the method byte
+     * @param from   offset of the range in the block
+     * @param dst    array receiving the decoded bytes
+     * @param off    offset of the range in <code>dst</code>
+     * @param len    length of the range
+     * @throws IOException if the stream is truncated or malformed
+     */
+    static void decode (BitInputStream stream, int from, byte[] dst, int off, int len) throws IOException
+    {
+        long n       = stream.readBits(32);
+        long primary = stream.readBits(32);
+        long count   = stream.readBits(32);
+
+        if (n < (long) from + len || n >= Integer.MAX_VALUE || primary > n || count > n + 1)
+        {
+            throw new IOException("invalid Burrows-Wheeler block header");
+        }
+
+        CodeTable table = CodeTable.readFrom(stream);
+
+        if (table.size() > SYMBOLS || (table.getSymbolCount() == 0 && count > 0))
+        {
+            throw new IOException("invalid symbol in Burrows-Wheeler table");
+        }
+
+        int[] symbols = new int[(int) count];
+        HuffmanDecoder decoder = count == 0 ? null : new HuffmanDecoder(table);
+
+        for (int done = 0; done < count; )
+        {
+            int read = decoder.read(stream, symbols, done, (int) count - done);
+
+            if (read == 0)
+            {
+                throw new IOException("truncated block");
+            }
+
+            done += read;
+        }
+
+        byte[] last = undoMoveToFront(symbols, (int) n);
+        byte[] block = (from == 0 && len == n) ? null : new byte[(int) n];
+        invert(last, (int) primary, block == null ? dst : block, block == null ? off : 0);
+
+        if (block != null)
+        {
+            System.arraycopy(block, from, dst, off, len);
+        }
+    }
+
+    /**
+     * Expands the zero runs and undoes move-to-front.
+     */
+    private static byte[] undoMoveToFront (int[] symbols, int n) throws IOException
+    {
+        byte[] last = new byte[n];
+        byte[] order = new byte[256];
+
+        for (int i = 0; i < order.length; i++)
+        {
+            order[i] = (byte) i;
+        }
+
+        int position = 0;
+        long run = 0;
+        int digit = 1;
+
+        for (int i = 0; i <= symbols.length; i++)
+        {
+            int symbol = i < symbols.length ? symbols[i] : -1;
+
+            if (symbol == RUN_A || symbol == RUN_B)
+            {
+                run += (long) digit << symbol;
+                digit <<= 1;
+
+                if (run > n - position)
+                {
+                    throw new IOException("zero run past the end of the block");
+                }
+
+                continue;
+            }
+
+            Arrays.fill(last, position, position + (int) run, order[0]);
+            position += (int) run;
+            run = 0;
+            digit = 1;
+
+            if (symbol < 0)
+            {
+                break;
+            }
+
+            if (position == n)
+            {
+                throw new IOException("symbol past the end of the block");
+            }
+
+            int v = symbol - 1;
+            byte b = order[v];
+            System.arraycopy(order, 0, order, 1, v);
+            order[0] = b;
+            last[position++] = b;
+        }
+
+        if (position != n)
+        {
+            throw new IOException("Burrows-Wheeler block has the wrong length");
+        }
+
+        return last;
+    }
+
+    /**
+     * Inverts the transform, from the last byte of the block backwards.
+     */
+    private static void invert (byte[] last, int primary, byte[] dst, int off) throws IOException
+    {
+        int n = last.length;
+
+        if (n == 0)
+        {
+            return;
+        }
+
+        // rows before the primary one are stored at their own index, rows after it one lower
+        int[] next = new int[n];
+        int[] start = new int[256];
+
+        for (byte b : last)
+        {
+            start[b & 0xFF]++;
+        }
+
+        for (int c = 0, sum = 1; c < 256; c++)
+        {
+            int count = start[c];
+            start[c] = sum;
+            sum += count;
+        }
+
+        for (int j = 0; j < n; j++)
+        {
+            next[j] = start[last[j] & 0xFF]++;
+        }
+
+        int row = 0;
+
+        for (int i = n - 1; i >= 0; i--)
+        {
+            if (row == primary)
+            {
+                throw new IOException("invalid primary index");
+            }
+
+            int j = row < primary ? row : row - 1;
+            dst[off + i] = last[j];
+            row = next[j];
+        }
+    }
+}
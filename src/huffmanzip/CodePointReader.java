@@ -0,0 +1,90 @@
+package huffmanzip;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the Unicode code points of a character stream, joining surrogate
+ * pairs into a single supplementary code point. A surrogate that is not part
+ * of a pair is returned as it is.
+ */
+final class CodePointReader {
+
+    /** Number of chars read from the underlying reader at once */
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * Creates a reader of code points.
+     *
+     * @param reader the character stream, read in large chunks
+     */
+    CodePointReader (Reader reader)
+    {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next code point.
+     *
+     * @return the code point, or -1 at the end of the stream
+     * @throws IOException if an I/O error occurs
+     */
+    int read () throws IOException
+    {
+        if (position == limit && !fill())
+        {
+            return -1;
+        }
+
+        char high = buffer[position++];
+
+        if (!Character.isHighSurrogate(high) || (position == limit && !fill()))
+        {
+            return high;
+        }
+
+        char low = buffer[position];
+
+        if (!Character.isLowSurrogate(low))
+        {
+            return high;
+        }
+
+        position++;
+        return Character.toCodePoint(high, low);
+    }
+
+    /**
+     * Refills the buffer.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill () throws IOException
+    {
+        limit = reader.read(buffer, 0, BUFFER_SIZE);
+        position = 0;
+
+        if (limit < 0)
+        {
+            limit = 0;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Closes the underlying reader.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void close () throws IOException
+    {
+        reader.close();
+    }
+}
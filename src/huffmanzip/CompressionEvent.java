@@ -0,0 +1,48 @@
+package huffmanzip;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event holding the totals of a compression or decompression
+ * run, committed when the run finishes.
+ */
+@Name("huffmanzip.Compression")
+@Label("Compression")
+@Category("HuffmanZip")
+@Description("Totals of a HuffmanZip compression or decompression run")
+final class CompressionEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Blocks")
+    long blocks;
+
+    @Label("Uncompressed Size")
+    @DataAmount
+    long inputBytes;
+
+    @Label("Compressed Size")
+    @DataAmount
+    long outputBytes;
+
+    @Label("Bits per Symbol")
+    double bitsPerSymbol;
+
+    @Label("Entropy")
+    @Description("Order-0 entropy of the symbols, in bits per symbol")
+    double entropy;
+
+    @Label("Wall Time")
+    @Timespan
+    long wallTime;
+
+    @Label("Peak Heap")
+    @DataAmount
+    long peakHeap;
+}
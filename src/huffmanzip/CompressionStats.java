@@ -0,0 +1,551 @@
+package huffmanzip;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import huffman.CodeTable;
+import huffman.HuffmanCodeLengths;
+
+/**
+ * Metrics of a compression or decompression run: sizes, ratio, throughput,
+ * average code length against the entropy of the data, time spent in each
+ * phase, and peak heap usage.
+ *
+ * <p>
+ * Blocks are encoded concurrently, so every total can be updated from any
+ * worker thread. Phase times are summed over the threads that ran them, and
+ * can therefore exceed the wall time of the run. When the run finishes, its
+ * totals are also committed as a {@link CompressionEvent} for Java Flight
+ * Recorder.
+ * </p>
+ */
+public final class CompressionStats {
+
+    /**
+     * A phase of the compression, timed separately.
+     */
+    public enum Phase {
+
+        /** Counting symbol frequencies */
+        COUNT("counting"),
+
+        /** Computing code lengths and canonical codes */
+        BUILD("code building"),
+
+        /** Serializing code tables */
+        TABLE("table writing"),
+
+        /** Writing the code of every symbol */
+        ENCODE("encoding"),
+
+        /** Writing finished blocks and the index to the output */
+        WRITE("output writing");
+
+        private final String label;
+
+        Phase (String label)
+        {
+            this.label = label;
+        }
+
+        /**
+         * Returns the name of the phase as printed in reports.
+         *
+         * @return the label
+         */
+        public String getLabel ()
+        {
+            return label;
+        }
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /** Number of blocks encoded */
+    final LongAdder blocks = new LongAdder();
+
+    /** Uncompressed bytes */
+    final LongAdder inputBytes = new LongAdder();
+
+    /** Compressed bytes */
+    final LongAdder outputBytes = new LongAdder();
+
+    /** Symbols encoded: bytes, or code points in text mode */
+    final LongAdder symbols = new LongAdder();
+
+    /** Bits taken by the codes of the symbols, without tables and headers */
+    final LongAdder codedBits = new LongAdder();
+
+    /** Order-0 entropy of the symbols, in bits, summed over the code tables used */
+    final DoubleAdder entropyBits = new DoubleAdder();
+
+    /** Bits added by limiting the code lengths, compared with unlimited Huffman codes */
+    final LongAdder limitPenaltyBits = new LongAdder();
+
+    /** Bits added by estimating the frequencies of a table from samples, compared with an exact count */
+    final LongAdder samplePenaltyBits = new LongAdder();
+
+    /** Exact byte frequencies of the blocks encoded with a table estimated from samples */
+    private final long[] exactFrequencies = new long[256];
+
+    /** Whether a table was estimated from samples, so that the sample penalty applies */
+    private volatile boolean sampled;
+
+    private final LongAdder[] wallNanos = new LongAdder[Phase.values().length];
+    private final LongAdder[] cpuNanos  = new LongAdder[Phase.values().length];
+
+    private String operation = "encode";
+    private long startNanos  = -1;
+    private long wallTime    = -1;
+    private long peakHeap    = -1;
+    private boolean measureHeap;
+
+    CompressionStats ()
+    {
+        for (int i = 0; i < wallNanos.length; i++)
+        {
+            wallNanos[i] = new LongAdder();
+            cpuNanos[i]  = new LongAdder();
+        }
+    }
+
+    /**
+     * Starts the clock of the run and, if asked, resets the peak usage of the
+     * heap. The peaks are kept by the JVM for all of its threads, so they are
+     * only reset when the peak heap is going to be reported.
+     *
+     * @param operation   name of the run, such as "encode" or "decode"
+     * @param measureHeap whether to measure the peak heap usage of the run
+     */
+    void start (String operation, boolean measureHeap)
+    {
+        this.operation = operation;
+        this.measureHeap = measureHeap;
+
+        if (measureHeap)
+        {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            {
+                if (pool.getType() == MemoryType.HEAP)
+                {
+                    pool.resetPeakUsage();
+                }
+            }
+        }
+
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Stops the clock, samples the peak heap usage if it is measured and
+     * commits the totals to Java Flight Recorder.
+     */
+    void finish ()
+    {
+        wallTime = startNanos < 0 ? -1 : System.nanoTime() - startNanos;
+
+        if (measureHeap)
+        {
+            peakHeap = 0;
+
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            {
+                if (pool.getType() == MemoryType.HEAP)
+                {
+                    peakHeap += pool.getPeakUsage().getUsed();
+                }
+            }
+        }
+
+        CompressionEvent event = new CompressionEvent();
+
+        if (event.shouldCommit())
+        {
+            event.operation       = operation;
+            event.blocks          = blocks.sum();
+            event.inputBytes      = inputBytes.sum();
+            event.outputBytes     = outputBytes.sum();
+            event.bitsPerSymbol   = getAverageCodeLength();
+            event.entropy         = getEntropy();
+            event.wallTime        = wallTime;
+            event.peakHeap        = peakHeap;
+            event.commit();
+        }
+    }
+
+    /**
+     * Adds the totals of another run, such as the block compression of a file
+     * whose shared table was built first.
+     *
+     * @param other the totals to add
+     */
+    void add (CompressionStats other)
+    {
+        blocks.add(other.blocks.sum());
+        inputBytes.add(other.inputBytes.sum());
+        outputBytes.add(other.outputBytes.sum());
+        symbols.add(other.symbols.sum());
+        codedBits.add(other.codedBits.sum());
+        entropyBits.add(other.entropyBits.sum());
+        limitPenaltyBits.add(other.limitPenaltyBits.sum());
+        samplePenaltyBits.add(other.samplePenaltyBits.sum());
+        sampled |= other.sampled;
+        addExactFrequencies(other.getExactFrequencies());
+
+        for (int i = 0; i < wallNanos.length; i++)
+        {
+            wallNanos[i].add(other.wallNanos[i].sum());
+            cpuNanos[i].add(other.cpuNanos[i].sum());
+        }
+    }
+
+    /**
+     * Adds the exact byte frequencies of a block encoded with a table estimated
+     * from samples.
+     *
+     * @param frequencies number of occurrences of each byte value in the block
+     */
+    synchronized void addExactFrequencies (long[] frequencies)
+    {
+        for (int i = 0; i < exactFrequencies.length; i++)
+        {
+            exactFrequencies[i] += frequencies[i];
+        }
+    }
+
+    /**
+     * Returns the exact byte frequencies added so far.
+     *
+     * @return a copy of the frequencies
+     */
+    synchronized long[] getExactFrequencies ()
+    {
+        return exactFrequencies.clone();
+    }
+
+    /**
+     * Adds the costs of a table estimated from samples, once the exact frequencies
+     * of its symbols are known: the bits its length limit adds to a table built from
+     * the exact count, and the bits the estimate adds on top of that. Also adds the
+     * entropy of the symbols.
+     *
+     * @param frequencies exact frequency of each symbol
+     * @param estimated   bits the symbols took with the estimated table
+     * @param maxLength   the longest code allowed, in bits, or 0 for no limit
+     */
+    void addSampleCosts (long[] frequencies, long estimated, int maxLength)
+    {
+        sampled = true;
+
+        if (estimated == 0)
+        {
+            return;
+        }
+
+        long exact = BlockCodec.codedBits(frequencies, CodeTable.canonical(HuffmanCodeLengths.compute(frequencies)));
+        long limited = BlockCodec.codedBits(frequencies, HuffmanCodeLengths.canonicalTable(frequencies, maxLength));
+
+        limitPenaltyBits.add(limited - exact);
+        samplePenaltyBits.add(estimated - limited);
+        entropyBits.add(entropyBits(frequencies));
+    }
+
+    /**
+     * Returns whether a table was estimated from samples.
+     *
+     * @return true if the sample costs were added
+     */
+    boolean isSampled ()
+    {
+        return sampled;
+    }
+
+    /**
+     * Returns a timer for the phases run by the current thread.
+     *
+     * @param stats totals to add the phase times to, or null to only measure them
+     * @return a timer started now
+     */
+    static Timer timer (CompressionStats stats)
+    {
+        return new Timer(stats);
+    }
+
+    /**
+     * Measures consecutive phases on one thread, in wall and CPU time.
+     */
+    static final class Timer {
+
+        private final CompressionStats stats;
+        private long wall;
+        private long cpu;
+
+        private Timer (CompressionStats stats)
+        {
+            this.stats = stats;
+            this.wall  = System.nanoTime();
+            this.cpu   = cpuTime();
+        }
+
+        /**
+         * Ends a phase, started when the timer was created or the previous phase ended.
+         *
+         * @param phase the phase that ended
+         * @return the wall time of the phase, in nanoseconds
+         */
+        long lap (Phase phase)
+        {
+            long now    = System.nanoTime();
+            long nowCpu = cpuTime();
+            long elapsed = now - wall;
+
+            if (stats != null)
+            {
+                stats.wallNanos[phase.ordinal()].add(elapsed);
+                stats.cpuNanos[phase.ordinal()].add(nowCpu - cpu);
+            }
+
+            wall = now;
+            cpu  = nowCpu;
+            return elapsed;
+        }
+
+        private static long cpuTime ()
+        {
+            return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+        }
+    }
+
+    /**
+     * Returns the order-0 entropy of a frequency array: the size in bits of
+     * the symbols under an ideal code built for these frequencies.
+     *
+     * @param frequencies frequency of each symbol
+     * @return the entropy in bits, for all symbols together
+     */
+    static double entropyBits (long[] frequencies)
+    {
+        long total = 0;
+
+        for (long frequency : frequencies)
+        {
+            total += frequency;
+        }
+
+        double bits = 0;
+
+        for (long frequency : frequencies)
+        {
+            if (frequency > 0)
+            {
+                bits -= frequency * (Math.log((double) frequency / total) / Math.log(2));
+            }
+        }
+
+        return bits;
+    }
+
+    // ----- GETTER METHODS -----
+
+    /**
+     * Returns the number of blocks encoded.
+     *
+     * @return the block count, 0 for a single-stream file
+     */
+    public long getBlocks ()
+    {
+        return blocks.sum();
+    }
+
+    /**
+     * Returns the size of the uncompressed data.
+     *
+     * @return the uncompressed size in bytes
+     */
+    public long getInputBytes ()
+    {
+        return inputBytes.sum();
+    }
+
+    /**
+     * Returns the size of the compressed data.
+     *
+     * @return the compressed size in bytes
+     */
+    public long getOutputBytes ()
+    {
+        return outputBytes.sum();
+    }
+
+    /**
+     * Returns the compression ratio, uncompressed size over compressed size.
+     *
+     * @return the ratio, 0 if nothing was written
+     */
+    public double getRatio ()
+    {
+        long out = outputBytes.sum();
+        return out == 0 ? 0.0 : (double) inputBytes.sum() / out;
+    }
+
+    /**
+     * Returns the average length of the code of a symbol, without tables.
+     *
+     * @return bits per symbol, 0 if no symbol was encoded
+     */
+    public double getAverageCodeLength ()
+    {
+        long n = symbols.sum();
+        return n == 0 ? 0.0 : (double) codedBits.sum() / n;
+    }
+
+    /**
+     * Returns the order-0 entropy of the symbols, the lower bound of the average
+     * code length. For block containers whose blocks have their own tables, it is
+     * the average over the blocks of the entropy of each block.
+     *
+     * @return bits per symbol, 0 if no symbol was encoded
+     */
+    public double getEntropy ()
+    {
+        long n = symbols.sum();
+        return n == 0 ? 0.0 : entropyBits.sum() / n;
+    }
+
+    /**
+     * Returns the time spent in a phase, summed over all threads.
+     *
+     * @param phase the phase
+     * @return the wall time in nanoseconds
+     */
+    public long getWallTime (Phase phase)
+    {
+        return wallNanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * Returns the CPU time spent in a phase, summed over all threads.
+     *
+     * @param phase the phase
+     * @return the CPU time in nanoseconds, 0 if the JVM cannot measure it
+     */
+    public long getCpuTime (Phase phase)
+    {
+        return cpuNanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * Returns the wall time of the whole run.
+     *
+     * @return the time in nanoseconds, or -1 if the run was not timed
+     */
+    public long getWallTime ()
+    {
+        return wallTime;
+    }
+
+    /**
+     * Returns the throughput of the run, in uncompressed bytes.
+     *
+     * @return megabytes (2^20 bytes) per second, 0 if the run was not timed
+     */
+    public double getThroughput ()
+    {
+        return wallTime <= 0 ? 0.0 : inputBytes.sum() / (1024.0 * 1024.0) / (wallTime / 1e9);
+    }
+
+    /**
+     * Returns the peak heap usage during the run, the sum of the peaks of the
+     * heap memory pools.
+     *
+     * @return the peak usage in bytes, or -1 if the run was not timed or the
+     *         heap was not measured
+     */
+    public long getPeakHeap ()
+    {
+        return peakHeap;
+    }
+
+    // ----- REPORTING METHODS -----
+
+    /**
+     * Prints a report of the run.
+     *
+     * @param out stream to print to
+     */
+    public void report (PrintStream out)
+    {
+        out.printf("uncompressed   %d bytes%n", getInputBytes());
+        out.printf("compressed     %d bytes, ratio %.3f (%.2f%%)%n", getOutputBytes(), getRatio(),
+                getInputBytes() == 0 ? 0.0 : 100.0 * getOutputBytes() / getInputBytes());
+
+        if (getBlocks() > 0)
+        {
+            out.printf("blocks         %d%n", getBlocks());
+        }
+
+        out.printf("time           %.3f s, %.1f MB/s%n", wallTime / 1e9, getThroughput());
+
+        if (symbols.sum() > 0)
+        {
+            out.printf("code length    %.4f bits per symbol, entropy %.4f%n", getAverageCodeLength(), getEntropy());
+        }
+
+        if (peakHeap >= 0)
+        {
+            out.printf("peak heap      %.1f MB%n", peakHeap / (1024.0 * 1024.0));
+        }
+
+        boolean timed = false;
+
+        for (Phase phase : Phase.values())
+        {
+            timed |= getWallTime(phase) > 0;
+        }
+
+        if (timed)
+        {
+            out.printf("%-16s %10s %10s%n", "phase", "wall ms", "cpu ms");
+
+            for (Phase phase : Phase.values())
+            {
+                out.printf("%-16s %10.1f %10.1f%n", phase.getLabel(), getWallTime(phase) / 1e6, getCpuTime(phase) / 1e6);
+            }
+        }
+    }
+
+    /**
+     * Prints the cost of estimating the frequencies of a table from samples.
+     *
+     * @param out      stream to print to
+     * @param fraction the fraction of the input that was sampled
+     */
+    void reportSamplePenalty (PrintStream out, double fraction)
+    {
+        long penalty = (samplePenaltyBits.sum() + 7) / 8;
+        long exact = outputBytes.sum() - penalty;
+
+        out.printf("table estimated from %.3g%% of the input: %d bytes more than an exact count (+%.3f%%)%n",
+                100 * fraction, penalty, exact == 0 ? 0.0 : 100.0 * penalty / exact);
+    }
+
+    /**
+     * Prints the cost of limiting the code lengths.
+     *
+     * @param out       stream to print to
+     * @param maxLength the longest code allowed, in bits
+     */
+    void reportLimitPenalty (PrintStream out, int maxLength)
+    {
+        long penalty = (limitPenaltyBits.sum() + 7) / 8;
+        long unlimited = outputBytes.sum() - penalty;
+
+        out.printf("code lengths limited to %d bits: %d bytes more than unlimited codes (+%.3f%%)%n",
+                maxLength, penalty, unlimited == 0 ? 0.0 : 100.0 * penalty / unlimited);
+    }
+}
@@ -0,0 +1,351 @@
+package huffmanzip;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import huffman.CodeTable;
+import huffman.HuffmanCodeLengths;
+import huffman.HuffmanDecoder;
+import utils.BitInputStream;
+import utils.BitOutputStream;
+import utils.UnsynchronizedBitOutputStream;
+
+/**
+ * Order-1 code tables of a block: the code of a byte depends on the byte
+ * before it, its context.
+ *
+ * <p>
+ * A context seen often enough to pay for its own table gets one, built from
+ * the bytes that follow it. All other contexts share a fallback table built
+ * from the bytes that follow them, so rare contexts cost no table at all. The
+ * context of the first byte of a block, and of the first byte of every reset
+ * interval, is 0, so that decoding can start at a sync point. The reset
+ * interval is the sync interval of the container, stored with the tables.
+ * </p>
+ *
+ * <pre>
+ * tables: reset interval (32 bits, 0 for none) | own table flag of each context (256 bits)
+ *         | fallback table | own table*
+ * </pre>
+ *
+ * <p>
+ * Every table is written by <code>CodeTable.writeTo</code>, the own tables in
+ * the order of their contexts.
+ * </p>
+ */
+final class ContextModel {
+
+    /** Number of contexts, one per byte value */
+    static final int CONTEXTS = 256;
+
+    /** Whether each context has its own table */
+    private final boolean[] own = new boolean[CONTEXTS];
+
+    /** Table of each context, its own or the fallback table */
+    private final CodeTable[] tables = new CodeTable[CONTEXTS];
+
+    private CodeTable fallback;
+
+    /** Number of bytes after which the context is reset to 0, or 0 if it never is */
+    private final int interval;
+
+    /** Decoder of each context, null for contexts that cannot occur; only set for a model that was read */
+    private HuffmanDecoder[] decoders;
+
+    /** Bits added by limiting the code lengths, compared with unlimited Huffman codes */
+    private long limitPenaltyBits;
+
+    private ContextModel (int interval)
+    {
+        this.interval = interval;
+    }
+
+    /**
+     * Counts every byte of a block in its context.
+     *
+     * @param data         the block, from its position to its limit
+     * @param syncInterval bytes between two sync points, 0 if the block has none
+     * @return the number of occurrences of each byte value after each context,
+     *         null for contexts that do not occur
+     */
+    static long[][] count (ByteBuffer data, int syncInterval)
+    {
+        long[][] counts = new long[CONTEXTS][];
+        int off = data.position();
+        int len = data.remaining();
+        int step = syncInterval == 0 ? Math.max(len, 1) : syncInterval;
+
+        for (int start = off; start < off + len; start += step)
+        {
+            int context = 0;
+
+            for (int i = start; i < Math.min(start + step, off + len); i++)
+            {
+                int b = data.get(i) & 0xFF;
+
+                if (counts[context] == null)
+                {
+                    counts[context] = new long[CONTEXTS];
+                }
+
+                counts[context][b]++;
+                context = b;
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * Adds up the counts of all contexts.
+     *
+     * @param counts the number of occurrences of each byte value after each context
+     * @return the number of occurrences of each byte value
+     */
+    static long[] order0 (long[][] counts)
+    {
+        long[] frequencies = new long[CONTEXTS];
+
+        for (long[] context : counts)
+        {
+            for (int b = 0; context != null && b < CONTEXTS; b++)
+            {
+                frequencies[b] += context[b];
+            }
+        }
+
+        return frequencies;
+    }
+
+    /**
+     * Chooses the contexts that get their own table and builds the tables.
+     *
+     * @param counts       the number of occurrences of each byte value after each context
+     * @param syncInterval bytes between two sync points, as given to <code>count</code>
+     * @param maxLength    the longest code allowed, in bits, or 0 for no limit
+     * @return the model, or null if a single table would code the block in as few bits
+     */
+    static ContextModel build (long[][] counts, int syncInterval, int maxLength)
+    {
+        ContextModel model = new ContextModel(syncInterval);
+        long[] all = order0(counts);
+        CodeTable order0 = HuffmanCodeLengths.canonicalTable(all, maxLength);
+        long[] rest = new long[CONTEXTS];
+        long bits = 32 + CONTEXTS;
+
+        for (int context = 0; context < CONTEXTS; context++)
+        {
+            long[] frequencies = counts[context];
+
+            if (frequencies == null)
+            {
+                continue;
+            }
+
+            CodeTable table = HuffmanCodeLengths.canonicalTable(frequencies, maxLength);
+            long ownBits = BlockCodec.codedBits(frequencies, table) + tableBits(table);
+
+            if (ownBits < BlockCodec.codedBits(frequencies, order0))
+            {
+                model.own[context]    = true;
+                model.tables[context] = table;
+                bits += ownBits;
+                continue;
+            }
+
+            for (int b = 0; b < CONTEXTS; b++)
+            {
+                rest[b] += frequencies[b];
+            }
+        }
+
+        model.fallback = HuffmanCodeLengths.canonicalTable(rest, maxLength);
+        bits += BlockCodec.codedBits(rest, model.fallback) + tableBits(model.fallback);
+
+        if (bits >= BlockCodec.codedBits(all, order0) + tableBits(order0))
+        {
+            return null;
+        }
+
+        model.addLimitPenalty(rest, model.fallback, maxLength);
+
+        for (int context = 0; context < CONTEXTS; context++)
+        {
+            if (model.own[context])
+            {
+                model.addLimitPenalty(counts[context], model.tables[context], maxLength);
+            }
+
+            else
+            {
+                model.tables[context] = model.fallback;
+            }
+        }
+
+        return model;
+    }
+
+    /**
+     * Adds the bits a table loses to its length limit, compared with unlimited Huffman codes.
+     */
+    private void addLimitPenalty (long[] frequencies, CodeTable table, int maxLength)
+    {
+        if (maxLength > 0)
+        {
+            limitPenaltyBits += BlockCodec.codedBits(frequencies, table)
+                    - BlockCodec.codedBits(frequencies, HuffmanCodeLengths.canonicalTable(frequencies, 0));
+        }
+    }
+
+    /**
+     * Returns the size of a serialized table.
+     */
+    private static long tableBits (CodeTable table)
+    {
+        try
+        {
+            BitOutputStream bitOutputStream = new UnsynchronizedBitOutputStream(OutputStream.nullOutputStream(), false);
+            table.writeTo(bitOutputStream);
+
+            return bitOutputStream.getBitPosition();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("cannot serialize a table to a null stream", e);
+        }
+    }
+
+    /**
+     * Returns the table of a context.
+     *
+     * @param context the byte before the one to encode, or 0 at the start of a block or sync interval
+     * @return the table, holding a code for every byte counted after the context
+     */
+    CodeTable get (int context)
+    {
+        return tables[context];
+    }
+
+    /**
+     * Returns the bits added by limiting the code lengths of the tables that
+     * were built, own and fallback alike.
+     *
+     * @return the penalty in bits, 0 if the lengths were not limited
+     */
+    long getLimitPenaltyBits ()
+    {
+        return limitPenaltyBits;
+    }
+
+    /**
+     * Writes the own table flags and the tables.
+     *
+     * @param stream BitOutputStream to write the tables into
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo (BitOutputStream stream) throws IOException
+    {
+        stream.writeBits(interval, 32);
+
+        for (int context = 0; context < CONTEXTS; context++)
+        {
+            stream.writeBit(own[context] ? 1 : 0);
+        }
+
+        fallback.writeTo(stream);
+
+        for (int context = 0; context < CONTEXTS; context++)
+        {
+            if (own[context])
+            {
+                tables[context].writeTo(stream);
+            }
+        }
+    }
+
+    /**
+     * Reads the tables written by <code>writeTo</code> and builds their decoders.
+     *
+     * @param stream BitInputStream to read the tables from
+     * @return the model, ready to decode
+     * @throws IOException if an I/O error occurs, or if a table is malformed
+     */
+    static ContextModel readFrom (BitInputStream stream) throws IOException
+    {
+        int interval = (int) stream.readBits(32);
+
+        if (interval < 0)
+        {
+            throw new IOException("invalid context reset interval " + interval);
+        }
+
+        ContextModel model = new ContextModel(interval);
+        boolean[] own = new boolean[CONTEXTS];
+
+        for (int context = 0; context < CONTEXTS; context++)
+        {
+            own[context] = stream.readBit() == 1;
+        }
+
+        HuffmanDecoder fallback = decoder(CodeTable.readFrom(stream));
+        model.decoders = new HuffmanDecoder[CONTEXTS];
+
+        for (int context = 0; context < CONTEXTS; context++)
+        {
+            model.decoders[context] = own[context] ? decoder(CodeTable.readFrom(stream)) : fallback;
+        }
+
+        return model;
+    }
+
+    /**
+     * Decodes a range of a block, each byte with the decoder of the byte
+     * before it.
+     *
+     * @param stream BitInputStream positioned at the code of the byte at <code>start</code>
+     * @param start  offset in the block of the first byte to decode, 0 or a multiple of the reset interval
+     * @param skip   number of bytes to decode and drop before the range
+     * @param dst    array receiving the decoded bytes
+     * @param off    offset of the range in <code>dst</code>
+     * @param len    length of the range
+     * @throws IOException if the stream is truncated or holds an invalid code
+     */
+    void decode (BitInputStream stream, int start, int skip, byte[] dst, int off, int len) throws IOException
+    {
+        int context = 0;
+        int position = start;
+
+        for (int i = -skip; i < len; i++, position++)
+        {
+            if (interval > 0 && position % interval == 0)
+            {
+                context = 0;
+            }
+
+            HuffmanDecoder decoder = decoders[context];
+
+            if (decoder == null)
+            {
+                throw new IOException("no table for context " + context);
+            }
+
+            context = decoder.readSymbol(stream);
+
+            if (i >= 0)
+            {
+                dst[off + i] = (byte) context;
+            }
+        }
+    }
+
+    private static HuffmanDecoder decoder (CodeTable table) throws IOException
+    {
+        if (table.size() > CONTEXTS)
+        {
+            throw new IOException("invalid byte in context table");
+        }
+
+        return table.getSymbolCount() == 0 ? null : new HuffmanDecoder(table);
+    }
+}
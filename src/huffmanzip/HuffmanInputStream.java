@@ -0,0 +1,210 @@
+package huffmanzip;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * An input stream that decompresses a ".hz" block container read from the
+ * underlying stream.
+ *
+ * <p>
+ * Blocks are read and decoded one at a time, so memory use is bounded by one
+ * block whatever the length of the stream. Once the last block has been read,
+ * the block index is skipped, leaving the underlying stream right after the
+ * container.
+ * </p>
+ *
+ * <pre>
+ * try (InputStream in = new HuffmanInputStream(socket.getInputStream()))
+ * {
+ *     in.transferTo(out);
+ * }
+ * </pre>
+ */
+public class HuffmanInputStream extends FilterInputStream {
+
+    /** Reader of the container on the underlying stream */
+    private final BlockReader reader;
+
+    /** Decoded data of the current block */
+    private byte[] block = new byte[0];
+
+    /** Position of the next byte in the current block */
+    private int position;
+
+    /** Whether the end marker has been read */
+    private boolean finished;
+
+    /** Whether the stream has been closed */
+    private boolean closed;
+
+    /**
+     * Creates a stream and reads the container header.
+     *
+     * @param in the underlying stream
+     * @throws IOException if an I/O error occurs, or if the stream does not hold a block container
+     */
+    public HuffmanInputStream (InputStream in) throws IOException
+    {
+        this(in, null);
+    }
+
+    /**
+     * Creates a stream for a container compressed with a trained table and reads its header.
+     *
+     * @param in    the underlying stream
+     * @param table the trained table the container was compressed with, or null
+     * @throws IOException if an I/O error occurs, if the stream does not hold a block container,
+     *                     or if it was compressed with another table
+     */
+    public HuffmanInputStream (InputStream in, TrainedTable table) throws IOException
+    {
+        super(in);
+
+        if (in.read() != HzFormat.MAGIC[0] || in.read() != HzFormat.MAGIC[1] || in.read() != HzFormat.VERSION_BLOCKS)
+        {
+            throw new IOException("not a block container");
+        }
+
+        reader = new BlockReader(in, table);
+    }
+
+    /**
+     * Returns a channel that decompresses the bytes read from another channel.
+     *
+     * @param channel the underlying channel, closed with the returned one
+     * @return the decompressing channel
+     * @throws IOException if the container header cannot be read
+     */
+    public static ReadableByteChannel newChannel (ReadableByteChannel channel) throws IOException
+    {
+        return Channels.newChannel(new HuffmanInputStream(Channels.newInputStream(channel)));
+    }
+
+    @Override
+    public int read () throws IOException
+    {
+        if (!fill())
+        {
+            return -1;
+        }
+
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read (byte[] b, int off, int len) throws IOException
+    {
+        if ((off | len | (b.length - off - len)) < 0)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        if (!fill())
+        {
+            return -1;
+        }
+
+        int n = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+
+        return n;
+    }
+
+    @Override
+    public long skip (long n) throws IOException
+    {
+        long skipped = 0;
+
+        while (skipped < n && fill())
+        {
+            int step = (int) Math.min(n - skipped, block.length - position);
+            position += step;
+            skipped  += step;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public int available () throws IOException
+    {
+        ensureOpen();
+
+        return block.length - position;
+    }
+
+    @Override
+    public boolean markSupported ()
+    {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark (int readlimit)
+    {
+    }
+
+    @Override
+    public synchronized void reset () throws IOException
+    {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+        if (!closed)
+        {
+            closed = true;
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes blocks until one has bytes left to read.
+     *
+     * @return false at the end of the container
+     */
+    private boolean fill () throws IOException
+    {
+        ensureOpen();
+
+        while (position == block.length)
+        {
+            if (finished)
+            {
+                return false;
+            }
+
+            if (!reader.next())
+            {
+                reader.skipIndex();
+                finished = true;
+                return false;
+            }
+
+            block    = reader.decode();
+            position = 0;
+        }
+
+        return true;
+    }
+
+    private void ensureOpen () throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("stream closed");
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package huffmanzip;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * An output stream that compresses the data written to it into a ".hz" block
+ * container on the underlying stream.
+ *
+ * <p>
+ * Data is collected into blocks; every full block is Huffman-coded with its own
+ * code table and written out right away. The container has no block index, so
+ * nothing is kept per block and memory use is bounded by one block whatever the
+ * length of the stream and however often it is flushed. The block buffer starts small and grows
+ * up to the block size, so short messages do not pay for a full block. With a
+ * {@link TrainedTable}, blocks use the trained table and the container only
+ * stores its ID, which keeps messages of a few kilobytes small. The result can be read back with
+ * {@link HuffmanInputStream} or decoded with <code>HuffmanZip -decode</code>.
+ * </p>
+ *
+ * <pre>
+ * try (OutputStream out = new HuffmanOutputStream(socket.getOutputStream()))
+ * {
+ *     out.write(data);
+ * }
+ * </pre>
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+
+    /** Block size and trained table of the container, which has no sync points */
+    private final Options options = new Options();
+
+    /** Writer of the container on the underlying stream */
+    private final BlockWriter writer;
+
+    /** Initial size of the block buffer */
+    private static final int INITIAL_BUFFER_SIZE = 64 << 10;
+
+    /** Data of the current block, up to the block size */
+    private byte[] block;
+
+    /** Number of bytes in the current block */
+    private int count;
+
+    /** Whether the container has been finished */
+    private boolean closed;
+
+    /**
+     * Creates a stream with the default block size.
+     *
+     * @param out the underlying stream
+     * @throws IOException if the container header cannot be written
+     */
+    public HuffmanOutputStream (OutputStream out) throws IOException
+    {
+        this(out, HzFormat.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a stream with the default block size whose blocks use a trained table.
+     *
+     * @param out   the underlying stream
+     * @param table the trained table; the reader needs the same one
+     * @throws IOException if the container header cannot be written
+     */
+    public HuffmanOutputStream (OutputStream out, TrainedTable table) throws IOException
+    {
+        this(out, HzFormat.DEFAULT_BLOCK_SIZE, table);
+    }
+
+    /**
+     * Creates a stream with the given block size.
+     *
+     * @param out       the underlying stream
+     * @param blockSize uncompressed size of a block, the memory the stream buffers
+     * @throws IOException              if the container header cannot be written
+     * @throws IllegalArgumentException if the block size is out of range
+     */
+    public HuffmanOutputStream (OutputStream out, int blockSize) throws IOException
+    {
+        this(out, blockSize, null);
+    }
+
+    /**
+     * Creates a stream with the given block size whose blocks use a trained table.
+     *
+     * @param out       the underlying stream
+     * @param blockSize uncompressed size of a block, the memory the stream buffers
+     * @param table     the trained table, or null to give every block its own table
+     * @throws IOException              if the container header cannot be written
+     * @throws IllegalArgumentException if the block size is out of range
+     */
+    public HuffmanOutputStream (OutputStream out, int blockSize, TrainedTable table) throws IOException
+    {
+        super(out);
+
+        if (blockSize < HzFormat.MIN_BLOCK_SIZE || blockSize > HzFormat.MAX_BLOCK_SIZE)
+        {
+            throw new IllegalArgumentException("invalid block size " + blockSize);
+        }
+
+        options.blockSize = blockSize;
+        options.syncInterval = 0;
+        options.table = table;
+        block  = new byte[Math.min(blockSize, INITIAL_BUFFER_SIZE)];
+        writer = new BlockWriter(out, blockSize, null, table, 0, false);
+    }
+
+    /**
+     * Returns a channel that compresses the bytes written to it into another channel.
+     *
+     * @param channel the underlying channel, closed with the returned one
+     * @return the compressing channel
+     * @throws IOException if the container header cannot be written
+     */
+    public static WritableByteChannel newChannel (WritableByteChannel channel) throws IOException
+    {
+        return Channels.newChannel(new HuffmanOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    @Override
+    public void write (int b) throws IOException
+    {
+        ensureOpen();
+        makeRoom();
+
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write (byte[] b, int off, int len) throws IOException
+    {
+        ensureOpen();
+
+        if ((off | len | (b.length - off - len)) < 0)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0)
+        {
+            makeRoom();
+
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+
+            count += n;
+            off   += n;
+            len   -= n;
+        }
+    }
+
+    /**
+     * Writes the buffered data as a short block and flushes the underlying stream,
+     * so that everything written so far can be decoded by the reader.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush () throws IOException
+    {
+        ensureOpen();
+
+        if (count > 0)
+        {
+            writeBlock();
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Writes the last block and the end marker, then closes the underlying stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close () throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        try
+        {
+            if (count > 0)
+            {
+                writeBlock();
+            }
+
+            writer.finish();
+        }
+        finally
+        {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void writeBlock () throws IOException
+    {
+        long[] syncPoints = new long[HzFormat.syncPointCount(count, options.syncInterval)];
+        byte[] body = BlockCodec.encode(ByteBuffer.wrap(block, 0, count),
+                options.table == null ? null : options.table.getCodeTable(), options, syncPoints, null);
+
+        writer.writeBlock(count, body, syncPoints);
+        count = 0;
+    }
+
+    /**
+     * Grows the buffer, or writes the block once it is full.
+     */
+    private void makeRoom () throws IOException
+    {
+        if (count == block.length)
+        {
+            if (block.length < options.blockSize)
+            {
+                block = Arrays.copyOf(block, (int) Math.min(options.blockSize, 2L * block.length));
+            }
+
+            else
+            {
+                writeBlock();
+            }
+        }
+    }
+
+    private void ensureOpen () throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("stream closed");
+        }
+    }
+}
@@ -1,15 +1,46 @@
 package huffmanzip;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import huffman.CodeTable;
+import huffman.HuffmanCodeLengths;
+import huffman.HuffmanDecoder;
 import huffman.HuffmanTree;
 import utils.BitInputStream;
 import utils.BitOutputStream;
+import utils.FrequencyCounter;
+import utils.IntCountMap;
+import utils.MappedFile;
+import utils.MappedFileOutputStream;
+import utils.UnsynchronizedBitOutputStream;
 
 /**
  * HuffmanZip is a utility class for compressing and decompressing files
@@ -17,84 +48,474 @@ import utils.BitOutputStream;
  * encode files to a compressed binary format, and decode them back to their
  * original content.
  * 
+ * <p>
+ * By default files are compressed as raw bytes, so any file, text or binary,
+ * round-trips byte for byte. The file is cut into independent blocks that
+ * are encoded on all cores. The <code>-text</code> option compresses the
+ * Unicode code points read through the platform charset as one stream instead.
+ * </p>
+ * 
  * <pre>
  * Usage:
- * java HuffmanZip -encode &lt;fileName&gt;
- * java HuffmanZip -decode &lt;fileName&gt;
+ * java HuffmanZip -encode [-text] [-threads &lt;n&gt;] [-block &lt;size&gt;] [-sync &lt;size&gt;] [-maxlen &lt;bits&gt;] [-shared | -table &lt;file&gt;] [-sample &lt;percent&gt;] [-order1 | -lz &lt;level&gt; [-window &lt;size&gt;] | -bwt] [-mmap] [-stats] &lt;fileName&gt;
+ * java HuffmanZip -decode [-threads &lt;n&gt;] [-mmap] [-table &lt;file&gt;] [-stats] &lt;fileName&gt;
+ * java HuffmanZip -extract &lt;offset&gt; &lt;length&gt; [-table &lt;file&gt;] &lt;fileName&gt;
+ * java HuffmanZip -test [-threads &lt;n&gt;] [-table &lt;file&gt;] [-stats] &lt;fileName&gt;
+ * java HuffmanZip -archive [-threads &lt;n&gt;] [-block &lt;size&gt;] [-maxlen &lt;bits&gt;] [-shared | -table &lt;file&gt;] [-sample &lt;percent&gt;] [-order1 | -lz &lt;level&gt; [-window &lt;size&gt;] | -bwt] [-stats] &lt;archive&gt; &lt;file or directory&gt;...
+ * java HuffmanZip -list &lt;archive&gt;
+ * java HuffmanZip -unarchive [-threads &lt;n&gt;] [-table &lt;file&gt;] &lt;archive&gt; [&lt;name&gt;...]
+ * java HuffmanZip -train [-maxlen &lt;bits&gt;] &lt;table file&gt; &lt;sample file or directory&gt;...
+ * </pre>
+ * 
+ * <p>
+ * <code>-train</code> builds a table from sample files; encoding with
+ * <code>-table</code> then skips the counting pass and stores only the
+ * table's ID, which suits many small, similar files.
+ * </p>
+ * 
+ * <p>
+ * <code>-sample</code> builds the table of <code>-shared</code> or
+ * <code>-text</code> from evenly spaced samples covering the given percentage
+ * of the file instead of counting all of it, so a huge file is read little
+ * more than once. Symbols the samples missed still get encoded, and the cost
+ * of the estimate against an exact count is reported. Files too small to
+ * sample are counted as usual.
+ * </p>
+ * 
+ * <p>
+ * <code>-order1</code> gives every block one table per preceding byte, for
+ * the contexts common enough to pay for their table, and a fallback table for
+ * the others. Text compresses noticeably better, at some cost in speed.
+ * </p>
+ * 
+ * <p>
+ * <code>-lz</code> replaces repeated runs of bytes by matches back into a
+ * window (32 KB, or <code>-window</code>) before Huffman coding, as DEFLATE
+ * does, with a match search from 1 (fastest) to 9 (smallest). Logs and other
+ * repetitive data shrink several times more than with Huffman coding alone.
+ * Matches stay within a sync interval, so <code>-encode</code> rejects a
+ * window larger than <code>-sync</code>; archive blocks have no sync points.
+ * </p>
+ * 
+ * <p>
+ * <code>-bwt</code> codes every block as bzip2 does: Burrows-Wheeler
+ * transform, move-to-front and zero runs, then Huffman coding. It gives the
+ * best ratio on text, but a range is extracted by decoding its whole blocks.
+ * </p>
+ * 
+ * <p>
+ * Every block of a container or an archive carries the CRC32C of its
+ * uncompressed bytes, checked whenever the whole block is decoded.
+ * <code>-test</code> decodes and checks all blocks on all cores without
+ * writing anything, and exits with status 1 naming the first bad block.
+ * </p>
+ * 
+ * <p>
+ * A file name of "-" compresses standard input to standard output, or the
+ * reverse, in a single pass:
+ * </p>
+ * 
+ * <pre>
+ * tail -f app.log | java HuffmanZip -encode - &gt; app.log.hz
+ * java HuffmanZip -decode - &lt; app.log.hz
  * </pre>
  */
 public class HuffmanZip {
 
-    private static TreeMap<Character, Integer> buildFrequencies (String fileName) throws IOException
+	/** Number of symbols decoded per call to the table-driven decoder */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Number of bytes read from or written to a file at once */
+	private static final int IO_BUFFER_SIZE = 1 << 20;
+
+	/** File name standing for standard input and output */
+	private static final String STANDARD_STREAMS = "-";
+
+    private static IntCountMap buildFrequencies (String fileName) throws IOException
 	{
-		TreeMap<Character, Integer> frequencies = new TreeMap<> ();
+		IntCountMap frequencies = new IntCountMap ();
 
-		FileReader reader = new FileReader (fileName);
+		CodePointReader reader = new CodePointReader (new FileReader (fileName));
 
-		int curChar = reader.read();
+		int codePoint = reader.read();
 
-		while (curChar != -1)
+		while (codePoint != -1)
 		{
-			char character = (char) curChar;
+            frequencies.increment(codePoint);
 
-            frequencies.put(character, frequencies.getOrDefault(character, 0) + 1);
-
-			curChar = reader.read();
+			codePoint = reader.read();
 		}
 
 		reader.close();
 		return frequencies;
 	}
 
+    /**
+     * Estimates the code point frequencies of a file from evenly spaced samples,
+     * see <code>FrequencyCounter.sampleBytes</code>. A sample can start or end in
+     * the middle of a character, so the first and last code points of every sample
+     * are dropped, except at the start and end of the file. The file must be
+     * large enough to be sampled.
+     */
+    private static IntCountMap sampleFrequencies (String fileName, double fraction) throws IOException
+	{
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		long size = channel.size();
+		int samples = FrequencyCounter.sampleCount(size, fraction);
+		IntCountMap frequencies = new IntCountMap ();
+
+		for (int k = 0; k < samples; k++)
+		{
+			ByteBuffer sample = BlockIndex.readFully(channel, FrequencyCounter.samplePosition(size, samples, k),
+					FrequencyCounter.SAMPLE_SIZE);
+			CodePointReader reader = new CodePointReader (new InputStreamReader (
+					new ByteArrayInputStream (sample.array(), 0, sample.limit())));
+
+			int codePoint = reader.read();
+
+			if (k > 0)
+			{
+				codePoint = reader.read();
+			}
+
+			int next = codePoint == -1 ? -1 : reader.read();
+
+			while (codePoint != -1)
+			{
+				if (next != -1 || k == samples - 1)
+				{
+					frequencies.increment(codePoint);
+				}
+
+				codePoint = next;
+				next = codePoint == -1 ? -1 : reader.read();
+			}
+		}
+
+		channel.close();
+		return frequencies;
+	}
+
+	/**
+     * Encodes the specified file byte by byte using Huffman encoding and writes
+     * the compressed binary output to a file with ".hz" extension. The file is
+     * cut into blocks that are encoded concurrently, each with its own compact
+     * code table, see {@link HzFormat}.
+     * 
+     * @param fileName The path of the file to encode
+     * @return The sizes, ratio, code length and phase times of the compression
+     * @throws IOException If there is an error reading the file or writing output
+     */
+    public static CompressionStats encode(String fileName) throws IOException
+	{
+		return encode(fileName, new Options());
+	}
+
+	/**
+     * Encodes the specified file byte by byte like {@link #encode(String)},
+     * using the given number of worker threads.
+     * 
+     * @param fileName The path of the file to encode
+     * @param threads  The number of worker threads
+     * @return The sizes, ratio, code length and phase times of the compression
+     * @throws IOException If there is an error reading the file or writing output
+     */
+    public static CompressionStats encode(String fileName, int threads) throws IOException
+	{
+		Options options = new Options();
+		options.threads = threads;
+
+		return encode(fileName, options);
+	}
+
+	/**
+     * Encodes the specified file byte by byte like {@link #encode(String)}, with
+     * a trained table shared by all blocks. No counting pass is made, and the
+     * compressed file holds only the table's ID, so small files stay small. The
+     * same table must be given to decode the file.
+     * 
+     * @param fileName The path of the file to encode
+     * @param table    The trained table
+     * @return The sizes, ratio, code length and phase times of the compression
+     * @throws IOException If there is an error reading the file or writing output
+     */
+    public static CompressionStats encode(String fileName, TrainedTable table) throws IOException
+	{
+		Options options = new Options();
+		options.table = table;
+
+		return encode(fileName, options);
+	}
+
+    static CompressionStats encode(String fileName, Options options) throws IOException
+	{
+		if (options.text)
+		{
+			return encodeText(fileName, options);
+		}
+
+		CompressionStats stats = new CompressionStats();
+		stats.start("encode", options.stats);
+
+		CodeTable sharedTable = null;
+		boolean sampled = options.sharedTable && options.table == null && options.sampleFraction > 0
+				&& FrequencyCounter.sampleCount(new File(fileName).length(), options.sampleFraction) > 0;
+
+		if (sampled)
+		{
+			CompressionStats.Timer timer = CompressionStats.timer(stats);
+			long[] frequencies = FrequencyCounter.sampleBytes(Paths.get(fileName), options.sampleFraction, options.threads);
+			timer.lap(CompressionStats.Phase.COUNT);
+
+			sharedTable = BlockCodec.estimatedTable(frequencies, options.maxLength);
+			timer.lap(CompressionStats.Phase.BUILD);
+		}
+
+		else if (options.sharedTable && options.table == null)
+		{
+			CompressionStats.Timer timer = CompressionStats.timer(stats);
+			long[] frequencies = FrequencyCounter.countBytes(Paths.get(fileName), options.threads);
+			timer.lap(CompressionStats.Phase.COUNT);
+
+			sharedTable = CodeTable.canonical(HuffmanCodeLengths.compute(frequencies));
+
+			if (options.maxLength > 0)
+			{
+				CodeTable limited = HuffmanCodeLengths.canonicalTable(frequencies, options.maxLength);
+				stats.limitPenaltyBits.add(BlockCodec.codedBits(frequencies, limited) - BlockCodec.codedBits(frequencies, sharedTable));
+				sharedTable = limited;
+			}
+
+			stats.entropyBits.add(CompressionStats.entropyBits(frequencies));
+			timer.lap(CompressionStats.Phase.BUILD);
+		}
+
+		if (options.mapped)
+		{
+			stats.add(encodeMapped(fileName, options, sharedTable));
+		}
+
+		else
+		{
+			InputStream in = new FileInputStream(fileName);
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName + ".hz"), IO_BUFFER_SIZE);
+
+			stats.add(BlockCompressor.compress(in, out, options, sharedTable));
+
+			in.close();
+			out.close();
+		}
+
+		if (sampled)
+		{
+			long[] exact = stats.getExactFrequencies();
+			stats.addSampleCosts(exact, BlockCodec.codedBits(exact, sharedTable), options.maxLength);
+		}
+
+		// the blocks only count their bodies, not the container's header and index
+		stats.outputBytes.reset();
+		stats.outputBytes.add(new File(fileName + ".hz").length());
+		stats.finish();
+
+		return stats;
+	}
+
+    private static CompressionStats encodeMapped(String fileName, Options options, CodeTable sharedTable) throws IOException
+	{
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		long size = channel.size();
+
+		// whole blocks per window, so that no block straddles two windows
+		int windowSize = options.blockSize * Math.max(1, MappedFile.DEFAULT_WINDOW_SIZE / options.blockSize);
+		MappedFile in = new MappedFile(channel, FileChannel.MapMode.READ_ONLY, windowSize, size);
+		OutputStream out = new MappedFileOutputStream(Paths.get(fileName + ".hz"), MappedFileOutputStream.DEFAULT_WINDOW_SIZE);
+
+		CompressionStats stats = BlockCompressor.compress(in, size, out, options, sharedTable);
+
+		out.close();
+		channel.close();
+
+		return stats;
+	}
+
 	/**
-     * Encodes the specified file using Huffman encoding and writes the compressed
-     * binary output to a file with ".hz" extension.
+     * Encodes the Unicode code points of the specified file, read through the
+     * platform charset, using Huffman encoding and writes the compressed binary output
+     * to a file with ".hz" extension.
      * 
      * @param fileName The path of the file to encode
+     * @return The sizes, ratio, code length and phase times of the compression
      * @throws IOException If there is an error reading the file or writing output
      */
-    public static void encode(String fileName) throws IOException
+    public static CompressionStats encodeText(String fileName) throws IOException
 	{
-		TreeMap<Character, Integer> frequencies = buildFrequencies(fileName);
-		HuffmanTree hTree = new HuffmanTree (frequencies);
+		return encodeText(fileName, new Options());
+	}
+
+    private static CompressionStats encodeText(String fileName, Options options) throws IOException
+	{
+		CompressionStats stats = new CompressionStats();
+		stats.start("encode", options.stats);
+
+		CompressionStats.Timer timer = CompressionStats.timer(stats);
+		boolean escaped = options.sampleFraction > 0
+				&& FrequencyCounter.sampleCount(new File(fileName).length(), options.sampleFraction) > 0;
+		IntCountMap counted = escaped ? sampleFrequencies(fileName, options.sampleFraction) : buildFrequencies(fileName);
+
+		if (escaped)
+		{
+			counted.increment(HzFormat.ESCAPE);
+		}
+
+		long[] frequencies = counted.toArray();
+		timer.lap(CompressionStats.Phase.COUNT);
+
+		// the costs of an estimated table are only known once it has encoded the file
+		CodeTable codeTable = escaped ? HuffmanCodeLengths.canonicalTable(frequencies, options.maxLength)
+		                              : CodeTable.canonical(HuffmanCodeLengths.compute(frequencies));
+
+		if (options.maxLength > 0 && !escaped)
+		{
+			CodeTable limited = HuffmanCodeLengths.canonicalTable(frequencies, options.maxLength);
+			stats.limitPenaltyBits.add(BlockCodec.codedBits(frequencies, limited) - BlockCodec.codedBits(frequencies, codeTable));
+			codeTable = limited;
+		}
+
+		timer.lap(CompressionStats.Phase.BUILD);
 
 		String binaryFile = fileName + ".hz";
 
-		BitOutputStream bitOutputStream = new BitOutputStream(binaryFile);
-		bitOutputStream.writeObject(frequencies);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(binaryFile));
+		HzFormat.writeHeader(out, HzFormat.VERSION_STREAM, escaped ? HzFormat.ALPHABET_CODE_POINTS_ESCAPED : HzFormat.ALPHABET_CODE_POINTS);
+
+		BitOutputStream bitOutputStream = new UnsynchronizedBitOutputStream(out, false);
+		codeTable.writeTo(bitOutputStream);
+		long tableBits = bitOutputStream.getBitPosition();
+		timer.lap(CompressionStats.Phase.TABLE);
 
-		FileReader reader = new FileReader (fileName);
+		CodePointReader reader = new CodePointReader (new FileReader (fileName));
 
-		int curChar = reader.read();
+		int codePoint = reader.read();
 
-		while (curChar != -1)
+		if (escaped)
 		{
-			char character = (char) curChar;
+			counted = new IntCountMap(counted.size());
+
+			while (codePoint != -1)
+			{
+				if (codeTable.contains(codePoint))
+				{
+					codeTable.writeCode(codePoint, bitOutputStream);
+				}
+
+				else
+				{
+					codeTable.writeCode(HzFormat.ESCAPE, bitOutputStream);
+					bitOutputStream.writeBits(codePoint, HzFormat.ESCAPE_BITS);
+				}
+
+				counted.increment(codePoint);
+				codePoint = reader.read();
+			}
+		}
 
-			hTree.writeCode(character, bitOutputStream);
+		while (codePoint != -1)
+		{
+			codeTable.writeCode(codePoint, bitOutputStream);
 
-			curChar = reader.read();
+			codePoint = reader.read();
 		}
 
 		reader.close();
+		stats.codedBits.add(bitOutputStream.getBitPosition() - tableBits);
+		timer.lap(CompressionStats.Phase.ENCODE);
+
 		bitOutputStream.close();
+		timer.lap(CompressionStats.Phase.WRITE);
+
+		if (escaped)
+		{
+			// the exact count, taken while encoding, replaces the estimate
+			frequencies = counted.toArray();
+			stats.addSampleCosts(frequencies, stats.codedBits.sum(), options.maxLength);
+		}
+
+		else
+		{
+			stats.entropyBits.add(CompressionStats.entropyBits(frequencies));
+		}
+
+		for (long frequency : frequencies)
+		{
+			stats.symbols.add(frequency);
+		}
+
+		stats.inputBytes.add(new File(fileName).length());
+		stats.outputBytes.add(new File(binaryFile).length());
+		stats.finish();
+
+		return stats;
 	}
 
 	/**
      * Decodes a previously Huffman-encoded file (with ".hz" extension) and writes
      * the decoded output to a file with the original name. If a file with the
      * decoded name already exists, prompts the user to overwrite or abort.
+     * Files written by older versions, which store a serialized frequency map,
+     * are still accepted.
      * 
      * @param fileName The path of the file to decode
-     * @throws IOException            If there is an error reading or writing files
+     * @throws IOException            If there is an error reading or writing files, or if the
+     *                                file is an archive or of an unsupported version
      * @throws ClassNotFoundException If the frequency map object cannot be read
      */
     public static void decode(String fileName) throws IOException, ClassNotFoundException
+	{
+		decode(fileName, new Options());
+	}
+
+	/**
+     * Decodes a file compressed with a trained table like {@link #decode(String)}.
+     * 
+     * @param fileName The path of the file to decode
+     * @param table    The trained table the file was compressed with
+     * @throws IOException            If there is an error reading or writing files, or if the
+     *                                file was compressed with another table
+     * @throws ClassNotFoundException If the frequency map object cannot be read
+     */
+    public static void decode(String fileName, TrainedTable table) throws IOException, ClassNotFoundException
+	{
+		Options options = new Options();
+		options.table = table;
+
+		decode(fileName, options);
+	}
+
+    static CompressionStats decode(String fileName, Options options) throws IOException, ClassNotFoundException
 	{
 		if (!fileName.endsWith(".hz"))
 		{
 			System.err.println("Error: not a .hz file. The program aborts!");
-			return;
+			return null;
+		}
+
+		int version;
+
+		try (InputStream in = new BufferedInputStream(new FileInputStream(fileName)))
+		{
+			version = HzFormat.readVersion(in);
+		}
+
+		// checked before the output file is touched
+		if (version == HzFormat.VERSION_ARCHIVE)
+		{
+			throw new IOException("this is an archive of several files; extract it with -unarchive");
+		}
+
+		else if (version != HzFormat.VERSION_BLOCKS && version != HzFormat.VERSION_STREAM
+				&& version != HzFormat.VERSION_LEGACY)
+		{
+			throw new IOException("unsupported .hz format version " + version);
 		}
 
 		String decodedFile = fileName.replace(".hz", "");
@@ -117,63 +538,628 @@ public class HuffmanZip {
             else
             {
                 sc.close();
-                return;
+                return null;
             }
 
             sc.close();
         }
 
-		BitInputStream bitInputStream = new BitInputStream(fileName);
-        @SuppressWarnings("unchecked")
-		TreeMap<Character, Integer> frequencies = (TreeMap<Character, Integer>) bitInputStream.readObject();
+		CompressionStats stats = new CompressionStats();
+		stats.start("decode", options.stats);
+
+		if (version == HzFormat.VERSION_BLOCKS)
+		{
+			BlockDecompressor.decompress(Paths.get(fileName), Paths.get(decodedFile), options.threads, options.mapped,
+					options.table);
+		}
+
+		else
+		{
+			InputStream in = new BufferedInputStream(new FileInputStream(fileName));
+			OutputStream out = new FileOutputStream(decodedFile);
+
+			decodeStream(in, out, options);
+
+			out.close();
+			in.close();
+		}
+
+		stats.inputBytes.add(outputFile.length());
+		stats.outputBytes.add(new File(fileName).length());
+		stats.finish();
+
+		return stats;
+	}
+
+	/**
+     * Extracts a range of the original data of a compressed file without
+     * decompressing the whole file: only the blocks overlapping the range are
+     * read, each from the sync point nearest before the range.
+     * 
+     * @param fileName The path of the ".hz" file, a block container
+     * @param offset   The offset of the range in the original data
+     * @param length   The length of the range; it is cut at the end of the data
+     * @param out      The stream the range is written to; flushed, left open
+     * @throws IOException If there is an error reading the file, or if it is not a block container
+     */
+    public static void extract(String fileName, long offset, long length, OutputStream out) throws IOException
+	{
+		extract(fileName, offset, length, out, null);
+	}
+
+	/**
+     * Extracts a range of the original data of a file compressed with a trained
+     * table, like {@link #extract(String, long, long, OutputStream)}.
+     * 
+     * @param fileName The path of the ".hz" file, a block container
+     * @param offset   The offset of the range in the original data
+     * @param length   The length of the range; it is cut at the end of the data
+     * @param out      The stream the range is written to; flushed, left open
+     * @param table    The trained table the file was compressed with, or null
+     * @throws IOException If there is an error reading the file, if it is not a block container,
+     *                     or if it was compressed with another table
+     */
+    public static void extract(String fileName, long offset, long length, OutputStream out, TrainedTable table) throws IOException
+	{
+		BlockDecompressor.extract(Paths.get(fileName), offset, length, out, table);
+	}
+
+	/**
+     * Checks a compressed file without writing its content: every block is
+     * decoded, on all worker threads, and compared with its checksum. Stream
+     * files and files written before checksums existed are only decoded.
+     * 
+     * @param fileName The path of the ".hz" file or archive
+     * @param options  The number of worker threads and the trained table, if any
+     * @return The totals of the run; the uncompressed size is the size checked
+     * @throws IOException            If there is an error reading the file, or naming the first
+     *                                block that is malformed or does not match its checksum
+     * @throws ClassNotFoundException If the frequency map object of a legacy file cannot be read
+     */
+    static CompressionStats test(String fileName, Options options) throws IOException, ClassNotFoundException
+	{
+		CompressionStats stats = new CompressionStats();
+		stats.start("test", options.stats);
+
+		InputStream in = new BufferedInputStream(new FileInputStream(fileName));
+		int version = HzFormat.readVersion(in);
+		int checked;
+
+		if (version == HzFormat.VERSION_BLOCKS)
+		{
+			in.close();
+			checked = BlockDecompressor.verify(Paths.get(fileName), options.threads, options.table, stats);
+		}
+
+		else if (version == HzFormat.VERSION_ARCHIVE)
+		{
+			in.close();
+
+			try (Archive archive = Archive.open(Paths.get(fileName), options.table))
+			{
+				checked = archive.verify(options.threads, stats);
+			}
+		}
+
+		else if (version == HzFormat.VERSION_STREAM || version == HzFormat.VERSION_LEGACY)
+		{
+			long[] count = new long[1];
+
+			in.close();
+
+			try (InputStream stream = new BufferedInputStream(new FileInputStream(fileName)))
+			{
+				decodeStream(stream, new OutputStream()
+				{
+					@Override
+					public void write(int b)
+					{
+						count[0]++;
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len)
+					{
+						count[0] += len;
+					}
+				}, options);
+			}
+
+			stats.inputBytes.add(count[0]);
+			checked = 0;
+		}
+
+		else
+		{
+			in.close();
+			throw new IOException("unsupported .hz format version " + version);
+		}
+
+		stats.outputBytes.add(new File(fileName).length());
+		stats.finish();
+
+		System.out.printf("%s: OK, %d bytes decoded, %s%n", fileName, stats.getInputBytes(),
+				checked > 0 ? checked + " block checksums match" : "no checksums to check");
+
+		return stats;
+	}
+
+	/**
+     * Trains a table on sample files and saves it, for <code>-table</code>.
+     * 
+     * @param tableFile The path of the table file to write
+     * @param options   The sample files and directories, and the maximum code length
+     * @return The trained table
+     * @throws IOException If there is an error reading the samples or writing the table
+     */
+    static TrainedTable train(String tableFile, Options options) throws IOException
+	{
+		List<Path> samples = new ArrayList<> ();
+
+		for (String sample : options.paths)
+		{
+			samples.add(Paths.get(sample));
+		}
+
+		TrainedTable table = TrainedTable.train(samples, options.maxLength);
+		table.save(Paths.get(tableFile));
+
+		return table;
+	}
+
+	/**
+     * Compresses files and directories into a single archive. The blocks of all
+     * files are encoded in parallel, and a directory at the end of the archive
+     * lets {@link Archive} list the files and extract any one of them alone.
+     * 
+     * @param archiveName The path of the archive to create; replaced if it exists
+     * @param paths       The files and directories to archive; directories are archived recursively
+     * @return The sizes, ratio, code length and phase times of the compression
+     * @throws IOException If there is an error reading the files or writing the archive
+     */
+    public static CompressionStats archive(String archiveName, String... paths) throws IOException
+	{
+		Options options = new Options();
+		options.paths.addAll(Arrays.asList(paths));
+
+		return archive(archiveName, options);
+	}
+
+    static CompressionStats archive(String archiveName, Options options) throws IOException
+	{
+		List<Path> paths = new ArrayList<> ();
+
+		for (String path : options.paths)
+		{
+			paths.add(Paths.get(path));
+		}
+
+		return ArchiveWriter.create(Paths.get(archiveName), paths, options);
+	}
+
+	/**
+     * Extracts files of an archive under the current directory, decoding
+     * several files at once. Files that already exist are skipped.
+     * 
+     * @param archiveName The path of the archive
+     * @param names       The names of the files to extract, or none to extract them all
+     * @throws IOException If there is an error reading the archive or writing the files,
+     *                     if a name is not in the archive, or if a name would escape the current directory
+     */
+    public static void unarchive(String archiveName, String... names) throws IOException
+	{
+		Options options = new Options();
+		options.paths.addAll(Arrays.asList(names));
+
+		unarchive(archiveName, options);
+	}
+
+    static void unarchive(String archiveName, Options options) throws IOException
+	{
+		try (Archive archive = Archive.open(Paths.get(archiveName), options.table))
+		{
+			List<Archive.Entry> entries = new ArrayList<> ();
+
+			for (String name : options.paths)
+			{
+				Archive.Entry entry = archive.getEntry(name);
+
+				if (entry == null)
+				{
+					throw new IOException("no file named " + name + " in " + archiveName);
+				}
+
+				entries.add(entry);
+			}
+
+			if (options.paths.isEmpty())
+			{
+				entries.addAll(archive.getEntries());
+			}
+
+			ExecutorService pool = Executors.newFixedThreadPool(options.threads);
+			List<Future<Void>> tasks = new ArrayList<> ();
+
+			try
+			{
+				for (Archive.Entry entry : entries)
+				{
+					Path target = Paths.get(entry.getName()).normalize();
+
+					if (target.isAbsolute() || target.startsWith("..") || entry.getName().isEmpty())
+					{
+						throw new IOException("unsafe file name in archive: " + entry.getName());
+					}
+
+					if (Files.exists(target))
+					{
+						System.err.println("'" + target + "' already exists, skipped");
+						continue;
+					}
+
+					tasks.add(pool.submit(() -> {
+						if (target.getParent() != null)
+						{
+							Files.createDirectories(target.getParent());
+						}
+
+						try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target, StandardOpenOption.CREATE_NEW), IO_BUFFER_SIZE))
+						{
+							archive.extract(entry, out);
+						}
+
+						return null;
+					}));
+				}
+
+				for (Future<Void> task : tasks)
+				{
+					BlockCompressor.await(task);
+				}
+			}
+			finally
+			{
+				pool.shutdownNow();
+			}
+		}
+	}
+
+	/**
+     * Prints the files of an archive with their sizes, reading only its directory.
+     * 
+     * @param archiveName The path of the archive
+     * @param out         The stream to print to
+     * @throws IOException If there is an error reading the archive
+     */
+    public static void list(String archiveName, PrintStream out) throws IOException
+	{
+		try (Archive archive = Archive.open(Paths.get(archiveName)))
+		{
+			out.printf("%14s %14s %7s  %s%n", "size", "compressed", "ratio", "name");
+
+			for (Archive.Entry entry : archive.getEntries())
+			{
+				out.printf("%14d %14d %7.3f  %s%n", entry.getSize(), entry.getCompressedSize(),
+						entry.getCompressedSize() == 0 ? 0.0 : (double) entry.getSize() / entry.getCompressedSize(),
+						entry.getName());
+			}
+		}
+	}
+
+	/**
+     * Encodes a stream in a single pass into a block container, giving every
+     * block its own table, so that it can compress pipes and other streams
+     * that cannot be read twice.
+     * 
+     * @param in      The stream to encode, read to its end
+     * @param out     The stream the container is written to; flushed, left open
+     * @param options The block size and number of worker threads
+     * @return The totals of the compression; the compressed size counts the block bodies only
+     * @throws IOException If there is an error reading or writing the streams
+     */
+    static CompressionStats encodeStream(InputStream in, OutputStream out, Options options) throws IOException
+	{
+		CompressionStats stats = new CompressionStats();
+		stats.start("encode", options.stats);
+
+		stats.add(BlockCompressor.compress(in, out, options, null));
+		out.flush();
+		stats.finish();
+
+		return stats;
+	}
+
+	/**
+     * Decodes a stream holding any version of the ".hz" format in a single pass.
+     * 
+     * @param in      The stream to decode, read to its end
+     * @param out     The stream the decoded data is written to; flushed, left open
+     * @param options The number of worker threads
+     * @throws IOException            If there is an error reading or writing the streams, or if
+     *                                the format version or the alphabet is not supported
+     * @throws ClassNotFoundException If the frequency map object cannot be read
+     */
+    static void decodeStream(InputStream in, OutputStream out, Options options) throws IOException, ClassNotFoundException
+	{
+		int version = HzFormat.readVersion(in);
+
+		BitInputStream bitInputStream;
+		HuffmanDecoder decoder;
+		int alphabet;
+
+		if (version == HzFormat.VERSION_LEGACY)
+		{
+			bitInputStream = new BitInputStream(in);
+			@SuppressWarnings("unchecked")
+			TreeMap<Character, Integer> frequencies = (TreeMap<Character, Integer>) bitInputStream.readObject();
+
+			decodeChars(new HuffmanTree(frequencies).getDecoder(), bitInputStream, out);
+			return;
+		}
+
+		else if (version == HzFormat.VERSION_BLOCKS)
+		{
+			BlockDecompressor.decompress(in, out, options.threads, options.table);
+			out.flush();
+			return;
+		}
+
+		else if (version == HzFormat.VERSION_STREAM)
+		{
+			alphabet = HzFormat.readInfo(in);
+
+			if (alphabet != HzFormat.ALPHABET_CODE_POINTS && alphabet != HzFormat.ALPHABET_CODE_POINTS_ESCAPED)
+			{
+				throw new IOException("unsupported alphabet " + alphabet + " in a .hz version 2 stream");
+			}
+
+			bitInputStream = new BitInputStream(in, false);
+			decoder = new HuffmanDecoder(CodeTable.readFrom(bitInputStream));
+		}
 
-		HuffmanTree hTree = new HuffmanTree(frequencies);
+		else
+		{
+			throw new IOException("unsupported .hz format version " + version);
+		}
+
+		decodeCodePoints(decoder, bitInputStream, out, alphabet == HzFormat.ALPHABET_CODE_POINTS_ESCAPED);
+	}
+
+    private static void decodeChars (HuffmanDecoder decoder, BitInputStream bitInputStream, OutputStream out) throws IOException
+	{
+		Writer writer = new OutputStreamWriter(out);
+
+		int[] symbols = new int[BUFFER_SIZE];
+		char[] chars  = new char[BUFFER_SIZE];
+		int count = decoder.read(bitInputStream, symbols, 0, BUFFER_SIZE);
+
+		while (count > 0)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				chars[i] = (char) symbols[i];
+			}
+
+			writer.write(chars, 0, count);
+			count = decoder.read(bitInputStream, symbols, 0, BUFFER_SIZE);
+		}
 
-		FileWriter writer = new FileWriter(decodedFile);
+		writer.flush();
+	}
+
+    private static void decodeCodePoints (HuffmanDecoder decoder, BitInputStream bitInputStream, OutputStream out,
+                                          boolean escaped) throws IOException
+	{
+		Writer writer = new OutputStreamWriter(out);
 
-		while (bitInputStream.hasNext())
+		int escape = escaped ? HzFormat.ESCAPE : -1;
+		int[] symbols = new int[BUFFER_SIZE];
+		char[] chars  = new char[2 * BUFFER_SIZE];
+		int count = decoder.read(bitInputStream, symbols, 0, BUFFER_SIZE, escape);
+
+		while (count > 0)
 		{
-			char curChar = hTree.readCode(bitInputStream);
-			writer.write(curChar);
+			int length = 0;
+
+			for (int i = 0; i < count; i++)
+			{
+				// decoding stops at an escape, so its raw bits come next in the stream
+				int codePoint = symbols[i] == escape ? (int) bitInputStream.readBits(HzFormat.ESCAPE_BITS) : symbols[i];
+
+				if (codePoint > Character.MAX_CODE_POINT)
+				{
+					throw new IOException("invalid code point " + codePoint);
+				}
+
+				length += Character.toChars(codePoint, chars, length);
+			}
+
+			writer.write(chars, 0, length);
+			count = decoder.read(bitInputStream, symbols, 0, BUFFER_SIZE, escape);
 		}
 
-		writer.close();
-		bitInputStream.close();
+		writer.flush();
 	}
 
     private static void printUsage() 
     {
         System.err.println("Invalid argument(s)! Please enter valid argument(s)");
         System.err.println("Usage:");
-        System.err.println("      java HuffmanZip -encode <fileName>");
-        System.err.println("      java HuffmanZip -decode <fileName>");
+        System.err.println("      java HuffmanZip -encode [-text] [-threads <n>] [-block <size>] [-sync <size>] [-maxlen <bits>] [-shared | -table <file>] [-sample <percent>] [-order1 | -lz <level> [-window <size>] | -bwt] [-mmap] [-stats] <fileName>");
+        System.err.println("      java HuffmanZip -decode [-threads <n>] [-mmap] [-table <file>] [-stats] <fileName>");
+        System.err.println("      java HuffmanZip -extract <offset> <length> [-table <file>] <fileName> (to stdout)");
+        System.err.println("      java HuffmanZip -archive [-threads <n>] [-block <size>] [-maxlen <bits>] [-shared | -table <file>] [-sample <percent>] [-order1 | -lz <level> [-window <size>] | -bwt] [-stats] <archive> <file or directory>...");
+        System.err.println("      java HuffmanZip -test [-threads <n>] [-table <file>] [-stats] <fileName>");
+        System.err.println("      java HuffmanZip -list <archive>");
+        System.err.println("      java HuffmanZip -unarchive [-threads <n>] [-table <file>] <archive> [<name>...]");
+        System.err.println("      java HuffmanZip -train [-maxlen <bits>] <table file> <sample file or directory>...");
+        System.err.println("      java HuffmanZip -encode|-decode [-threads <n>] [-block <size>] [-order1 | -lz <level> | -bwt] - (stdin to stdout)");
+    }
+
+    private static void report(CompressionStats stats, Options options)
+    {
+        report(stats, options, System.out);
+    }
+
+    private static void report(CompressionStats stats, Options options, PrintStream out)
+    {
+        if (options.stats && stats != null)
+        {
+            stats.report(out);
+        }
+    }
+
+    /**
+     * Prints what the encoding options cost over an unrestricted table, then
+     * the statistics if they were requested.
+     */
+    private static void reportEncoded(CompressionStats stats, Options options, PrintStream out)
+    {
+        if (options.maxLength > 0)
+        {
+            stats.reportLimitPenalty(out, options.maxLength);
+        }
+
+        if (stats.isSampled())
+        {
+            stats.reportSamplePenalty(out, options.sampleFraction);
+        }
+
+        report(stats, options, out);
     }
 
 	/**
      * Main entry point for HuffmanZip.
      * 
-     * @param args Command-line arguments: operation (-encode or -decode) and file name
+     * @param args Command-line arguments: operation (-encode or -decode), options and file name
      * @throws IOException            If an I/O error occurs
      * @throws ClassNotFoundException If the frequency map cannot be read from file
      */
     public static void main (String[] args) throws IOException, ClassNotFoundException
 	{
-		if (args.length != 2)
+		Options options = Options.parse(args);
+
+		if (options == null)
 		{
 			printUsage();
 			return;
 		}
 
-		String operation = args[0];
-		String fileName = args[1];
+		if (options.tableFile != null)
+		{
+			if (options.text || options.sharedTable)
+			{
+				printUsage();
+				return;
+			}
 
-		switch (operation.toLowerCase()) 
+			options.table = TrainedTable.load(Paths.get(options.tableFile));
+		}
+
+		if ((options.sampleFraction > 0 && !options.sharedTable && !options.text)
+				|| ((options.order1 || options.lzLevel > 0 || options.bwt)
+						&& (options.sharedTable || options.tableFile != null || options.text))
+				|| (options.order1 ? 1 : 0) + (options.lzLevel > 0 ? 1 : 0) + (options.bwt ? 1 : 0) > 1)
+		{
+			printUsage();
+			return;
+		}
+
+		if (options.bwt)
+		{
+			// a transformed block can only be decoded from its start
+			options.syncInterval = 0;
+		}
+
+		if (options.operation.equals("-encode") && options.lzLevel > 0 && options.syncInterval > 0
+				&& options.lzWindow > options.syncInterval)
+		{
+			// matches never reach back past a sync point
+			System.err.println("Error: the -window of " + options.lzWindow + " bytes is larger than the sync interval of "
+					+ options.syncInterval + " bytes; raise -sync to at least the window");
+			System.exit(1);
+		}
+
+		if (options.fileName.equals(STANDARD_STREAMS))
+		{
+			if (options.text || options.sharedTable || options.mapped)
+			{
+				printUsage();
+				return;
+			}
+
+			InputStream in = new BufferedInputStream(new FileInputStream(FileDescriptor.in), IO_BUFFER_SIZE);
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), IO_BUFFER_SIZE);
+
+			switch (options.operation)
+			{
+				case "-encode":
+					reportEncoded(encodeStream(in, out, options), options, System.err);
+					break;
+				case "-decode":
+					decodeStream(in, out, options);
+					break;
+				default:
+					printUsage();
+					break;
+			}
+
+			return;
+		}
+
+		switch (options.operation) 
         {
             case "-encode": 
-                encode(fileName);
+                reportEncoded(encode(options.fileName, options), options, System.out);
+                break;
+            case "-archive":
+                if (options.text || options.mapped)
+                {
+                    printUsage();
+                    break;
+                }
+                reportEncoded(archive(options.fileName, options), options, System.out);
+                break;
+            case "-list":
+                list(options.fileName, System.out);
+                break;
+            case "-test":
+                try
+                {
+                    report(test(options.fileName, options), options);
+                }
+                catch (IOException e)
+                {
+                    System.err.println("Error: " + options.fileName + ": " + e.getMessage());
+                    System.exit(1);
+                }
+                break;
+            case "-unarchive":
+                unarchive(options.fileName, options);
+                break;
+            case "-extract":
+                extract(options.fileName, options.extractOffset, options.extractLength,
+                        new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), IO_BUFFER_SIZE), options.table);
+                break;
+            case "-train":
+                TrainedTable table = train(options.fileName, options);
+                System.out.printf("trained table %08x written to %s%n", table.getId(), options.fileName);
                 break;
             case "-decode": 
-                decode(fileName);
+                if (options.text)
+                {
+                    printUsage();
+                    break;
+                }
+                try
+                {
+                    report(decode(options.fileName, options), options);
+                }
+                catch (IOException e)
+                {
+                    System.err.println("Error: " + options.fileName + ": " + e.getMessage());
+                    System.exit(1);
+                }
                 break;
             default: 
                 printUsage();
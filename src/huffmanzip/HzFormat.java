@@ -0,0 +1,253 @@
+package huffmanzip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Constants and header helpers for the ".hz" file format.
+ *
+ * <p>
+ * Version 1 files are a Java object stream holding the frequency map,
+ * followed by the encoded bits. Later versions start with the magic bytes
+ * "HZ" and a version byte, so they can never be mistaken for an object
+ * stream, which always starts with 0xACED.
+ * </p>
+ *
+ * <pre>
+ * version 2:  'H' 'Z' 0x02 alphabet | code table | encoded bits | trailer
+ * version 3:  'H' 'Z' 0x03 flags | block size (int) | [sync interval (int)]
+ *             | [shared table length (int) | shared table] | [trained table ID (int)]
+ *             | block* | end marker (int -1) | [index]
+ * block:      uncompressed length (int) | body length (int) | body
+ * body:       method (byte) | [code table, order-1 tables, LZ77 tables or BWT header] | encoded bits | trailer
+ *             | [CRC32C of the uncompressed block (int)]
+ * index:      block count (int) | entry* | [sync point*] | index offset (long) | 'H' 'Z' 'I' 'X'
+ * entry:      block offset (long) | uncompressed offset (long)
+ *             | uncompressed length (int) | body length (int)
+ * sync point: bit offset in the body (long)
+ *
+ * version 4:  'H' 'Z' 0x04 flags | block size (int) | table count (int)
+ *             | (table length (int) | table, or -1 | trained table ID (int))*
+ *             | body* | directory | directory offset (long) | 'H' 'Z' 'C' 'D'
+ * directory:  entry count (int) | file*
+ * file:       name (modified UTF-8, as written by DataOutput.writeUTF) | uncompressed size (long)
+ *             | offset of the first body (long) | table number (int, -1 if every block has its own)
+ *             | body length (int)*
+ * </pre>
+ *
+ * <p>
+ * When the container has sync points, every block has one at each multiple
+ * of the sync interval after its start: the bit offset in the block body of
+ * the code of that byte. The decoder can start there, so a byte range is
+ * extracted without decoding the whole block.
+ * </p>
+ *
+ * <p>
+ * The table of a version 2 stream is normally built from an exact count of
+ * its symbols. When it is estimated from samples of the file instead, the
+ * stream has the escaped code point alphabet: a code point that the samples
+ * missed is written as the code of {@link #ESCAPE} followed by the code point
+ * in {@link #ESCAPE_BITS} raw bits.
+ * </p>
+ *
+ * <p>
+ * A version 4 file is an archive of many files. The blocks of each file are
+ * stored back to back, without block headers, and the directory at the end
+ * gives the name and size of every file, where its blocks start, their body
+ * lengths, and which of the tables in the header its shared-table blocks use.
+ * A file's blocks have the archive's block size, except its last one.
+ * </p>
+ *
+ * <p>
+ * Containers and archives with the checksums flag end every block body with
+ * the CRC32C of the block's uncompressed bytes, counted in the body length.
+ * Decoding a whole block checks it, so a corrupt block is reported instead of
+ * producing wrong data. Files written before the flag existed have none.
+ * </p>
+ *
+ * <p>
+ * A container with the no-index flag ends at its end marker. It is written
+ * by {@link HuffmanOutputStream}, whose stream can last for ever, so that
+ * nothing is kept per block; such a container is read sequentially.
+ * </p>
+ *
+ * <p>
+ * A container or an archive can use a {@link TrainedTable} as its shared
+ * table. Only the table's ID is stored then, and the reader must be given
+ * the table file.
+ * </p>
+ */
+final class HzFormat {
+
+    /** Magic bytes at the start of every file from version 2 on */
+    static final byte[] MAGIC = { 'H', 'Z' };
+
+    /** Java-serialized frequency map followed by the encoded bits */
+    static final int VERSION_LEGACY = 1;
+
+    /** Canonical code lengths followed by one stream of encoded bits */
+    static final int VERSION_STREAM = 2;
+
+    /** Independent blocks, each with its own table or the container's shared table */
+    static final int VERSION_BLOCKS = 3;
+
+    /** Archive of many files, each cut into blocks, with a directory at the end */
+    static final int VERSION_ARCHIVE = 4;
+
+    // alphabets 0 and 1 are not used; a stream that has one is rejected
+
+    /** Symbols are the Unicode code points read through the platform charset */
+    static final int ALPHABET_CODE_POINTS = 2;
+
+    /**
+     * Symbols are the Unicode code points read through the platform charset, and
+     * the table has an escape symbol for code points it has no code for
+     */
+    static final int ALPHABET_CODE_POINTS_ESCAPED = 3;
+
+    /** Escape symbol of an escaped code point stream, followed by the code point in raw bits */
+    static final int ESCAPE = Character.MAX_CODE_POINT + 1;
+
+    /** Number of raw bits holding an escaped code point */
+    static final int ESCAPE_BITS = 21;
+
+    /** Block container flag: the header holds a table shared by the blocks */
+    static final int FLAG_SHARED_TABLE = 1;
+
+    /** Block container flag: the header holds a sync interval and the index holds sync points */
+    static final int FLAG_SYNC_POINTS = 2;
+
+    /** Block container flag: the blocks share a trained table, of which the header holds the ID */
+    static final int FLAG_TABLE_ID = 4;
+
+    /** Block container and archive flag: every block body ends with the CRC32C of its uncompressed bytes */
+    static final int FLAG_CHECKSUMS = 8;
+
+    /** Block container flag: the container has no index after its end marker */
+    static final int FLAG_NO_INDEX = 16;
+
+    /** Size of the checksum at the end of a block body */
+    static final int CHECKSUM_SIZE = 4;
+
+    /** Marks the end of the blocks of a container */
+    static final int END_OF_BLOCKS = -1;
+
+    /** Size of the header in front of every block body */
+    static final int BLOCK_HEADER_SIZE = 8;
+
+    /** Magic bytes at the very end of a block container, after the index offset */
+    static final byte[] INDEX_MAGIC = { 'H', 'Z', 'I', 'X' };
+
+    /** Magic bytes at the very end of an archive, after the directory offset */
+    static final byte[] DIRECTORY_MAGIC = { 'H', 'Z', 'C', 'D' };
+
+    /** Block body holding the uncompressed bytes */
+    static final byte METHOD_STORED = 0;
+
+    /** Block body holding its own code table followed by the encoded bits */
+    static final byte METHOD_HUFFMAN = 1;
+
+    /** Block body holding bits encoded with the container's shared table */
+    static final byte METHOD_HUFFMAN_SHARED = 2;
+
+    /** Block body holding its own order-1 code tables followed by the encoded bits */
+    static final byte METHOD_HUFFMAN_ORDER1 = 3;
+
+    /** Block body holding its own LZ77 literal/length and distance tables followed by the encoded tokens */
+    static final byte METHOD_LZ77 = 4;
+
+    /** Block body holding a Burrows-Wheeler header and table followed by the encoded move-to-front symbols */
+    static final byte METHOD_BWT = 5;
+
+    /** Smallest block size accepted by the block container */
+    static final int MIN_BLOCK_SIZE = 1 << 10;
+
+    /** Largest block size accepted by the block container */
+    static final int MAX_BLOCK_SIZE = 1 << 30;
+
+    /** Default block size of the block container */
+    static final int DEFAULT_BLOCK_SIZE = 4 << 20;
+
+    /** Default number of uncompressed bytes between two sync points */
+    static final int DEFAULT_SYNC_INTERVAL = 64 << 10;
+
+    private HzFormat ()
+    {
+    }
+
+    /**
+     * Writes the magic bytes, the version and one format-specific byte.
+     *
+     * @param out     stream to write to
+     * @param version format version
+     * @param info    format-specific byte, such as the alphabet of a stream
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeHeader (OutputStream out, int version, int info) throws IOException
+    {
+        out.write(MAGIC);
+        out.write(version);
+        out.write(info);
+    }
+
+    /**
+     * Reads the version of a file. A file that does not start with the magic
+     * bytes is a version 1 file, and the stream is reset to its start.
+     *
+     * @param in stream positioned at the start of the file; must support mark/reset
+     * @return the format version
+     * @throws IOException if an I/O error occurs or the header is truncated
+     */
+    static int readVersion (InputStream in) throws IOException
+    {
+        in.mark(MAGIC.length);
+
+        if (in.read() != MAGIC[0] || in.read() != MAGIC[1])
+        {
+            in.reset();
+            return VERSION_LEGACY;
+        }
+
+        int version = in.read();
+
+        if (version < 0)
+        {
+            throw new IOException("truncated .hz header");
+        }
+
+        return version;
+    }
+
+    /**
+     * Reads the format-specific byte that follows the version.
+     *
+     * @param in stream positioned after the version byte
+     * @return the format-specific byte
+     * @throws IOException if an I/O error occurs or the header is truncated
+     */
+    static int readInfo (InputStream in) throws IOException
+    {
+        int info = in.read();
+
+        if (info < 0)
+        {
+            throw new IOException("truncated .hz header");
+        }
+
+        return info;
+    }
+
+    /**
+     * Returns the number of sync points of a block, one at each multiple of
+     * the interval after its start but none at the start itself.
+     *
+     * @param length       uncompressed length of the block
+     * @param syncInterval bytes between two sync points, 0 if the container has none
+     * @return the number of sync points
+     */
+    static int syncPointCount (int length, int syncInterval)
+    {
+        return syncInterval == 0 || length == 0 ? 0 : (length - 1) / syncInterval;
+    }
+}
@@ -0,0 +1,522 @@
+package huffmanzip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import huffman.CodeTable;
+import huffman.HuffmanCodeLengths;
+import huffman.HuffmanDecoder;
+import utils.BitInputStream;
+import utils.BitOutputStream;
+
+/**
+ * LZ77 parse of a block, coded DEFLATE-style with two Huffman tables.
+ *
+ * <p>
+ * A hash-chain matcher replaces every repeated run of at least
+ * {@link #MIN_MATCH} bytes by a match: its length and its distance back to an
+ * earlier copy in the window. The literal/length table codes bytes 0 to 255
+ * and length codes 256 on; the distance table codes the distances. A length
+ * or distance code stands for a range of values, and the extra bits after
+ * the code pick the value in the range.
+ * </p>
+ *
+ * <pre>
+ * tables: literal/length table | distance table
+ * token:  literal/length code | [extra bits | distance code | extra bits]
+ * </pre>
+ *
+ * <p>
+ * Matches never reach back before a sync point nor run past the next one, so
+ * decoding can start at any sync point with an empty history.
+ * </p>
+ */
+final class Lz77 {
+
+    /** Shortest match */
+    static final int MIN_MATCH = 3;
+
+    /** Longest match */
+    static final int MAX_MATCH = 258;
+
+    /** Number of literal codes, one per byte value; length codes follow them */
+    static final int LITERALS = 256;
+
+    /** Number of length codes, for match lengths <code>MIN_MATCH</code> to <code>MAX_MATCH</code> */
+    static final int LENGTH_CODES = 16;
+
+    /** Largest window, in bytes */
+    static final int MAX_WINDOW = 1 << 22;
+
+    /** Number of distance codes, for distances 1 to <code>MAX_WINDOW</code> */
+    static final int DISTANCE_CODES = 44;
+
+    /** Window used when none is given, as in DEFLATE */
+    static final int DEFAULT_WINDOW = 32 << 10;
+
+    /** Highest compression level */
+    static final int MAX_LEVEL = 9;
+
+    /** Level used when none is given */
+    static final int DEFAULT_LEVEL = 6;
+
+    /** Longest chain searched, length that ends the search, and whether to try a match one byte later, by level */
+    private static final int[][] LEVELS = {
+        { 4,    8,   0 },
+        { 8,    16,  0 },
+        { 32,   32,  0 },
+        { 16,   16,  1 },
+        { 32,   32,  1 },
+        { 128,  128, 1 },
+        { 256,  128, 1 },
+        { 1024, 258, 1 },
+        { 4096, 258, 1 }
+    };
+
+    private static final int HASH_BITS = 15;
+
+    private final int window;
+    private final int maxChain;
+    private final int niceLength;
+    private final boolean lazy;
+
+    /** Most recent position of each hash of three bytes, or -1 */
+    private int[] head;
+
+    /** Previous position with the same hash, for each position in the window */
+    private int[] prev;
+    private int mask;
+
+    /** Distance of the match last found by <code>longest</code> */
+    private int matchDistance;
+
+    /** Literals, and matches as <code>length &lt;&lt; 22 | distance - 1</code> */
+    private int[] tokens;
+    private int size;
+
+    /** Index of the first token of every sync interval */
+    private int[] segments;
+
+    private final long[] literalFrequencies  = new long[LITERALS + LENGTH_CODES];
+    private final long[] distanceFrequencies = new long[DISTANCE_CODES];
+    private long extraBits;
+
+    private CodeTable literalTable;
+    private CodeTable distanceTable;
+    private long limitPenaltyBits;
+
+    /** Decoders of a model that was read, null if its table is empty */
+    private HuffmanDecoder literalDecoder;
+    private HuffmanDecoder distanceDecoder;
+
+    private Lz77 (int level, int window)
+    {
+        this.window     = window;
+        this.maxChain   = LEVELS[level - 1][0];
+        this.niceLength = LEVELS[level - 1][1];
+        this.lazy       = LEVELS[level - 1][2] != 0;
+    }
+
+    /**
+     * Parses a block into literals and matches, one sync interval at a time.
+     *
+     * @param data         the block, from its position to its limit
+     * @param syncInterval bytes between two sync points, 0 if the block has none
+     * @param level        compression level, 1 (fastest) to <code>MAX_LEVEL</code>
+     * @param window       longest match distance, 1 to <code>MAX_WINDOW</code>
+     * @return the parse, with the frequencies of its codes
+     */
+    static Lz77 parse (ByteBuffer data, int syncInterval, int level, int window)
+    {
+        int len  = data.remaining();
+        int step = syncInterval == 0 ? Math.max(len, 1) : syncInterval;
+        byte[] src = new byte[len];
+        data.duplicate().get(src);
+
+        Lz77 lz = new Lz77(level, Math.min(window, step));
+        lz.head     = new int[1 << HASH_BITS];
+        lz.prev     = new int[Integer.highestOneBit(Math.max(lz.window - 1, 1)) << 1];
+        lz.mask     = lz.prev.length - 1;
+        lz.tokens   = new int[Math.max(len / 4, 16)];
+        lz.segments = new int[(len + step - 1) / step];
+
+        for (int k = 0; k < lz.segments.length; k++)
+        {
+            lz.segments[k] = lz.size;
+            lz.parse(src, k * step, Math.min((k + 1) * step, len));
+        }
+
+        return lz;
+    }
+
+    /**
+     * Parses one sync interval, with lazy matching at the higher levels: a
+     * match is dropped for a literal when the next byte starts a longer one.
+     */
+    private void parse (byte[] src, int from, int to)
+    {
+        Arrays.fill(head, -1);
+
+        int i = from;
+        int length = -1;
+        int distance = 0;
+
+        while (i < to)
+        {
+            if (length < 0)
+            {
+                length = longest(src, i, from, to);
+                distance = matchDistance;
+            }
+
+            insert(src, i, to);
+
+            if (length < MIN_MATCH)
+            {
+                literal(src[i++] & 0xFF);
+                length = -1;
+                continue;
+            }
+
+            if (lazy && length < niceLength)
+            {
+                int next = longest(src, i + 1, from, to);
+
+                if (next > length)
+                {
+                    literal(src[i++] & 0xFF);
+                    length = next;
+                    distance = matchDistance;
+                    continue;
+                }
+            }
+
+            match(length, distance);
+
+            for (int k = i + 1; k < i + length; k++)
+            {
+                insert(src, k, to);
+            }
+
+            i += length;
+            length = -1;
+        }
+    }
+
+    /**
+     * Returns the length of the longest earlier match of the bytes at a
+     * position, searching the hash chain, and sets <code>matchDistance</code>.
+     */
+    private int longest (byte[] src, int i, int from, int to)
+    {
+        if (to - i < MIN_MATCH)
+        {
+            return 0;
+        }
+
+        int limit = Math.max(from, i - window);
+        int max   = Math.min(MAX_MATCH, to - i);
+        int best  = 0;
+        int chain = maxChain;
+
+        for (int candidate = head[hash(src, i)]; candidate >= limit && chain-- > 0; candidate = prev[candidate & mask])
+        {
+            if (src[candidate + best] != src[i + best] || src[candidate] != src[i])
+            {
+                continue;
+            }
+
+            int n = 1;
+
+            while (n < max && src[candidate + n] == src[i + n])
+            {
+                n++;
+            }
+
+            if (n > best)
+            {
+                best = n;
+                matchDistance = i - candidate;
+
+                if (n >= niceLength || n == max)
+                {
+                    break;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    private void insert (byte[] src, int i, int to)
+    {
+        if (to - i >= MIN_MATCH)
+        {
+            int h = hash(src, i);
+            prev[i & mask] = head[h];
+            head[h] = i;
+        }
+    }
+
+    private static int hash (byte[] src, int i)
+    {
+        int bytes = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF);
+
+        return (bytes * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    private void literal (int b)
+    {
+        add(b);
+        literalFrequencies[b]++;
+    }
+
+    private void match (int length, int distance)
+    {
+        add(length << 22 | distance - 1);
+
+        int lengthCode   = code(length - MIN_MATCH);
+        int distanceCode = code(distance - 1);
+        literalFrequencies[LITERALS + lengthCode]++;
+        distanceFrequencies[distanceCode]++;
+        extraBits += extraBits(lengthCode) + extraBits(distanceCode);
+    }
+
+    private void add (int token)
+    {
+        if (size == tokens.length)
+        {
+            tokens = Arrays.copyOf(tokens, size * 2);
+        }
+
+        tokens[size++] = token;
+    }
+
+    /**
+     * Returns the code of a length or distance, counted from 0: values 0 to 3
+     * have their own code, then every power of two is split in two codes.
+     */
+    static int code (int value)
+    {
+        if (value < 4)
+        {
+            return value;
+        }
+
+        int high = 31 - Integer.numberOfLeadingZeros(value);
+
+        return 2 * high + ((value >>> (high - 1)) & 1);
+    }
+
+    /**
+     * Returns the number of extra bits after a length or distance code.
+     */
+    static int extraBits (int code)
+    {
+        return code < 4 ? 0 : code / 2 - 1;
+    }
+
+    /**
+     * Returns the smallest value of a length or distance code.
+     */
+    static int base (int code)
+    {
+        return code < 4 ? code : (2 | (code & 1)) << (code / 2 - 1);
+    }
+
+    /**
+     * Builds the literal/length and distance tables of the parse.
+     *
+     * @param maxLength the longest code allowed, in bits, or 0 for no limit
+     */
+    void build (int maxLength)
+    {
+        literalTable  = HuffmanCodeLengths.canonicalTable(literalFrequencies, maxLength);
+        distanceTable = HuffmanCodeLengths.canonicalTable(distanceFrequencies, maxLength);
+
+        if (maxLength > 0)
+        {
+            limitPenaltyBits = BlockCodec.codedBits(literalFrequencies, literalTable)
+                    - BlockCodec.codedBits(literalFrequencies, HuffmanCodeLengths.canonicalTable(literalFrequencies, 0))
+                    + BlockCodec.codedBits(distanceFrequencies, distanceTable)
+                    - BlockCodec.codedBits(distanceFrequencies, HuffmanCodeLengths.canonicalTable(distanceFrequencies, 0));
+        }
+    }
+
+    /**
+     * Returns the bits added by limiting the code lengths, compared with
+     * unlimited Huffman codes.
+     *
+     * @return the penalty in bits, 0 if the lengths were not limited
+     */
+    long getLimitPenaltyBits ()
+    {
+        return limitPenaltyBits;
+    }
+
+    /**
+     * Returns the entropy of the literal/length and distance codes plus their
+     * extra bits: the least any coding of this parse can take.
+     *
+     * @return the size in bits
+     */
+    double getEntropyBits ()
+    {
+        return CompressionStats.entropyBits(literalFrequencies) + CompressionStats.entropyBits(distanceFrequencies)
+                + extraBits;
+    }
+
+    /**
+     * Returns the number of sync intervals of the block.
+     *
+     * @return the number of intervals
+     */
+    int getSegmentCount ()
+    {
+        return segments.length;
+    }
+
+    /**
+     * Writes the literal/length and distance tables.
+     *
+     * @param stream BitOutputStream to write the tables into
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo (BitOutputStream stream) throws IOException
+    {
+        literalTable.writeTo(stream);
+        distanceTable.writeTo(stream);
+    }
+
+    /**
+     * Writes the tokens of a sync interval.
+     *
+     * @param k      index of the sync interval
+     * @param stream BitOutputStream to write the tokens into
+     * @throws IOException if an I/O error occurs
+     */
+    void writeSegment (int k, BitOutputStream stream) throws IOException
+    {
+        int end = k + 1 < segments.length ? segments[k + 1] : size;
+
+        for (int t = segments[k]; t < end; t++)
+        {
+            int token = tokens[t];
+
+            if (token < LITERALS)
+            {
+                literalTable.writeCode(token, stream);
+                continue;
+            }
+
+            int length       = (token >>> 22) - MIN_MATCH;
+            int distance     = token & (MAX_WINDOW - 1);
+            int lengthCode   = code(length);
+            int distanceCode = code(distance);
+
+            literalTable.writeCode(LITERALS + lengthCode, stream);
+            stream.writeBits(length - base(lengthCode), extraBits(lengthCode));
+            distanceTable.writeCode(distanceCode, stream);
+            stream.writeBits(distance - base(distanceCode), extraBits(distanceCode));
+        }
+    }
+
+    /**
+     * Reads the tables written by <code>writeTo</code> and builds their decoders.
+     *
+     * @param stream BitInputStream to read the tables from
+     * @return the model, ready to decode
+     * @throws IOException if an I/O error occurs, or if a table is malformed
+     */
+    static Lz77 readFrom (BitInputStream stream) throws IOException
+    {
+        CodeTable literals  = CodeTable.readFrom(stream);
+        CodeTable distances = CodeTable.readFrom(stream);
+
+        if (literals.size() > LITERALS + LENGTH_CODES || distances.size() > DISTANCE_CODES)
+        {
+            throw new IOException("invalid symbol in LZ77 table");
+        }
+
+        Lz77 lz = new Lz77(1, 0);
+        lz.literalDecoder  = literals.getSymbolCount() == 0 ? null : new HuffmanDecoder(literals);
+        lz.distanceDecoder = distances.getSymbolCount() == 0 ? null : new HuffmanDecoder(distances);
+
+        return lz;
+    }
+
+    /**
+     * Decodes a range of a block, copying every match from the bytes already
+     * decoded.
+     *
+     * @param stream BitInputStream positioned at the first token of a sync interval, or of the block
+     * @param skip   number of bytes to decode and drop before the range
+     * @param dst    array receiving the decoded bytes
+     * @param off    offset of the range in <code>dst</code>
+     * @param len    length of the range
+     * @throws IOException if the stream is truncated or holds an invalid code or distance
+     */
+    void decode (BitInputStream stream, int skip, byte[] dst, int off, int len) throws IOException
+    {
+        // matches can copy from the skipped bytes, so they are decoded into a scratch array
+        byte[] out  = skip == 0 ? dst : new byte[skip + len];
+        int base    = skip == 0 ? off : 0;
+        int total   = skip + len;
+        int position = 0;
+
+        while (position < total)
+        {
+            if (literalDecoder == null)
+            {
+                throw new IOException("no literal/length table");
+            }
+
+            int symbol = literalDecoder.readSymbol(stream);
+
+            if (symbol < LITERALS)
+            {
+                out[base + position++] = (byte) symbol;
+                continue;
+            }
+
+            if (distanceDecoder == null)
+            {
+                throw new IOException("no distance table");
+            }
+
+            int lengthCode   = symbol - LITERALS;
+            int length       = MIN_MATCH + base(lengthCode) + (int) stream.readBits(extraBits(lengthCode));
+            int distanceCode = distanceDecoder.readSymbol(stream);
+            int distance     = 1 + base(distanceCode) + (int) stream.readBits(extraBits(distanceCode));
+
+            if (distance > position)
+            {
+                throw new IOException("invalid match distance " + distance);
+            }
+
+            length = Math.min(length, total - position);
+            int to = base + position;
+
+            if (distance >= length)
+            {
+                System.arraycopy(out, to - distance, out, to, length);
+            }
+
+            else
+            {
+                for (int i = 0; i < length; i++)
+                {
+                    out[to + i] = out[to + i - distance];
+                }
+            }
+
+            position += length;
+        }
+
+        if (skip > 0)
+        {
+            System.arraycopy(out, skip, dst, off, len);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package huffmanzip;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import huffman.CodeTable;
+
+/**
+ * Command-line options of HuffmanZip.
+ *
+ * <p>
+ * Arguments are the operation, any number of options, then the file name,
+ * or for archives the archive name and the files:
+ * </p>
+ * <pre>
+ * -encode [-text] [-threads &lt;n&gt;] [-block &lt;size&gt;] [-sync &lt;size&gt;] [-maxlen &lt;bits&gt;] [-shared | -table &lt;file&gt;] [-sample &lt;percent&gt;] [-order1 | -lz &lt;level&gt; [-window &lt;size&gt;] | -bwt] [-mmap] [-stats] &lt;fileName&gt;
+ * -decode [-threads &lt;n&gt;] [-mmap] [-table &lt;file&gt;] [-stats] &lt;fileName&gt;
+ * -extract &lt;offset&gt; &lt;length&gt; [-table &lt;file&gt;] &lt;fileName&gt;
+ * -test [-threads &lt;n&gt;] [-table &lt;file&gt;] [-stats] &lt;fileName&gt;
+ * -archive [-threads &lt;n&gt;] [-block &lt;size&gt;] [-maxlen &lt;bits&gt;] [-shared | -table &lt;file&gt;] [-sample &lt;percent&gt;] [-order1 | -lz &lt;level&gt; [-window &lt;size&gt;] | -bwt] [-stats] &lt;archive&gt; &lt;file or directory&gt;...
+ * -list &lt;archive&gt;
+ * -unarchive [-threads &lt;n&gt;] [-table &lt;file&gt;] &lt;archive&gt; [&lt;name&gt;...]
+ * -train [-maxlen &lt;bits&gt;] &lt;table file&gt; &lt;sample file or directory&gt;...
+ * </pre>
+ */
+final class Options {
+
+    /** The operation, such as "-encode" or "-decode", in lower case */
+    String operation;
+
+    /** The file to process, or the archive */
+    String fileName;
+
+    /** The files and directories to archive, or the names of the files to take out of an archive */
+    List<String> paths = new ArrayList<> ();
+
+    /** Whether to compress code points read through the platform charset instead of bytes */
+    boolean text = false;
+
+    /** Number of worker threads */
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Uncompressed size of the blocks of a block container */
+    int blockSize = HzFormat.DEFAULT_BLOCK_SIZE;
+
+    /** Uncompressed bytes between two sync points of a block container */
+    int syncInterval = HzFormat.DEFAULT_SYNC_INTERVAL;
+
+    /** Longest code length allowed, in bits, or 0 for unlimited Huffman codes */
+    int maxLength = 0;
+
+    /** Offset of the range to extract in the uncompressed data */
+    long extractOffset;
+
+    /** Length of the range to extract */
+    long extractLength;
+
+    /** Whether the blocks share one table built from the whole file */
+    boolean sharedTable = false;
+
+    /** Fraction of the file read to estimate the frequencies of a shared or text table, or 0 to count them all */
+    double sampleFraction = 0;
+
+    /** Whether every block codes each byte with a table chosen by the byte before it */
+    boolean order1 = false;
+
+    /** LZ77 compression level of every block, 1 to <code>Lz77.MAX_LEVEL</code>, or 0 to code bytes directly */
+    int lzLevel = 0;
+
+    /** Longest LZ77 match distance, in bytes */
+    int lzWindow = Lz77.DEFAULT_WINDOW;
+
+    /** Whether every block is coded with the Burrows-Wheeler transform, move-to-front and zero runs; such containers have no sync points */
+    boolean bwt = false;
+
+    /** Whether to read and write block containers through memory-mapped files */
+    boolean mapped = false;
+
+    /** Table file given with -table */
+    String tableFile;
+
+    /** Trained table shared by the blocks, loaded from <code>tableFile</code>, or null */
+    TrainedTable table;
+
+    /** Whether to print sizes, ratio, code length, phase times and peak heap when done */
+    boolean stats = false;
+
+    /**
+     * Parses command-line arguments.
+     *
+     * @param args the arguments passed to main
+     * @return the parsed options, or null if the arguments are invalid
+     */
+    static Options parse (String[] args)
+    {
+        if (args.length < 2)
+        {
+            return null;
+        }
+
+        Options options = new Options();
+        options.operation = args[0].toLowerCase();
+        options.fileName = args[args.length - 1];
+
+        int i = 1;
+
+        if (options.operation.equals("-archive") || options.operation.equals("-list")
+                || options.operation.equals("-unarchive") || options.operation.equals("-train"))
+        {
+            while (i < args.length && args[i].startsWith("-"))
+            {
+                i = parseOption(options, args, i, args.length);
+
+                if (i < 0)
+                {
+                    return null;
+                }
+            }
+
+            if (i >= args.length || ((options.operation.equals("-archive") || options.operation.equals("-train"))
+                    && i == args.length - 1)
+                    || (options.operation.equals("-list") && i != args.length - 1))
+            {
+                return null;
+            }
+
+            options.fileName = args[i];
+            options.paths.addAll(Arrays.asList(args).subList(i + 1, args.length));
+            return options;
+        }
+
+        if (options.operation.equals("-extract"))
+        {
+            if (args.length < 4)
+            {
+                return null;
+            }
+            options.extractOffset = parseLong(args[i++]);
+            options.extractLength = parseLong(args[i++]);
+            if (options.extractOffset < 0 || options.extractLength < 0)
+            {
+                return null;
+            }
+        }
+
+        while (i < args.length - 1)
+        {
+            i = parseOption(options, args, i, args.length - 1);
+
+            if (i < 0)
+            {
+                return null;
+            }
+        }
+
+        return options;
+    }
+
+    /**
+     * Parses one option and its value.
+     *
+     * @param options the options to set
+     * @param args    the arguments passed to main
+     * @param i       index of the option
+     * @param end     index of the first argument that cannot be an option value
+     * @return index of the next argument, or -1 if the option is invalid
+     */
+    private static int parseOption (Options options, String[] args, int i, int end)
+    {
+        String option = args[i++].toLowerCase();
+
+        switch (option)
+        {
+            case "-text":
+                options.text = true;
+                break;
+            case "-threads":
+                if (i >= end)
+                {
+                    return -1;
+                }
+                options.threads = parsePositive(args[i++]);
+                if (options.threads <= 0)
+                {
+                    return -1;
+                }
+                break;
+            case "-block":
+                if (i >= end)
+                {
+                    return -1;
+                }
+                options.blockSize = parseSize(args[i++]);
+                if (options.blockSize < HzFormat.MIN_BLOCK_SIZE || options.blockSize > HzFormat.MAX_BLOCK_SIZE)
+                {
+                    return -1;
+                }
+                break;
+            case "-sync":
+                if (i >= end)
+                {
+                    return -1;
+                }
+                options.syncInterval = parseSize(args[i++]);
+                if (options.syncInterval < HzFormat.MIN_BLOCK_SIZE || options.syncInterval > HzFormat.MAX_BLOCK_SIZE)
+                {
+                    return -1;
+                }
+                break;
+            case "-maxlen":
+                if (i >= end)
+                {
+                    return -1;
+                }
+                options.maxLength = parsePositive(args[i++]);
+                if (options.maxLength < 8 || options.maxLength > CodeTable.MAX_LENGTH)
+                {
+                    return -1;
+                }
+                break;
+            case "-shared":
+                options.sharedTable = true;
+                break;
+            case "-sample":
+                if (i >= end)
+                {
+                    return -1;
+                }
+                options.sampleFraction = parsePercent(args[i++]);
+                if (options.sampleFraction <= 0)
+                {
+                    return -1;
+                }
+                break;
+            case "-order1":
+                options.order1 = true;
+                break;
+            case "-lz":
+                if (i >= end)
+                {
+                    return -1;
+                }
+                options.lzLevel = parsePositive(args[i++]);
+                if (options.lzLevel < 1 || options.lzLevel > Lz77.MAX_LEVEL)
+                {
+                    return -1;
+                }
+                break;
+            case "-window":
+                if (i >= end)
+                {
+                    return -1;
+                }
+                options.lzWindow = parseSize(args[i++]);
+                if (options.lzWindow <= 0 || options.lzWindow > Lz77.MAX_WINDOW)
+                {
+                    return -1;
+                }
+                break;
+            case "-bwt":
+                options.bwt = true;
+                break;
+            case "-mmap":
+                options.mapped = true;
+                break;
+            case "-table":
+                if (i >= end)
+                {
+                    return -1;
+                }
+                options.tableFile = args[i++];
+                break;
+            case "-stats":
+            case "--stats":
+                options.stats = true;
+                break;
+            default:
+                return -1;
+        }
+
+        return i;
+    }
+
+    /**
+     * Parses a size in bytes, with an optional "K" or "M" suffix.
+     *
+     * @param value the size, such as "65536", "512K" or "4M"
+     * @return the size in bytes, or -1 if it is not valid
+     */
+    private static int parseSize (String value)
+    {
+        String upper = value.toUpperCase();
+        int shift = 0;
+
+        if (upper.endsWith("K"))
+        {
+            shift = 10;
+        }
+
+        else if (upper.endsWith("M"))
+        {
+            shift = 20;
+        }
+
+        int size = parsePositive(shift == 0 ? upper : upper.substring(0, upper.length() - 1));
+
+        if (size <= 0 || size > (Integer.MAX_VALUE >> shift))
+        {
+            return -1;
+        }
+
+        return size << shift;
+    }
+
+    /**
+     * Parses a percentage, with an optional "%" suffix.
+     *
+     * @param value the percentage, such as "5", "0.5" or "5%"
+     * @return the fraction, or -1 if it is not a percentage above 0 and at most 100
+     */
+    private static double parsePercent (String value)
+    {
+        try
+        {
+            double percent = Double.parseDouble(value.endsWith("%") ? value.substring(0, value.length() - 1) : value);
+
+            return percent > 0 && percent <= 100 ? percent / 100 : -1;
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    private static int parsePositive (String value)
+    {
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    private static long parseLong (String value)
+    {
+        try
+        {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+}
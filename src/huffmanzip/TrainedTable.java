@@ -0,0 +1,282 @@
+package huffmanzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import huffman.CodeTable;
+import huffman.HuffmanCodeLengths;
+import huffman.HuffmanDecoder;
+import utils.BitInputStream;
+import utils.BitOutputStream;
+import utils.FrequencyCounter;
+import utils.UnsynchronizedBitOutputStream;
+
+/**
+ * A byte code table trained on a sample corpus and saved to its own file, so
+ * that compressed files only refer to it by its ID instead of carrying a table.
+ *
+ * <p>
+ * Small files cost little more than their encoded bits this way, and no
+ * counting pass is needed before encoding. Every byte value gets a code, even
+ * if the samples never contain it, so any data can be encoded with the table;
+ * bytes the samples did not predict just take longer codes. The ID is the
+ * CRC-32 of the serialized table, so the same samples always give the same ID.
+ * </p>
+ *
+ * <pre>
+ * table file: 'H' 'Z' 'T' 'B' | ID (int) | table length (int) | table
+ * </pre>
+ */
+public final class TrainedTable {
+
+    /** Magic bytes at the start of a table file */
+    static final byte[] MAGIC = { 'H', 'Z', 'T', 'B' };
+
+    /** The ID, the CRC-32 of the serialized table */
+    private final int id;
+
+    /** The code of every byte */
+    private final CodeTable codeTable;
+
+    /** The table as written by <code>CodeTable.writeTo</code> */
+    private final byte[] serialized;
+
+    /** Decoder for the table, shared by all readers */
+    private final HuffmanDecoder decoder;
+
+    private TrainedTable (byte[] serialized) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        crc.update(serialized);
+
+        this.id         = (int) crc.getValue();
+        this.serialized = serialized;
+        this.codeTable  = CodeTable.readFrom(new BitInputStream(ByteBuffer.wrap(serialized)));
+        this.decoder    = new HuffmanDecoder(codeTable);
+    }
+
+    /**
+     * Builds a table from byte frequencies. Every byte value is counted once
+     * more than it occurs, so that all of them get a code.
+     *
+     * @param frequencies number of occurrences of each byte value
+     * @param maxLength   the longest code allowed, in bits, or 0 for no limit
+     * @return the trained table
+     */
+    static TrainedTable fromFrequencies (long[] frequencies, int maxLength)
+    {
+        long[] smoothed = new long[256];
+
+        for (int i = 0; i < smoothed.length; i++)
+        {
+            smoothed[i] = frequencies[i] + 1;
+        }
+
+        try
+        {
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            BitOutputStream bitOutputStream = new UnsynchronizedBitOutputStream(table, false);
+            HuffmanCodeLengths.canonicalTable(smoothed, maxLength).writeTo(bitOutputStream);
+            bitOutputStream.close();
+
+            return new TrainedTable(table.toByteArray());
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("cannot serialize a table in memory", e);
+        }
+    }
+
+    /**
+     * Trains a table on sample files.
+     *
+     * @param samples   the sample files and directories; directories are read recursively
+     * @param maxLength the longest code allowed, in bits, or 0 for no limit
+     * @return the trained table
+     * @throws IOException if an I/O error occurs
+     */
+    public static TrainedTable train (List<Path> samples, int maxLength) throws IOException
+    {
+        long[] frequencies = new long[256];
+
+        for (Path sample : samples)
+        {
+            List<Path> files;
+
+            try (Stream<Path> walk = Files.walk(sample))
+            {
+                files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+
+            for (Path file : files)
+            {
+                long[] fileFrequencies = FrequencyCounter.countBytes(file, Runtime.getRuntime().availableProcessors());
+
+                for (int i = 0; i < frequencies.length; i++)
+                {
+                    frequencies[i] += fileFrequencies[i];
+                }
+            }
+        }
+
+        return fromFrequencies(frequencies, maxLength);
+    }
+
+    /**
+     * Reads a table file.
+     *
+     * @param path the table file
+     * @return the table
+     * @throws IOException if an I/O error occurs, or if the file is not a valid table file
+     */
+    public static TrainedTable load (Path path) throws IOException
+    {
+        try (InputStream in = Files.newInputStream(path))
+        {
+            return readFrom(in);
+        }
+    }
+
+    /**
+     * Reads a table as written by <code>writeTo</code>.
+     *
+     * @param in stream to read from
+     * @return the table
+     * @throws IOException if an I/O error occurs, or if the stream does not hold a valid table
+     */
+    public static TrainedTable readFrom (InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+
+        if (!Arrays.equals(magic, MAGIC))
+        {
+            throw new IOException("not a table file");
+        }
+
+        int id = data.readInt();
+        int length = data.readInt();
+
+        if (length < 0 || length > 1 << 16)
+        {
+            throw new IOException("invalid table length " + length);
+        }
+
+        byte[] serialized = new byte[length];
+        data.readFully(serialized);
+
+        TrainedTable table = new TrainedTable(serialized);
+
+        if (table.id != id)
+        {
+            throw new IOException("corrupt table file: ID does not match its table");
+        }
+
+        for (int i = 0; i < 256; i++)
+        {
+            if (!table.codeTable.contains(i))
+            {
+                throw new IOException("table file has no code for byte " + i);
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * Writes the table to a file.
+     *
+     * @param path the table file; replaced if it exists
+     * @throws IOException if an I/O error occurs
+     */
+    public void save (Path path) throws IOException
+    {
+        try (OutputStream out = Files.newOutputStream(path))
+        {
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Writes the magic bytes, the ID and the table.
+     *
+     * @param out stream to write to, left open
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo (OutputStream out) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(out);
+
+        data.write(MAGIC);
+        data.writeInt(id);
+        data.writeInt(serialized.length);
+        data.write(serialized);
+        data.flush();
+    }
+
+    /**
+     * Returns the ID stored in compressed files in place of the table.
+     *
+     * @return the ID
+     */
+    public int getId ()
+    {
+        return id;
+    }
+
+    /**
+     * Returns the code of every byte.
+     *
+     * @return the code table
+     */
+    CodeTable getCodeTable ()
+    {
+        return codeTable;
+    }
+
+    /**
+     * Returns the decoder for the table.
+     *
+     * @return the decoder
+     */
+    HuffmanDecoder getDecoder ()
+    {
+        return decoder;
+    }
+
+    /**
+     * Checks that a compressed file refers to this table.
+     *
+     * @param table the table the file was compressed with, or null if none was given
+     * @param id    the ID stored in the file
+     * @return the table
+     * @throws IOException if no table was given or it has another ID
+     */
+    static TrainedTable check (TrainedTable table, int id) throws IOException
+    {
+        if (table == null)
+        {
+            throw new IOException(String.format("compressed with trained table %08x; pass it with -table", id));
+        }
+
+        if (table.id != id)
+        {
+            throw new IOException(String.format("compressed with trained table %08x, not %08x", id, table.id));
+        }
+
+        return table;
+    }
+}
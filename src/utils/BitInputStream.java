@@ -7,12 +7,18 @@ import java.io.FileNotFoundException;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
 
 /**
  * The BitInputStream allows reading individual bits from a general 
  * Java InputStream. This class is able to read a single bit from a
  * stream It is also able to read Serializable objects. 
  * <p>
+ * Bytes are read from the underlying stream in large chunks into an internal
+ * buffer, and bits are served from a 64-bit accumulator, so several bits can be
+ * peeked, skipped or read at once. The end of the stream is detected from the
+ * number of bytes read, never by catching exceptions.
+ * <p>
  * The code is based on the following reference:
  * <p>
  * http://www.developer.nokia.com/Community/Wiki/Bit_Input/Output_Stream_utility_classes_for_efficient_data_transfer
@@ -24,42 +30,67 @@ import java.io.ObjectInputStream;
  */
 public class BitInputStream {
 	/**
-	 * The <code>ObjectInputStream</code> this stream is reading from.
+	 * The size of the internal byte buffer.
 	 */
-	private ObjectInputStream stream;
+	private static final int BUFFER_SIZE = 1 << 16;
 
 	/**
-	 * The buffer containing the current byte of this stream.
+	 * The largest number of bits that can be peeked or read at once.
 	 */
-	private int buffer;
+	public static final int MAX_BITS = 56;
 
 	/**
-	 * The very last byte in this stream, not part of the original input.
-	 * Indicates the number of significant bits saved at the very end.
+	 * The <code>InputStream</code> this stream is reading from, or <code>null</code>
+	 * when reading from a <code>ByteBuffer</code>.
 	 */
-	private int lastBits;
+	private InputStream stream;
 
 	/**
-	 * The nextByte, if any, in the stream.
+	 * The <code>ByteBuffer</code> this stream is reading from, or <code>null</code>
+	 * when reading from an <code>InputStream</code>.
 	 */
-	private int nextByte;
+	private ByteBuffer source;
 
-    	/**
-	 * Keeps track if there is a next byte in the stream.
+	/**
+	 * Bytes read from the <code>InputStream</code> but not yet moved to the accumulator,
+	 * or <code>null</code> when reading from a <code>ByteBuffer</code>, whose bytes are
+	 * moved to the accumulator directly.
 	 */
-	private boolean hasNextByte = false;
+	private final byte[] bytes;
 
 	/**
-	 * Indicates whether the method <code>readBit</code> has been called.
-	 * The method <code>readObject</code> cannot be called after a call to <code>readBit</code>.
+	 * The index of the next unread byte in <code>bytes</code>.
 	 */
-	private boolean readBitCalled = false;
+	private int position = 0;
 
 	/**
-	 * The index of the next bit in the current byte that will be returned by <code>readBit</code>.
-	 * If it's 0, the next bit will be read from the next byte of the <code>ObjectInputStream</code>.
+	 * The number of valid bytes in <code>bytes</code>.
 	 */
-	private int nextBit = 8;
+	private int limit = 0;
+
+	/**
+	 * Indicates whether the stream has no more bytes beyond those in <code>bytes</code>.
+	 * The last two of them are then the partial last byte and the
+	 * number of significant bits saved in it.
+	 */
+	private boolean endOfSource = false;
+
+	/**
+	 * The accumulator holding bits taken from <code>bytes</code> but not yet consumed,
+	 * right-aligned, the oldest bit being the most significant one.
+	 */
+	private long buffer;
+
+	/**
+	 * The number of valid bits in <code>buffer</code>.
+	 */
+	private int bitCount = 0;
+
+	/**
+	 * Indicates whether bits have been read.
+	 * The method <code>readObject</code> cannot be called after a call to <code>readBit</code>.
+	 */
+	private boolean readBitCalled = false;
 
 	/**
 	 * Creates a <code>BitInputStream</code> that reads bits from the specified <code>InputStream</code>.
@@ -71,6 +102,22 @@ public class BitInputStream {
 	public BitInputStream(InputStream in) throws IOException
 	{
 		stream = new ObjectInputStream(in);
+		bytes = new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Creates a <code>BitInputStream</code> that reads bits from the specified <code>InputStream</code>,
+	 * optionally without the object stream framing.
+	 * @param in           the input stream to read from
+	 * @param serializable <code>true</code> to read through an <code>ObjectInputStream</code>
+	 *                     as the other constructors do, <code>false</code> to read the bits
+	 *                     straight from <code>in</code>; <code>readObject</code> is then unavailable
+	 * @throws IOException - if an I/O error occurs while reading stream header
+	 */
+	public BitInputStream(InputStream in, boolean serializable) throws IOException
+	{
+		stream = serializable ? new ObjectInputStream(in) : in;
+		bytes = new byte[BUFFER_SIZE];
 	}
 
 	/**
@@ -84,6 +131,19 @@ public class BitInputStream {
 	public BitInputStream(String name) throws IOException
 	{
 		stream = new ObjectInputStream(new FileInputStream(name));
+		bytes = new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Creates a <code>BitInputStream</code> that reads the bits held between the position
+	 * and the limit of a <code>ByteBuffer</code>, the last byte being the number of
+	 * significant bits in the byte before it. Objects cannot be read from such a stream.
+	 * @param in the buffer to read from; its position is advanced as bits are read
+	 */
+	public BitInputStream(ByteBuffer in)
+	{
+		source = in;
+		bytes = null;
 	}
 
 	/**
@@ -93,76 +153,245 @@ public class BitInputStream {
 	 */
 	synchronized public boolean hasNext()
 	{
-		if (stream == null) {
+		try {
+			return ensureBits(1) > 0;
+		}
+		catch (IOException e) {
 			return false;
-		}	
-		else if (!readBitCalled) {
-			try {
-				buffer = stream.readUnsignedByte();
+		}
+	}
+
+	/**
+	 * Reads the next bit from this stream.
+	 * @return 0 if the bit is 0, 1 if the bit is 1
+	 * @throws IOException if an I/O error occurs, or if attempting to read past the end of file
+	 */
+	synchronized public int readBit() throws IOException
+	{
+		return (int) readBits(1);
+	}
+
+	/**
+	 * Makes sure that up to <code>n</code> bits are available for <code>peekBits</code>
+	 * and returns how many are. Fewer than <code>n</code> bits are only returned at the end of the stream.
+	 * Like the other bulk methods, it is not synchronized.
+	 * @param n the number of bits wanted, at most <code>MAX_BITS</code>
+	 * @return the number of bits available, at most <code>n</code>
+	 * @throws IOException if an I/O error occurs
+	 */
+	public int ensureBits(int n) throws IOException
+	{
+		if (bitCount < n) {
+			fill();
+		}
+
+		return Math.min(n, bitCount);
+	}
+
+	/**
+	 * Returns the next <code>n</code> bits of this stream without consuming them.
+	 * Bits past the end of the stream are returned as 0.
+	 * @param n the number of bits to peek, at most <code>MAX_BITS</code>
+	 * @return the bits, right-aligned, the first bit being the most significant one
+	 * @throws IOException if an I/O error occurs
+	 */
+	public long peekBits(int n) throws IOException
+	{
+		if (bitCount < n) {
+			fill();
+
+			if (bitCount < n) {
+				return (buffer << (n - bitCount)) & ((1L << n) - 1);
 			}
-			catch (IOException e) {
-				return false;
+		}
+
+		return (buffer >>> (bitCount - n)) & ((1L << n) - 1);
+	}
+
+	/**
+	 * Consumes the next <code>n</code> bits of this stream.
+	 * @param n the number of bits to skip
+	 * @throws IOException if an I/O error occurs, or if attempting to skip past the end of file
+	 */
+	public void skipBits(int n) throws IOException
+	{
+		while (n > bitCount) {
+			n -= bitCount;
+			bitCount = 0;
+			fill();
+
+			if (bitCount == 0) {
+				throw new IOException("no bits left in the stream");
 			}
-			try {
-				lastBits = stream.readUnsignedByte();
+		}
+
+		bitCount -= n;
+	}
+
+	/**
+	 * Reads the next <code>n</code> bits of this stream.
+	 * @param n the number of bits to read, at most <code>MAX_BITS</code>
+	 * @return the bits, right-aligned, the first bit being the most significant one
+	 * @throws IOException if an I/O error occurs, or if attempting to read past the end of file
+	 */
+	public long readBits(int n) throws IOException
+	{
+		if (ensureBits(n) < n) {
+			throw new IOException("no bits left in the stream");
+		}
+
+		bitCount -= n;
+
+		return (buffer >>> bitCount) & ((1L << n) - 1);
+	}
+
+	/**
+	 * Returns the exact number of bits left in this stream, derived from the count
+	 * of significant bits stored in the last byte. The count is known when reading
+	 * from a <code>ByteBuffer</code>, or once the end of the underlying stream has been reached.
+	 * @return the number of bits left, or -1 if it is not known yet
+	 */
+	public long remainingBits()
+	{
+		long pending = limit - position;
+
+		if (source != null) {
+			pending += source.remaining();
+		}
+		else if (!endOfSource) {
+			return -1;
+		}
+
+		if (pending < 2) {
+			return bitCount;
+		}
+
+		int lastBits = (source != null && source.hasRemaining())
+				? source.get(source.limit() - 1) & 0xFF
+				: bytes[limit - 1] & 0xFF;
+
+		return bitCount + (pending - 2) * 8 + lastBits;
+	}
+
+	/**
+	 * Moves bytes into the accumulator until it holds more than <code>MAX_BITS</code> bits
+	 * or the stream is exhausted.
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void fill() throws IOException
+	{
+		readBitCalled = true;
+
+		if (bytes == null) {
+			fillFromSource();
+			return;
+		}
+
+		while (bitCount <= MAX_BITS) {
+			// the last two bytes can only be interpreted once the end is known
+			if (limit - position <= 2 && !endOfSource) {
+				refill();
 			}
-			catch (IOException e) {
-				return false;
+
+			int pending = limit - position;
+
+			if (pending > 2 || (pending == 2 && !endOfSource)) {
+				buffer = (buffer << 8) | (bytes[position++] & 0xFF);
+				bitCount += 8;
 			}
-			try {
-				nextByte = stream.readUnsignedByte();
-				nextBit = 8;
-				hasNextByte = true;
+			else if (pending == 2) {
+				int lastBits = lastBits(bytes[position + 1]);
+
+				buffer = (buffer << lastBits) | (bytes[position] & ((1 << lastBits) - 1));
+				bitCount += lastBits;
+				position += 2;
+				return;
 			}
-			catch (IOException e) {
-				nextBit = lastBits;
-				lastBits = 0;
-				hasNextByte = false;
+			else {
+				return;
 			}
-			readBitCalled = true;
-			return true;
 		}
-		else if (nextBit == 0) {
-			if (!hasNextByte) {
-				return false;
+	}
+
+	/**
+	 * Moves bytes of the <code>ByteBuffer</code> into the accumulator until it holds
+	 * more than <code>MAX_BITS</code> bits or the buffer is exhausted.
+	 * @throws IOException if the count of bits in the last byte is invalid
+	 */
+	private void fillFromSource() throws IOException
+	{
+		if (source == null) {
+			return;
+		}
+
+		while (bitCount <= MAX_BITS) {
+			int pending = source.remaining();
+
+			if (pending > 2) {
+				buffer = (buffer << 8) | (source.get() & 0xFF);
+				bitCount += 8;
+			}
+			else if (pending == 2) {
+				int partial  = source.get();
+				int lastBits = lastBits(source.get());
+
+				buffer = (buffer << lastBits) | (partial & ((1 << lastBits) - 1));
+				bitCount += lastBits;
+				return;
 			}
 			else {
-				buffer = lastBits;
-				lastBits = nextByte;
-				try {
-				        nextByte = stream.readUnsignedByte();
-					nextBit = 8;
-					hasNextByte = true;
-				}
-				catch (IOException e) {
-					nextBit = lastBits;
-					hasNextByte = false;
-				}
-				return true;
+				return;
 			}
 		}
-		else {
-			return true;
+	}
+
+	/**
+	 * Checks the count of significant bits stored in the last byte of the stream.
+	 * @param count the last byte
+	 * @return the count, 0 to 8
+	 * @throws IOException if the count is larger than 8
+	 */
+	private static int lastBits(byte count) throws IOException
+	{
+		int lastBits = count & 0xFF;
+
+		if (lastBits > 8) {
+			throw new IOException("invalid count of " + lastBits + " bits in the last byte");
 		}
+
+		return lastBits;
 	}
 
 	/**
-	 * Reads the next bit from this stream.
-	 * @return 0 if the bit is 0, 1 if the bit is 1
-	 * @throws IOException if an I/O error occurs, or if attempting to read past the end of file
+	 * Moves the unread bytes to the front of <code>bytes</code> and reads
+	 * as many more as fit from the stream.
+	 * @throws IOException if an I/O error occurs
 	 */
-	synchronized public int readBit() throws IOException
+	private void refill() throws IOException
 	{
-		if (!hasNext()) {
-			throw new IOException("no bits left in the stream");
+		int pending = limit - position;
+		System.arraycopy(bytes, position, bytes, 0, pending);
+		position = 0;
+		limit = pending;
+
+		if (stream == null) {
+			endOfSource = true;
+			return;
 		}
-		else {
-			nextBit--;
-			int bit = buffer & (1 << nextBit);
 
-			bit = (bit == 0) ? 0 : 1;
+		while (limit < bytes.length) {
+			int count = stream.read(bytes, limit, bytes.length - limit);
+
+			if (count < 0) {
+				endOfSource = true;
+				return;
+			}
+
+			limit += count;
 
-			return bit;
+			if (limit - position > 2) {
+				return;
+			}
 		}
 	}
 
@@ -174,14 +403,14 @@ public class BitInputStream {
 	 */
 	synchronized public Object readObject() throws IOException, ClassNotFoundException
 	{
-		if (stream == null) {
-			throw new IOException("this stream is not open for reading");
+		if (!(stream instanceof ObjectInputStream)) {
+			throw new IOException("this stream is not open for reading objects");
 		}
 		else if (readBitCalled) {
 			throw new IOException("cannot call readObject after a call to readBit");
 		}
 
-		return stream.readObject();
+		return ((ObjectInputStream) stream).readObject();
 	}
 
 	/**
@@ -190,7 +419,11 @@ public class BitInputStream {
 	 */
 	public void close() throws IOException
 	{
-		stream.close();
+		if (stream != null) {
+			stream.close();
+		}
+
 		stream = null;
+		source = null;
 	}
 }
@@ -27,21 +27,43 @@ import java.io.ObjectOutputStream;
  */
 public class BitOutputStream {
 	/**
-	 * The <code>ObjectOutputStream</code> this stream is writing to.
+	 * The size of the internal byte buffer, a multiple of 8 so that whole
+	 * words of the accumulator always fit.
 	 */
-	private ObjectOutputStream stream;
+	private static final int BUFFER_SIZE = 1 << 16;
 
 	/**
-	 * The temporary buffer containing the individual bits
-	 * until a byte has been completed and can be committed
-	 * to the output stream.
+	 * The <code>OutputStream</code> this stream is writing to, an
+	 * <code>ObjectOutputStream</code> unless the stream was created raw.
 	 */
-	private int buffer = 0;
+	private OutputStream stream;
 
 	/**
-	 * Counts how many bits are left to fill the buffer.
+	 * The 64-bit accumulator containing the individual bits
+	 * until a word has been completed and can be moved to <code>bytes</code>.
+	 * Bits are right-aligned, the oldest bit being the most significant one.
 	 */
-	private int bitCount = 8;
+	private long buffer = 0;
+
+	/**
+	 * Counts how many bits are held in the accumulator, always less than 64.
+	 */
+	private int bitCount = 0;
+
+	/**
+	 * Completed bytes waiting to be committed to the output stream.
+	 */
+	private final byte[] bytes = new byte[BUFFER_SIZE];
+
+	/**
+	 * The number of bytes used in <code>bytes</code>.
+	 */
+	private int byteCount = 0;
+
+	/**
+	 * The number of bytes committed to the output stream so far.
+	 */
+	private long committed = 0;
 
 	/**
 	 * Indicates whether the method <code>writeBit</code> has been called.
@@ -61,6 +83,20 @@ public class BitOutputStream {
 		stream = new ObjectOutputStream(out);
 	}
 
+	/**
+	 * Creates a <code>BitOutputStream</code> that writes bits to the specified <code>OutputStream</code>,
+	 * optionally without the object stream framing.
+	 * @param out          the output stream to write to
+	 * @param serializable <code>true</code> to write through an <code>ObjectOutputStream</code>
+	 *                     as the other constructors do, <code>false</code> to write the bits
+	 *                     straight to <code>out</code>; <code>writeObject</code> is then unavailable
+	 * @throws IOException - if an I/O error occurs while writing stream header
+	 */
+	public BitOutputStream(OutputStream out, boolean serializable) throws IOException
+	{
+		stream = serializable ? new ObjectOutputStream(out) : out;
+	}
+
 	/**
 	 * Creates a <code>BitOutputStream</code> stream that writes bits to the file with the given name.
 	 * @param name the name of the file to write the bits to
@@ -75,12 +111,37 @@ public class BitOutputStream {
 
 	/**
 	 * Writes a single bit to the stream. It will only be flushed
-	 * to the underlying <code>OutputStream</code> when a byte has been completed (or when this stream is closed).
+	 * to the underlying <code>OutputStream</code> when the internal buffer is full (or when this stream is closed).
 	 * @param bit the next bit to write (either 1 or 0)
 	 * @throws IOException if an I/O error occurs
 	 * @throws IllegalArgumentException if the bit to write is not on of the integers 1 or 0
 	 */
 	synchronized public void writeBit(int bit) throws IOException
+	{
+		checkBit(bit);
+		putBits(bit, 1);
+	}
+
+	/**
+	 * Writes the <code>count</code> low bits of <code>bits</code> to the stream,
+	 * most significant bit first. Higher bits are ignored.
+	 * @param bits  the bits to write, right-aligned
+	 * @param count the number of bits to write, from 0 to 64
+	 * @throws IOException if an I/O error occurs
+	 * @throws IllegalArgumentException if <code>count</code> is out of range
+	 */
+	synchronized public void writeBits(long bits, int count) throws IOException
+	{
+		checkCount(count);
+		putBits(bits, count);
+	}
+
+	/**
+	 * Validates the argument of <code>writeBit</code>.
+	 * @param bit the bit to check
+	 * @throws IOException if the stream is closed or the bit is not 0 or 1
+	 */
+	void checkBit(int bit) throws IOException
 	{
 		if (stream == null) {
 			throw new IOException("the stream is not open for writing");
@@ -89,17 +150,67 @@ public class BitOutputStream {
 		if (bit != 0 && bit != 1) {
 			throw new IOException(bit + " is not a bit; did you use chars '0', '1'? use ints 0, 1");
 		}
+	}
 
+	/**
+	 * Validates the arguments of <code>writeBits</code>.
+	 * @param count the bit count to check
+	 * @throws IOException if the stream is closed
+	 * @throws IllegalArgumentException if <code>count</code> is out of range
+	 */
+	void checkCount(int count) throws IOException
+	{
+		if (stream == null) {
+			throw new IOException("the stream is not open for writing");
+		}
+
+		if (count < 0 || count > 64) {
+			throw new IllegalArgumentException(count + " bits cannot be written at once; use 0 to 64");
+		}
+	}
+
+	/**
+	 * Appends bits to the accumulator, moving it to the byte buffer whenever 64 bits are completed.
+	 * @param bits  the bits to write, right-aligned
+	 * @param count the number of bits to write, from 0 to 64
+	 * @throws IOException if an I/O error occurs
+	 */
+	final void putBits(long bits, int count) throws IOException
+	{
 		writeBitCalled = true;
 
-		buffer = (buffer << 1) | bit;
-		bitCount--;
+		if (count == 0) {
+			return;
+		}
+
+		int free = 64 - bitCount;
 
-		if (bitCount == 0) {
+		if (count < free) {
+			buffer = (buffer << count) | (bits & ((1L << count) - 1));
+			bitCount += count;
+		}
+		else {
+			int rest = count - free;
+			long head = (rest == 0) ? bits : bits >>> rest;
+
+			buffer = (free == 64) ? head : (buffer << free) | (head & ((1L << free) - 1));
 			flush();
+
+			buffer = (rest == 0) ? 0 : bits & ((1L << rest) - 1);
+			bitCount = rest;
 		}
 	}
 
+	/**
+	 * Returns the number of bits written to this stream so far, that is the
+	 * position of the next bit in the output.
+	 * @return the number of bits written
+	 */
+	synchronized public long getBitPosition()
+	{
+		return 8 * (committed + byteCount) + bitCount;
+	}
+
 	/**
 	 * Writes an object to this stream.
 	 * @param obj the object to be written to this stream
@@ -110,24 +221,31 @@ public class BitOutputStream {
 		if (stream == null) {
 			throw new IOException("the stream is not open for writing");
 		}
+		else if (!(stream instanceof ObjectOutputStream)) {
+			throw new IOException("this stream is not open for writing objects");
+		}
 		else if (writeBitCalled) {
 			throw new IOException("cannot call writeObject after a call to writeBit");
 		}
 
-		stream.writeObject(obj);
+		((ObjectOutputStream) stream).writeObject(obj);
 	}
 
 	/**
-	 * Writes the current cache to this stream and resets the buffer.
+	 * Moves the completed 64-bit accumulator to the byte buffer,
+	 * committing the buffer to this stream when it is full.
 	 * @throws IOException if an I/O error occurs
 	 */
 	private void flush() throws IOException
 	{
-		if (bitCount == 0)
-		{
-			stream.write((byte) buffer);
-			bitCount = 8;
-			buffer = 0;
+		if (byteCount == BUFFER_SIZE) {
+			stream.write(bytes, 0, byteCount);
+			committed += byteCount;
+			byteCount = 0;
+		}
+
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			bytes[byteCount++] = (byte) (buffer >>> shift);
 		}
 	}
 
@@ -137,18 +255,26 @@ public class BitOutputStream {
 	 */
 	public void close() throws IOException
 	{
+		stream.write(bytes, 0, byteCount);
+		byteCount = 0;
+
 		// store the last set of bits along shifted
-		// to the most-significant bits
+		// to the least-significant bits
 		if (writeBitCalled) {
-			if (bitCount != 8) {
-				stream.write((byte) buffer);
+			while (bitCount >= 8) {
+				bitCount -= 8;
+				stream.write((byte) (buffer >>> bitCount));
+			}
+
+			if (bitCount != 0) {
+				stream.write((byte) (buffer & ((1 << bitCount) - 1)));
 			}
 			else {
-				bitCount = 0;
+				bitCount = 8;
 			}
 
 			// write the number of last set of saved bits at the end
-			stream.write((byte) (8 - bitCount));
+			stream.write((byte) bitCount);
 		}
 
 		stream.close();
@@ -0,0 +1,313 @@
+package utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts how often every byte value occurs in a file.
+ *
+ * <p>
+ * Large files are split into chunks that are counted in parallel on a
+ * <code>ForkJoinPool</code>. Every task reads its own chunk with positional
+ * reads into a private buffer and counts into a primitive <code>long[256]</code>,
+ * and the histograms are summed as the tasks are joined, so workers never
+ * share mutable state.
+ * </p>
+ *
+ * <p>
+ * <code>sampleBytes</code> estimates the frequencies instead, from evenly
+ * spaced samples covering a fraction of the file, so that building a table
+ * for a huge file does not cost a full read before encoding it.
+ * </p>
+ */
+public class FrequencyCounter {
+
+	/** Files smaller than this are counted by a single task. */
+	private static final long CHUNK_SIZE = 8L << 20;
+
+	/** Size of the buffer each task reads into. */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/** Size of each sample read by <code>sampleBytes</code>. */
+	public static final int SAMPLE_SIZE = 64 << 10;
+
+	/** Number of samples a sampling task reads before splitting. */
+	private static final int SAMPLES_PER_TASK = 16;
+
+	private FrequencyCounter ()
+	{
+	}
+
+	/**
+	 * Counts the bytes of a file.
+	 *
+	 * @param file    the file to count
+	 * @param workers the number of worker threads, at least 1
+	 * @return the number of occurrences of each byte value
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static long[] countBytes (Path file, int workers) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+
+			if (workers <= 1 || size <= CHUNK_SIZE)
+			{
+				return count(channel, 0, size);
+			}
+
+			ForkJoinPool pool = new ForkJoinPool(workers);
+
+			try
+			{
+				return pool.invoke(new CountTask(channel, 0, size));
+			}
+			catch (UncheckedIOException e)
+			{
+				throw e.getCause();
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Estimates the byte frequencies of a file from samples of
+	 * <code>SAMPLE_SIZE</code> bytes, spread evenly from its start to its end
+	 * and covering about the given fraction of it. Only the samples are read.
+	 * A file too small to skip anything is counted entirely.
+	 *
+	 * @param file     the file to sample
+	 * @param fraction the fraction of the file to read, greater than 0
+	 * @param workers  the number of worker threads, at least 1
+	 * @return the number of occurrences of each byte value in the samples
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static long[] sampleBytes (Path file, double fraction, int workers) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			int samples = sampleCount(size, fraction);
+
+			if (samples == 0)
+			{
+				return countBytes(file, workers);
+			}
+
+			if (workers <= 1 || samples <= SAMPLES_PER_TASK)
+			{
+				return sample(channel, size, samples, 0, samples);
+			}
+
+			ForkJoinPool pool = new ForkJoinPool(workers);
+
+			try
+			{
+				return pool.invoke(new SampleTask(channel, size, samples, 0, samples));
+			}
+			catch (UncheckedIOException e)
+			{
+				throw e.getCause();
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of samples of <code>SAMPLE_SIZE</code> bytes that
+	 * cover about the given fraction of a file.
+	 *
+	 * @param size     the size of the file
+	 * @param fraction the fraction of the file to read, greater than 0
+	 * @return the sample count, at least 2, or 0 if the samples would cover the whole file
+	 */
+	public static int sampleCount (long size, double fraction)
+	{
+		double samples = Math.max(2, Math.ceil(size * fraction / SAMPLE_SIZE));
+
+		return samples * SAMPLE_SIZE >= size || samples > Integer.MAX_VALUE ? 0 : (int) samples;
+	}
+
+	/**
+	 * Returns where a sample starts. The first sample starts at the start of
+	 * the file, the last one ends at its end, and the gaps between them are
+	 * equal.
+	 *
+	 * @param size    the size of the file
+	 * @param samples the sample count, as returned by <code>sampleCount</code>
+	 * @param k       the index of the sample
+	 * @return the offset of the sample in the file
+	 */
+	public static long samplePosition (long size, int samples, int k)
+	{
+		return (long) ((double) (size - SAMPLE_SIZE) * k / (samples - 1));
+	}
+
+	/**
+	 * Counts the bytes of a range of samples with positional reads.
+	 */
+	private static long[] sample (FileChannel channel, long size, int samples, int from, int to) throws IOException
+	{
+		long[] frequencies = new long[256];
+
+		for (int k = from; k < to; k++)
+		{
+			long position = samplePosition(size, samples, k);
+			long[] counted = count(channel, position, position + SAMPLE_SIZE);
+
+			for (int i = 0; i < frequencies.length; i++)
+			{
+				frequencies[i] += counted[i];
+			}
+		}
+
+		return frequencies;
+	}
+
+	/**
+	 * Counts the bytes in a range of a channel with positional reads.
+	 */
+	private static long[] count (FileChannel channel, long from, long to) throws IOException
+	{
+		long[] frequencies = new long[256];
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		byte[] bytes = buffer.array();
+		long position = from;
+
+		while (position < to)
+		{
+			buffer.clear();
+			buffer.limit((int) Math.min(BUFFER_SIZE, to - position));
+
+			int read = channel.read(buffer, position);
+
+			if (read < 0)
+			{
+				break;
+			}
+
+			for (int i = 0; i < read; i++)
+			{
+				frequencies[bytes[i] & 0xFF]++;
+			}
+
+			position += read;
+		}
+
+		return frequencies;
+	}
+
+	/**
+	 * Splits a range in halves until it is small enough to count directly.
+	 */
+	private static class CountTask extends RecursiveTask<long[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient FileChannel channel;
+		private final long from, to;
+
+		CountTask (FileChannel channel, long from, long to)
+		{
+			this.channel = channel;
+			this.from    = from;
+			this.to      = to;
+		}
+
+		@Override
+		protected long[] compute ()
+		{
+			if (to - from <= CHUNK_SIZE)
+			{
+				try
+				{
+					return count(channel, from, to);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			long middle = from + (to - from) / 2;
+			CountTask left  = new CountTask(channel, from, middle);
+			CountTask right = new CountTask(channel, middle, to);
+
+			left.fork();
+			long[] frequencies = right.compute();
+			long[] other = left.join();
+
+			for (int i = 0; i < frequencies.length; i++)
+			{
+				frequencies[i] += other[i];
+			}
+
+			return frequencies;
+		}
+	}
+
+	/**
+	 * Splits a range of samples in halves until it is small enough to read directly.
+	 */
+	private static class SampleTask extends RecursiveTask<long[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient FileChannel channel;
+		private final long size;
+		private final int samples, from, to;
+
+		SampleTask (FileChannel channel, long size, int samples, int from, int to)
+		{
+			this.channel = channel;
+			this.size    = size;
+			this.samples = samples;
+			this.from    = from;
+			this.to      = to;
+		}
+
+		@Override
+		protected long[] compute ()
+		{
+			if (to - from <= SAMPLES_PER_TASK)
+			{
+				try
+				{
+					return sample(channel, size, samples, from, to);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			int middle = (from + to) >>> 1;
+			SampleTask left  = new SampleTask(channel, size, samples, from, middle);
+			SampleTask right = new SampleTask(channel, size, samples, middle, to);
+
+			left.fork();
+			long[] frequencies = right.compute();
+			long[] other = left.join();
+
+			for (int i = 0; i < frequencies.length; i++)
+			{
+				frequencies[i] += other[i];
+			}
+
+			return frequencies;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Counts occurrences of non-negative <code>int</code> keys, such as Unicode
+ * code points, without boxing.
+ *
+ * <p>
+ * Keys and counts live in two parallel primitive arrays addressed by a hash
+ * of the key, with linear probing on collisions. The table doubles whenever
+ * it becomes half full, so probes stay short, and an increment never
+ * allocates unless it adds a new key.
+ * </p>
+ */
+public class IntCountMap {
+
+	/** Marks a free slot; keys are never negative. */
+	private static final int EMPTY = -1;
+
+	private int[]  keys;
+	private long[] counts;
+
+	/** Number of keys in the map. */
+	private int size = 0;
+
+	/** Largest key in the map, -1 if it is empty. */
+	private int maxKey = -1;
+
+	/**
+	 * Creates an empty map.
+	 */
+	public IntCountMap ()
+	{
+		this(64);
+	}
+
+	/**
+	 * Creates an empty map sized for the given number of keys.
+	 *
+	 * @param expectedKeys number of distinct keys expected
+	 */
+	public IntCountMap (int expectedKeys)
+	{
+		int capacity = Integer.highestOneBit(Math.max(8, 2 * expectedKeys - 1)) << 1;
+
+		keys   = new int[capacity];
+		counts = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * Adds one occurrence of a key.
+	 *
+	 * @param key the key
+	 * @throws IllegalArgumentException if the key is negative
+	 */
+	public void increment (int key)
+	{
+		add(key, 1);
+	}
+
+	/**
+	 * Adds occurrences of a key.
+	 *
+	 * @param key   the key
+	 * @param count the number of occurrences to add
+	 * @throws IllegalArgumentException if the key is negative
+	 */
+	public void add (int key, long count)
+	{
+		if (key < 0)
+		{
+			throw new IllegalArgumentException("negative key " + key);
+		}
+
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+
+		while (keys[slot] != key)
+		{
+			if (keys[slot] == EMPTY)
+			{
+				keys[slot] = key;
+				maxKey = Math.max(maxKey, key);
+
+				if (++size * 2 > keys.length)
+				{
+					counts[slot] = count;
+					grow();
+					return;
+				}
+
+				break;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		counts[slot] += count;
+	}
+
+	/**
+	 * Returns the number of occurrences of a key.
+	 *
+	 * @param key the key
+	 * @return the count, 0 if the key is not in the map
+	 */
+	public long get (int key)
+	{
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+
+		while (keys[slot] != EMPTY)
+		{
+			if (keys[slot] == key)
+			{
+				return counts[slot];
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Returns the number of distinct keys.
+	 *
+	 * @return the key count
+	 */
+	public int size ()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the largest key.
+	 *
+	 * @return the largest key, or -1 if the map is empty
+	 */
+	public int maxKey ()
+	{
+		return maxKey;
+	}
+
+	/**
+	 * Returns the counts as a dense array indexed by key, as expected by the
+	 * code length builders.
+	 *
+	 * @return array of length <code>maxKey() + 1</code> holding the count of every key
+	 */
+	public long[] toArray ()
+	{
+		long[] dense = new long[maxKey + 1];
+
+		for (int slot = 0; slot < keys.length; slot++)
+		{
+			if (keys[slot] != EMPTY)
+			{
+				dense[keys[slot]] = counts[slot];
+			}
+		}
+
+		return dense;
+	}
+
+	private void grow ()
+	{
+		int[]  oldKeys   = keys;
+		long[] oldCounts = counts;
+
+		keys   = new int[2 * oldKeys.length];
+		counts = new long[2 * oldKeys.length];
+		Arrays.fill(keys, EMPTY);
+
+		int mask = keys.length - 1;
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldKeys[i] != EMPTY)
+			{
+				int slot = hash(oldKeys[i]) & mask;
+
+				while (keys[slot] != EMPTY)
+				{
+					slot = (slot + 1) & mask;
+				}
+
+				keys[slot]   = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	/** Spreads consecutive keys, such as code points of one script, over the table. */
+	private static int hash (int key)
+	{
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,104 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A view of a file through memory-mapped windows.
+ *
+ * <p>
+ * A single <code>MappedByteBuffer</code> cannot cover more than 2 GB, so the
+ * file is mapped in aligned windows of a fixed size, each mapped on first use
+ * and kept for the lifetime of this object. A range that straddles two windows
+ * gets a mapping of its own. Slices are independent buffers, so several threads
+ * can use them at the same time.
+ * </p>
+ */
+public class MappedFile {
+
+	/** The default window size, 1 GB. */
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+	/** The channel the file is mapped from. */
+	private final FileChannel channel;
+
+	/** The mapping mode, read-only or read-write. */
+	private final FileChannel.MapMode mode;
+
+	/** The size of every window. */
+	private final long windowSize;
+
+	/** The size of the file; the last window stops there. */
+	private final long size;
+
+	/** The windows mapped so far, indexed by position / windowSize. */
+	private MappedByteBuffer[] windows = new MappedByteBuffer[0];
+
+	/**
+	 * Creates a view of a file.
+	 *
+	 * @param channel    the channel to map; must be readable, and writable for <code>READ_WRITE</code>
+	 * @param mode       <code>FileChannel.MapMode.READ_ONLY</code> or <code>READ_WRITE</code>
+	 * @param windowSize the size of every window, at most <code>Integer.MAX_VALUE</code>
+	 * @param size       the size of the file; read-write mappings extend the file to this size
+	 */
+	public MappedFile(FileChannel channel, FileChannel.MapMode mode, int windowSize, long size)
+	{
+		this.channel    = channel;
+		this.mode       = mode;
+		this.windowSize = windowSize;
+		this.size       = size;
+	}
+
+	/**
+	 * Returns a buffer over a range of the file, from position 0 to <code>length</code>.
+	 *
+	 * @param position the offset of the range in the file
+	 * @param length   the length of the range
+	 * @return a buffer mapping the range
+	 * @throws IOException if an I/O error occurs
+	 */
+	public ByteBuffer slice(long position, int length) throws IOException
+	{
+		int first = (int) (position / windowSize);
+		int last  = (int) ((position + Math.max(length, 1) - 1) / windowSize);
+
+		if (first != last) {
+			return channel.map(mode, position, length);
+		}
+
+		ByteBuffer window = window(first).duplicate();
+		int offset = (int) (position - first * windowSize);
+
+		window.position(offset);
+		window.limit(offset + length);
+
+		return window.slice();
+	}
+
+	/**
+	 * Returns a window, mapping it on first use. The last window stops at the end of the file.
+	 *
+	 * @param i the window number
+	 * @return the window
+	 * @throws IOException if an I/O error occurs
+	 */
+	private synchronized MappedByteBuffer window(int i) throws IOException
+	{
+		if (i >= windows.length) {
+			MappedByteBuffer[] grown = new MappedByteBuffer[i + 1];
+			System.arraycopy(windows, 0, grown, 0, windows.length);
+			windows = grown;
+		}
+
+		if (windows[i] == null) {
+			long start = i * windowSize;
+
+			windows[i] = channel.map(mode, start, Math.min(windowSize, size - start));
+		}
+
+		return windows[i];
+	}
+}
@@ -0,0 +1,119 @@
+package utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An <code>OutputStream</code> that writes a file through memory-mapped windows.
+ *
+ * <p>
+ * Bytes are copied straight into a mapped window of the file; when a window is
+ * full, the next one is mapped after it. Writing therefore needs no system call
+ * per write, only one mapping per window. Closing the stream truncates the file
+ * to the number of bytes actually written.
+ * </p>
+ */
+public class MappedFileOutputStream extends OutputStream {
+
+	/** The default window size, 64 MB. */
+	public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+	/** The channel the file is mapped from. */
+	private FileChannel channel;
+
+	/** The size of every window. */
+	private final int windowSize;
+
+	/** The window currently written to. */
+	private MappedByteBuffer window;
+
+	/** The offset of the current window in the file. */
+	private long windowStart = 0;
+
+	/**
+	 * Creates a stream writing to a file, replacing it if it exists.
+	 *
+	 * @param file       the file to write
+	 * @param windowSize the size of every window
+	 * @throws IOException if an I/O error occurs
+	 */
+	public MappedFileOutputStream(Path file, int windowSize) throws IOException
+	{
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.windowSize = windowSize;
+		this.window = channel.map(FileChannel.MapMode.READ_WRITE, 0, windowSize);
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		ensureOpen();
+
+		if (!window.hasRemaining()) {
+			nextWindow();
+		}
+
+		window.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		ensureOpen();
+
+		while (len > 0) {
+			if (!window.hasRemaining()) {
+				nextWindow();
+			}
+
+			int count = Math.min(len, window.remaining());
+			window.put(b, off, count);
+			off += count;
+			len -= count;
+		}
+	}
+
+	/**
+	 * Checks that the stream has not been closed; the windows of a closed
+	 * stream may lie past the end of the truncated file.
+	 * @throws IOException if the stream is closed
+	 */
+	private void ensureOpen() throws IOException
+	{
+		if (channel == null) {
+			throw new IOException("the stream is not open for writing");
+		}
+	}
+
+	/**
+	 * Maps the window following the current one.
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void nextWindow() throws IOException
+	{
+		windowStart += window.position();
+		window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, windowSize);
+	}
+
+	/**
+	 * Truncates the file to the bytes written and closes it.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (channel != null) {
+			long size = windowStart + window.position();
+			window = null;
+
+			channel.truncate(size);
+			channel.close();
+			channel = null;
+		}
+	}
+}
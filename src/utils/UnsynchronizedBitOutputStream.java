@@ -0,0 +1,59 @@
+package utils;
+
+import java.io.IOException;
+import java.io.FileNotFoundException;
+import java.io.OutputStream;
+
+/**
+ * A <code>BitOutputStream</code> whose write methods are not synchronized.
+ * It produces exactly the same bytes, but avoids taking a lock on every call,
+ * so it must only be used by a single thread at a time.
+ */
+public class UnsynchronizedBitOutputStream extends BitOutputStream {
+
+	/**
+	 * Creates an <code>UnsynchronizedBitOutputStream</code> that writes bits to the specified <code>OutputStream</code>.
+	 * @param out the output stream to write to
+	 * @throws IOException - if an I/O error occurs while writing stream header
+	 */
+	public UnsynchronizedBitOutputStream(OutputStream out) throws IOException
+	{
+		super(out);
+	}
+
+	/**
+	 * Creates an <code>UnsynchronizedBitOutputStream</code> that writes bits to the specified <code>OutputStream</code>,
+	 * optionally without the object stream framing.
+	 * @param out          the output stream to write to
+	 * @param serializable <code>false</code> to write the bits straight to <code>out</code>
+	 * @throws IOException - if an I/O error occurs while writing stream header
+	 */
+	public UnsynchronizedBitOutputStream(OutputStream out, boolean serializable) throws IOException
+	{
+		super(out, serializable);
+	}
+
+	/**
+	 * Creates an <code>UnsynchronizedBitOutputStream</code> that writes bits to the file with the given name.
+	 * @param name the name of the file to write the bits to
+	 * @throws FileNotFoundException if the file cannot be opened for writing
+	 */
+	public UnsynchronizedBitOutputStream(String name) throws IOException
+	{
+		super(name);
+	}
+
+	@Override
+	public void writeBit(int bit) throws IOException
+	{
+		checkBit(bit);
+		putBits(bit, 1);
+	}
+
+	@Override
+	public void writeBits(long bits, int count) throws IOException
+	{
+		checkCount(count);
+		putBits(bits, count);
+	}
+}
@@ -0,0 +1,92 @@
+package huffman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import utils.BitInputStream;
+import utils.BitOutputStream;
+
+public class CodeTableTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCanonical()
+    {
+        int[] lengths = new int[128];
+        lengths['a'] = 3;
+        lengths['d'] = 3;
+        lengths['i'] = 2;
+        lengths['o'] = 2;
+        lengths['s'] = 2;
+
+        CodeTable table = CodeTable.canonical(lengths);
+
+        assertEquals(0b00, table.getCode('i'));
+        assertEquals(0b01, table.getCode('o'));
+        assertEquals(0b10, table.getCode('s'));
+        assertEquals(0b110, table.getCode('a'));
+        assertEquals(0b111, table.getCode('d'));
+        assertFalse(table.contains('b'));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotPrefixCode()
+    {
+        int[] lengths = { 1, 1, 1 };
+
+        CodeTable.canonical(lengths);
+    }
+
+    @Test
+    public void testWriteAndReadLengths() throws IOException
+    {
+        TreeMap<Character, Integer> frequencies = new TreeMap<>();
+        frequencies.put('a', 5);
+        frequencies.put('d', 9);
+        frequencies.put('i', 12);
+        frequencies.put('o', 13);
+        frequencies.put('s', 16);
+        frequencies.put('\u4e2d', 1);
+
+        CodeTable table = new HuffmanTree(frequencies).getCanonicalCodeTable();
+
+        String fileName = folder.getRoot().toPath().resolve("testTable.text").toString();
+        BitOutputStream bitOutputStream = new BitOutputStream(fileName);
+        table.writeTo(bitOutputStream);
+        bitOutputStream.close();
+
+        BitInputStream bitInputStream = new BitInputStream(fileName);
+        CodeTable read = CodeTable.readFrom(bitInputStream);
+        bitInputStream.close();
+
+        assertEquals(table.getSymbolCount(), read.getSymbolCount());
+
+        for (char c : frequencies.keySet())
+        {
+            assertTrue(read.contains(c));
+            assertEquals(table.getCode(c), read.getCode(c));
+            assertEquals(table.getLength(c), read.getLength(c));
+        }
+    }
+
+    @Test
+    public void testSingleSymbol()
+    {
+        TreeMap<Character, Integer> frequencies = new TreeMap<>();
+        frequencies.put('z', 4);
+
+        CodeTable table = new HuffmanTree(frequencies).getCanonicalCodeTable();
+
+        assertEquals(1, table.getLength('z'));
+    }
+}
@@ -0,0 +1,81 @@
+package huffman;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HuffmanCodeLengthsTest {
+
+    private static long cost (long[] frequencies, int[] lengths)
+    {
+        long bits = 0;
+
+        for (int symbol = 0; symbol < frequencies.length; symbol++)
+        {
+            bits += frequencies[symbol] * lengths[symbol];
+        }
+
+        return bits;
+    }
+
+    @Test
+    public void testLengths()
+    {
+        long[] frequencies = new long[128];
+        frequencies['a'] = 5;
+        frequencies['d'] = 9;
+        frequencies['i'] = 12;
+        frequencies['o'] = 13;
+        frequencies['s'] = 16;
+
+        int[] lengths = HuffmanCodeLengths.compute(frequencies);
+
+        assertEquals(3, lengths['a']);
+        assertEquals(3, lengths['d']);
+        assertEquals(2, lengths['i']);
+        assertEquals(2, lengths['o']);
+        assertEquals(2, lengths['s']);
+        assertEquals(0, lengths['b']);
+    }
+
+    @Test
+    public void testMatchesHuffmanTree()
+    {
+        Random random = new Random(15);
+
+        for (int round = 0; round < 50; round++)
+        {
+            long[] frequencies = new long[1 + random.nextInt(300)];
+
+            for (int symbol = 0; symbol < frequencies.length; symbol++)
+            {
+                frequencies[symbol] = random.nextInt(4) == 0 ? 0 : random.nextInt(1 + random.nextInt(10000));
+            }
+
+            CodeTable expected = new HuffmanTree(frequencies).getCanonicalCodeTable();
+            int[] lengths = HuffmanCodeLengths.compute(frequencies);
+            int[] treeLengths = new int[frequencies.length];
+
+            for (int symbol = 0; symbol < expected.size(); symbol++)
+            {
+                treeLengths[symbol] = expected.getLength(symbol);
+            }
+
+            // ties may be broken differently, but both codes are optimal
+            assertEquals(cost(frequencies, treeLengths), cost(frequencies, lengths));
+
+            CodeTable.canonical(lengths);
+            assertArrayEquals(lengths, HuffmanCodeLengths.compute(frequencies.clone()));
+        }
+    }
+
+    @Test
+    public void testEmptyAndSingle()
+    {
+        assertArrayEquals(new int[3], HuffmanCodeLengths.compute(new long[3]));
+        assertArrayEquals(new int[] { 0, 1, 0 }, HuffmanCodeLengths.compute(new long[] { 0, 42, 0 }));
+    }
+}
@@ -0,0 +1,128 @@
+package huffman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import utils.BitInputStream;
+import utils.BitOutputStream;
+
+public class HuffmanDecoderTest {
+
+    private static final String FIXTURE = "./test/resources/war-and-peace.txt";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HuffmanTree tree;
+
+    @Before
+    public void setUp()
+    {
+        TreeMap<Character, Integer> frequencies = new TreeMap<>();
+        frequencies.put('a', 5);
+        frequencies.put('d', 9);
+        frequencies.put('i', 12);
+        frequencies.put('o', 13);
+        frequencies.put('s', 16);
+
+        tree = new HuffmanTree(frequencies);
+    }
+
+    @Test
+    public void testReadSymbol() throws IOException
+    {
+        String fileName = folder.getRoot().toPath().resolve("testDecoder.text").toString();
+        BitOutputStream bitOutputStream = new BitOutputStream(fileName);
+
+        tree.writeCode('s', bitOutputStream);
+        tree.writeCode('a', bitOutputStream);
+        tree.writeCode('i', bitOutputStream);
+        tree.writeCode('d', bitOutputStream);
+        bitOutputStream.close();
+
+        BitInputStream bitInputStream = new BitInputStream(fileName);
+        HuffmanDecoder decoder = tree.getDecoder();
+
+        assertEquals('s', decoder.readSymbol(bitInputStream));
+        assertEquals('a', decoder.readSymbol(bitInputStream));
+        assertEquals('i', decoder.readSymbol(bitInputStream));
+        assertEquals('d', decoder.readSymbol(bitInputStream));
+        assertFalse(bitInputStream.hasNext());
+        bitInputStream.close();
+    }
+
+    @Test
+    public void testMatchesReadCode() throws IOException
+    {
+        TreeMap<Character, Integer> frequencies = new TreeMap<>();
+        StringBuilder text = new StringBuilder();
+
+        FileReader reader = new FileReader(FIXTURE);
+        int curChar = reader.read();
+
+        while (curChar != -1)
+        {
+            char character = (char) curChar;
+
+            frequencies.put(character, frequencies.getOrDefault(character, 0) + 1);
+            text.append(character);
+
+            curChar = reader.read();
+        }
+
+        reader.close();
+
+        HuffmanTree fixtureTree = new HuffmanTree(frequencies);
+        String fileName = folder.getRoot().toPath().resolve("testFixture.text").toString();
+        BitOutputStream bitOutputStream = new BitOutputStream(fileName);
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            fixtureTree.writeCode(text.charAt(i), bitOutputStream);
+        }
+
+        bitOutputStream.close();
+
+        // reference: one tree pointer per bit
+        BitInputStream treeInput = new BitInputStream(fileName);
+        StringBuilder expected = new StringBuilder();
+
+        while (treeInput.hasNext())
+        {
+            expected.append(fixtureTree.readCode(treeInput));
+        }
+
+        treeInput.close();
+
+        // table-driven, several symbols per call
+        BitInputStream tableInput = new BitInputStream(fileName);
+        HuffmanDecoder decoder = fixtureTree.getDecoder();
+        StringBuilder actual = new StringBuilder();
+        int[] symbols = new int[1000];
+        int count = decoder.read(tableInput, symbols, 0, symbols.length);
+
+        while (count > 0)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                actual.append((char) symbols[i]);
+            }
+
+            count = decoder.read(tableInput, symbols, 0, symbols.length);
+        }
+
+        tableInput.close();
+
+        assertEquals(text.toString(), expected.toString());
+        assertEquals(expected.toString(), actual.toString());
+    }
+}
@@ -0,0 +1,124 @@
+package huffman;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LengthLimitedCodeTest {
+
+    private static long cost (long[] frequencies, int[] lengths)
+    {
+        long bits = 0;
+
+        for (int symbol = 0; symbol < frequencies.length; symbol++)
+        {
+            bits += frequencies[symbol] * lengths[symbol];
+        }
+
+        return bits;
+    }
+
+    private static int maxLength (int[] lengths)
+    {
+        int max = 0;
+
+        for (int length : lengths)
+        {
+            max = Math.max(max, length);
+        }
+
+        return max;
+    }
+
+    @Test
+    public void testFibonacci()
+    {
+        long[] frequencies = new long[30];
+        frequencies[0] = 1;
+        frequencies[1] = 1;
+
+        for (int i = 2; i < frequencies.length; i++)
+        {
+            frequencies[i] = frequencies[i - 1] + frequencies[i - 2];
+        }
+
+        HuffmanTree tree = new HuffmanTree(frequencies);
+        assertEquals(29, maxLength(lengthsOf(tree.getCanonicalCodeTable())));
+
+        for (int maxLength : new int[] { 5, 11, 12, 15 })
+        {
+            int[] lengths = LengthLimitedCode.lengths(frequencies, maxLength);
+
+            assertEquals(maxLength, maxLength(lengths));
+            assertTrue(cost(frequencies, lengths) >= cost(frequencies, lengthsOf(tree.getCanonicalCodeTable())));
+
+            // a complete prefix code, accepted by the canonical construction
+            CodeTable.canonical(lengths);
+            assertEquals(maxLength, maxLength(lengthsOf(tree.getCanonicalCodeTable(maxLength))));
+        }
+    }
+
+    @Test
+    public void testMatchesHuffmanWhenUnconstrained()
+    {
+        long[] frequencies = new long[256];
+        Random random = new Random(7);
+
+        for (int symbol = 0; symbol < frequencies.length; symbol++)
+        {
+            frequencies[symbol] = random.nextInt(1000);
+        }
+
+        HuffmanTree tree = new HuffmanTree(frequencies);
+        int[] huffman = lengthsOf(tree.getCanonicalCodeTable());
+        int[] limited = LengthLimitedCode.lengths(frequencies, CodeTable.MAX_LENGTH);
+
+        assertEquals(cost(frequencies, huffman), cost(frequencies, limited));
+    }
+
+    @Test
+    public void testSingleSymbolAndFullAlphabet()
+    {
+        long[] frequencies = new long[256];
+        frequencies[65] = 10;
+
+        assertEquals(1, LengthLimitedCode.lengths(frequencies, 8)[65]);
+
+        for (int symbol = 0; symbol < frequencies.length; symbol++)
+        {
+            frequencies[symbol] = symbol + 1;
+        }
+
+        int[] lengths = LengthLimitedCode.lengths(frequencies, 8);
+
+        for (int length : lengths)
+        {
+            assertEquals(8, length);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooShort()
+    {
+        long[] frequencies = new long[256];
+        Arrays.fill(frequencies, 1);
+
+        LengthLimitedCode.lengths(frequencies, 7);
+    }
+
+    private static int[] lengthsOf (CodeTable table)
+    {
+        int[] lengths = new int[table.size()];
+
+        for (int symbol = 0; symbol < lengths.length; symbol++)
+        {
+            lengths[symbol] = table.getLength(symbol);
+        }
+
+        return lengths;
+    }
+}
@@ -0,0 +1,115 @@
+package huffmanzip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testArchive() throws Exception
+    {
+        testArchive(false);
+    }
+
+    @Test
+    public void testSharedTable() throws Exception
+    {
+        testArchive(true);
+    }
+
+    private void testArchive(boolean sharedTable) throws Exception
+    {
+        Random random = new Random(19);
+        Path root = folder.getRoot().toPath().resolve("testArchive");
+        Files.createDirectories(root.resolve("sub"));
+
+        byte[][] contents = new byte[50][];
+        String[] names = new String[contents.length];
+
+        for (int i = 0; i < contents.length; i++)
+        {
+            // small files, one of them empty and the last spanning several blocks
+            contents[i] = new byte[i == contents.length - 1 ? 5000 : random.nextInt(i == 3 ? 1 : 800)];
+
+            for (int j = 0; j < contents[i].length; j++)
+            {
+                contents[i][j] = (byte) ('a' + random.nextInt(1 + j % 26));
+            }
+
+            names[i] = "testArchive/" + (i % 2 == 0 ? "" : "sub/") + String.format("f%02d", i);
+            Files.write(root.getParent().resolve(names[i]), contents[i]);
+        }
+
+        Options options = new Options();
+        options.blockSize = 1024;
+        options.threads = 3;
+        options.sharedTable = sharedTable;
+        options.paths.add(root.toString());
+
+        String archiveName = folder.getRoot().toPath().resolve("archive.hz").toString();
+        CompressionStats stats = HuffmanZip.archive(archiveName, options);
+
+        try (Archive archive = Archive.open(Paths.get(archiveName)))
+        {
+            List<Archive.Entry> entries = archive.getEntries();
+            assertEquals(contents.length, entries.size());
+
+            long total = 0;
+
+            for (int i = 0; i < contents.length; i++)
+            {
+                Archive.Entry entry = archive.getEntry(names[i]);
+                assertEquals(contents[i].length, entry.getSize());
+                total += entry.getSize();
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                archive.extract(entry, out);
+                assertArrayEquals(names[i], contents[i], out.toByteArray());
+            }
+
+            String[] sorted = names.clone();
+            Arrays.sort(sorted);
+
+            for (int i = 0; i < sorted.length; i++)
+            {
+                assertEquals(sorted[i], entries.get(i).getName());
+            }
+
+            assertEquals(total, stats.getInputBytes());
+            assertNull(archive.getEntry("testArchive/missing"));
+        }
+
+        // -decode refuses an archive before creating its output file
+        try
+        {
+            HuffmanZip.decode(archiveName);
+            fail("an archive was decoded as a single file");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage().contains("-unarchive"));
+        }
+
+        assertFalse(Files.exists(Paths.get(archiveName.replace(".hz", ""))));
+    }
+}
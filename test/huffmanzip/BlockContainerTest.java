@@ -0,0 +1,442 @@
+package huffmanzip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import huffman.HuffmanTree;
+
+public class BlockContainerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Options options (int blockSize, int threads, int syncInterval)
+    {
+        Options options = new Options();
+        options.blockSize = blockSize;
+        options.threads = threads;
+        options.syncInterval = syncInterval;
+
+        return options;
+    }
+
+    private static byte[] roundTrip (byte[] data, int blockSize, int threads, boolean shared) throws IOException
+    {
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        BlockCompressor.compress(new ByteArrayInputStream(data), container, options(blockSize, threads, blockSize / 4),
+                shared ? new HuffmanTree(BlockCodec.countBytes(ByteBuffer.wrap(data))).getCanonicalCodeTable() : null);
+
+        InputStream in = new ByteArrayInputStream(container.toByteArray());
+        assertEquals(HzFormat.VERSION_BLOCKS, HzFormat.readVersion(in));
+
+        BlockReader reader = new BlockReader(in);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+
+        while (reader.next())
+        {
+            decoded.write(reader.decode());
+        }
+
+        return decoded.toByteArray();
+    }
+
+    @Test
+    public void testFixture() throws IOException
+    {
+        byte[] data = Files.readAllBytes(Paths.get("./test/resources/war-and-peace.txt"));
+
+        assertArrayEquals(data, roundTrip(data, 1 << 20, 4, false));
+        assertArrayEquals(data, roundTrip(data, 1 << 18, 2, true));
+    }
+
+    @Test
+    public void testStoredBlocks() throws IOException
+    {
+        byte[] data = new byte[100000];
+        new Random(27).nextBytes(data);
+
+        assertArrayEquals(data, roundTrip(data, 4096, 3, false));
+    }
+
+    @Test
+    public void testEmptyAndTiny() throws IOException
+    {
+        assertArrayEquals(new byte[0], roundTrip(new byte[0], 4096, 2, false));
+        assertArrayEquals(new byte[] { 7 }, roundTrip(new byte[] { 7 }, 4096, 2, false));
+        assertArrayEquals(new byte[4096], roundTrip(new byte[4096], 4096, 1, false));
+    }
+
+    @Test
+    public void testIndexAndParallelDecode() throws IOException
+    {
+        byte[] data = Files.readAllBytes(Paths.get("./test/resources/war-and-peace.txt"));
+        Path source = folder.getRoot().toPath().resolve("testBlocks.hz");
+        Path target = folder.getRoot().toPath().resolve("testBlocks.txt");
+
+        FileOutputStream out = new FileOutputStream(source.toFile());
+        BlockCompressor.compress(new ByteArrayInputStream(data), out, options(100000, 2, HzFormat.DEFAULT_SYNC_INTERVAL), null);
+        out.close();
+
+        FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+        BlockIndex index = BlockIndex.readFrom(channel, 100000, HzFormat.DEFAULT_SYNC_INTERVAL);
+        channel.close();
+
+        assertEquals((data.length + 99999) / 100000, index.size());
+        assertEquals(data.length, index.getUncompressedSize());
+        assertEquals(300000, index.getUncompressedOffset(3));
+
+        BlockDecompressor.decompress(source, target, 3, false, null);
+        assertArrayEquals(data, Files.readAllBytes(target));
+
+        BlockDecompressor.decompress(source, target, 2, true, null);
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testIndexLengthBeyondBlockSize() throws IOException
+    {
+        byte[] data = new byte[300000];
+        new Random(9).nextBytes(data);
+        Path source = folder.getRoot().toPath().resolve("testBlocks.hz");
+        Path target = folder.getRoot().toPath().resolve("testBlocks.txt");
+
+        FileOutputStream out = new FileOutputStream(source.toFile());
+        BlockCompressor.compress(new ByteArrayInputStream(data), out, options(100000, 2, 0), null);
+        out.close();
+
+        // give the last block a length far beyond the block size
+        FileChannel channel = FileChannel.open(source, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long offset = BlockIndex.readFully(channel, channel.size() - BlockIndex.TAIL_SIZE, 8).getLong();
+        channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), offset + 4 + 2 * BlockIndex.ENTRY_SIZE + 16);
+        channel.close();
+
+        try
+        {
+            BlockDecompressor.decompress(source, target, 2, false, null);
+            fail("a block longer than the block size was accepted");
+        }
+        catch (IOException e)
+        {
+            assertEquals("invalid block index entry 2", e.getMessage());
+        }
+
+        assertTrue(Files.notExists(target));
+    }
+
+    @Test
+    public void testStreamDecompress() throws IOException
+    {
+        byte[] data = Files.readAllBytes(Paths.get("./test/resources/war-and-peace.txt"));
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        BlockCompressor.compress(new ByteArrayInputStream(data), container, options(50000, 2, HzFormat.DEFAULT_SYNC_INTERVAL), null);
+
+        InputStream in = new ByteArrayInputStream(container.toByteArray());
+        assertEquals(HzFormat.VERSION_BLOCKS, HzFormat.readVersion(in));
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        BlockDecompressor.decompress(in, decoded, 3, null);
+
+        assertArrayEquals(data, decoded.toByteArray());
+    }
+
+    @Test
+    public void testExtract() throws IOException
+    {
+        byte[] text = Files.readAllBytes(Paths.get("./test/resources/war-and-peace.txt"));
+        byte[] random = new byte[300000];
+        new Random(13).nextBytes(random);
+
+        for (byte[] data : new byte[][] { text, random })
+        {
+            for (int syncInterval : new int[] { 0, 1000 })
+            {
+                Path source = folder.getRoot().toPath().resolve("testExtract.hz");
+
+                FileOutputStream out = new FileOutputStream(source.toFile());
+                BlockCompressor.compress(new ByteArrayInputStream(data), out, options(100000, 2, syncInterval), null);
+                out.close();
+
+                long[][] ranges = { { 0, 10 }, { 999, 2 }, { 1000, 1000 }, { 99990, 20 }, { 123457, 250000 },
+                                    { data.length - 5, 100 }, { data.length, 10 }, { 5000, 0 } };
+
+                for (long[] range : ranges)
+                {
+                    ByteArrayOutputStream extracted = new ByteArrayOutputStream();
+                    BlockDecompressor.extract(source, range[0], range[1], extracted, null);
+
+                    int from = (int) Math.min(range[0], data.length);
+                    int to   = (int) Math.min(range[0] + range[1], data.length);
+
+                    assertArrayEquals(Arrays.copyOfRange(data, from, to), extracted.toByteArray());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMaxLength() throws IOException
+    {
+        // Fibonacci frequencies give the deepest possible Huffman tree
+        ByteArrayOutputStream skewed = new ByteArrayOutputStream();
+        int a = 1, b = 1;
+
+        for (int symbol = 0; symbol < 20; symbol++)
+        {
+            for (int i = 0; i < a; i++)
+            {
+                skewed.write(symbol);
+            }
+
+            int c = a + b;
+            a = b;
+            b = c;
+        }
+
+        byte[] data = skewed.toByteArray();
+        Options options = options(1 << 16, 1, 0);
+        options.maxLength = 11;
+
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        CompressionStats stats = BlockCompressor.compress(new ByteArrayInputStream(data), container, options, null);
+
+        assertTrue(stats.limitPenaltyBits.sum() > 0);
+
+        InputStream in = new ByteArrayInputStream(container.toByteArray());
+        HzFormat.readVersion(in);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        BlockDecompressor.decompress(in, decoded, 1, null);
+
+        assertArrayEquals(data, decoded.toByteArray());
+    }
+
+    @Test
+    public void testOrder1() throws IOException
+    {
+        byte[] data = Files.readAllBytes(Paths.get("./test/resources/war-and-peace.txt"));
+        Path source = folder.getRoot().toPath().resolve("testExtract.hz");
+        Options options = options(1 << 20, 2, 1000);
+
+        ByteArrayOutputStream order0 = new ByteArrayOutputStream();
+        BlockCompressor.compress(new ByteArrayInputStream(data), order0, options, null);
+
+        options.order1 = true;
+        FileOutputStream out = new FileOutputStream(source.toFile());
+        BlockCompressor.compress(new ByteArrayInputStream(data), out, options, null);
+        out.close();
+
+        assertTrue(Files.size(source) < order0.size());
+
+        InputStream in = new ByteArrayInputStream(Files.readAllBytes(source));
+        HzFormat.readVersion(in);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        BlockDecompressor.decompress(in, decoded, 2, null);
+
+        assertArrayEquals(data, decoded.toByteArray());
+
+        // ranges starting between sync points, and across a block boundary
+        long[][] ranges = { { 0, 10 }, { 999, 2 }, { 1500, 3000 }, { (1 << 20) - 7, 20 } };
+
+        for (long[] range : ranges)
+        {
+            ByteArrayOutputStream extracted = new ByteArrayOutputStream();
+            BlockDecompressor.extract(source, range[0], range[1], extracted, null);
+
+            assertArrayEquals(Arrays.copyOfRange(data, (int) range[0], (int) (range[0] + range[1])), extracted.toByteArray());
+        }
+    }
+
+    @Test
+    public void testLz77() throws IOException
+    {
+        byte[] text = Files.readAllBytes(Paths.get("./test/resources/war-and-peace.txt"));
+        byte[] random = new byte[50000];
+        new Random(23).nextBytes(random);
+
+        // long runs need overlapping copies, and the same random bytes twice need a long distance
+        byte[] repeated = new byte[200000];
+        System.arraycopy(random, 0, repeated, 1000, random.length);
+        System.arraycopy(random, 0, repeated, 120000, random.length);
+
+        for (int value = 0; value < Lz77.MAX_WINDOW; value = value * 3 / 2 + 1)
+        {
+            int code = Lz77.code(value);
+            assertTrue(value >= Lz77.base(code) && value < Lz77.base(code) + (1 << Lz77.extraBits(code)));
+        }
+
+        for (byte[] data : new byte[][] { text, repeated })
+        {
+            for (int syncInterval : new int[] { 0, 1000 })
+            {
+                Path source = folder.getRoot().toPath().resolve("testExtract.hz");
+                Options options = options(1 << 20, 2, syncInterval);
+                options.lzLevel = syncInterval == 0 ? Lz77.MAX_LEVEL : 1;
+                options.lzWindow = 1 << 20;
+
+                FileOutputStream out = new FileOutputStream(source.toFile());
+                BlockCompressor.compress(new ByteArrayInputStream(data), out, options, null);
+                out.close();
+
+                // sync points cut the window short
+                assertTrue(Files.size(source) < data.length / (syncInterval == 0 ? 2 : 1));
+
+                InputStream in = new ByteArrayInputStream(Files.readAllBytes(source));
+                HzFormat.readVersion(in);
+                ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+                BlockDecompressor.decompress(in, decoded, 2, null);
+
+                assertArrayEquals(data, decoded.toByteArray());
+
+                long[][] ranges = { { 0, 10 }, { 999, 2 }, { 1500, 3000 }, { 121500, 20 } };
+
+                for (long[] range : ranges)
+                {
+                    ByteArrayOutputStream extracted = new ByteArrayOutputStream();
+                    BlockDecompressor.extract(source, range[0], range[1], extracted, null);
+
+                    assertArrayEquals(Arrays.copyOfRange(data, (int) range[0], (int) (range[0] + range[1])),
+                            extracted.toByteArray());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLz77MaxDistance() throws IOException
+    {
+        // the only match is exactly MAX_WINDOW bytes back
+        byte[] data = new byte[Lz77.MAX_WINDOW + 4096];
+        new Random(4).nextBytes(data);
+        System.arraycopy(data, 0, data, Lz77.MAX_WINDOW, 4096);
+
+        Options options = options(1 << 23, 1, 0);
+        options.lzLevel = Lz77.MAX_LEVEL;
+        options.lzWindow = Lz77.MAX_WINDOW;
+
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        BlockCompressor.compress(new ByteArrayInputStream(data), container, options, null);
+
+        InputStream in = new ByteArrayInputStream(container.toByteArray());
+        HzFormat.readVersion(in);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        BlockDecompressor.decompress(in, decoded, 1, null);
+
+        assertArrayEquals(data, decoded.toByteArray());
+    }
+
+    @Test
+    public void testBurrowsWheeler() throws IOException
+    {
+        byte[] text = Files.readAllBytes(Paths.get("./test/resources/war-and-peace.txt"));
+        byte[] runs = new byte[100000];
+        Arrays.fill(runs, 50000, 100000, (byte) 'a');
+
+        // the suffixes of "banana" and the sentinel, in sorted order
+        assertArrayEquals(new int[] { 6, 5, 3, 1, 0, 4, 2 }, BurrowsWheeler.suffixArray("banana".getBytes()));
+
+        for (byte[] data : new byte[][] { text, runs, new byte[] { 'x' } })
+        {
+            Path source = folder.getRoot().toPath().resolve("testExtract.hz");
+            Options options = options(1 << 20, 2, 0);
+            options.bwt = true;
+
+            FileOutputStream out = new FileOutputStream(source.toFile());
+            BlockCompressor.compress(new ByteArrayInputStream(data), out, options, null);
+            out.close();
+
+            InputStream in = new ByteArrayInputStream(Files.readAllBytes(source));
+            HzFormat.readVersion(in);
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            BlockDecompressor.decompress(in, decoded, 2, null);
+
+            assertArrayEquals(data, decoded.toByteArray());
+
+            ByteArrayOutputStream extracted = new ByteArrayOutputStream();
+            BlockDecompressor.extract(source, data.length / 2, 1000, extracted, null);
+
+            assertArrayEquals(Arrays.copyOfRange(data, data.length / 2, Math.min(data.length / 2 + 1000, data.length)),
+                    extracted.toByteArray());
+        }
+
+        ByteArrayOutputStream lz = new ByteArrayOutputStream();
+        Options options = options(1 << 20, 2, 0);
+        options.lzLevel = Lz77.MAX_LEVEL;
+        BlockCompressor.compress(new ByteArrayInputStream(text), lz, options, null);
+
+        ByteArrayOutputStream bwt = new ByteArrayOutputStream();
+        options.lzLevel = 0;
+        options.bwt = true;
+        BlockCompressor.compress(new ByteArrayInputStream(text), bwt, options, null);
+
+        assertTrue(bwt.size() < lz.size());
+
+        options.syncInterval = 4096;
+
+        try
+        {
+            BlockCodec.encode(ByteBuffer.wrap(text), null, options,
+                    new long[HzFormat.syncPointCount(text.length, 4096)], null);
+            fail("a Burrows-Wheeler block was given sync points");
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage().contains("no sync points"));
+        }
+    }
+
+    @Test
+    public void testChecksums() throws IOException
+    {
+        byte[] text = Files.readAllBytes(Paths.get("./test/resources/war-and-peace.txt"));
+        byte[] random = new byte[300000];
+        new Random(25).nextBytes(random);
+
+        for (byte[] data : new byte[][] { text, random })
+        {
+            Path source = folder.getRoot().toPath().resolve("testExtract.hz");
+
+            FileOutputStream out = new FileOutputStream(source.toFile());
+            BlockCompressor.compress(new ByteArrayInputStream(data), out, options(100000, 2, 1000), null);
+            out.close();
+
+            assertEquals((data.length + 99999) / 100000, BlockDecompressor.verify(source, 2, null, null));
+
+            // flip one bit in the middle of the third block
+            FileChannel channel = FileChannel.open(source, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            BlockIndex index = BlockIndex.readFrom(channel, 100000, 1000);
+            long position = index.getBodyOffset(2) + index.getBodyLength(2) / 2;
+            ByteBuffer b = BlockIndex.readFully(channel, position, 1);
+            channel.write(ByteBuffer.wrap(new byte[] { (byte) (b.get(0) ^ 0x10) }), position);
+            channel.close();
+
+            try
+            {
+                BlockDecompressor.verify(source, 2, null, null);
+                fail("a corrupt block was not found");
+            }
+            catch (IOException e)
+            {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("block 2 "));
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package huffmanzip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompressionStatsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEntropy()
+    {
+        assertEquals(2.0 * 8, CompressionStats.entropyBits(new long[] { 2, 2, 2, 2 }), 1e-9);
+        assertEquals(0.0, CompressionStats.entropyBits(new long[] { 0, 5, 0 }), 1e-9);
+    }
+
+    @Test
+    public void testEncodeStats() throws Exception
+    {
+        Random random = new Random(18);
+        byte[] data = new byte[300000];
+
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) ('a' + Math.min(25, (int) Math.abs(random.nextGaussian() * 5)));
+        }
+
+        Path source = folder.getRoot().toPath().resolve("testStats.bin");
+        Files.write(source, data);
+
+        Options options = new Options();
+        options.blockSize = 100000;
+        options.stats = true;
+        CompressionStats stats = HuffmanZip.encode(source.toString(), options);
+
+        assertEquals(3, stats.getBlocks());
+        assertEquals(data.length, stats.getInputBytes());
+        assertEquals(new File(source + ".hz").length(), stats.getOutputBytes());
+        assertEquals((double) data.length / stats.getOutputBytes(), stats.getRatio(), 1e-9);
+
+        // a Huffman code is within one bit per symbol of the entropy
+        assertTrue(stats.getAverageCodeLength() >= stats.getEntropy());
+        assertTrue(stats.getAverageCodeLength() < stats.getEntropy() + 1);
+
+        assertTrue(stats.getWallTime() > 0);
+        assertTrue(stats.getWallTime(CompressionStats.Phase.ENCODE) > 0);
+        assertTrue(stats.getPeakHeap() > 0);
+    }
+}
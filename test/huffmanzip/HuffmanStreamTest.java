@@ -0,0 +1,112 @@
+package huffmanzip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HuffmanStreamTest {
+
+    private static final String FIXTURE = "./test/resources/war-and-peace.txt";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        byte[] data = Files.readAllBytes(Paths.get(FIXTURE));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        OutputStream out = new HuffmanOutputStream(compressed, 1 << 16);
+
+        // mixed single-byte and array writes across block boundaries
+        out.write(data[0]);
+        out.write(data, 1, 100000);
+        out.flush();
+        out.write(data, 100001, data.length - 100001);
+        out.close();
+
+        assertTrue(compressed.size() < data.length);
+
+        // trailing bytes after the container are left in the underlying stream
+        compressed.write(42);
+        InputStream source = new ByteArrayInputStream(compressed.toByteArray());
+        InputStream in = new HuffmanInputStream(source);
+
+        assertEquals(data[0] & 0xFF, in.read());
+        assertArrayEquals(Arrays.copyOfRange(data, 1, data.length), in.readAllBytes());
+        assertEquals(-1, in.read());
+        assertEquals(42, source.read());
+        in.close();
+    }
+
+    @Test
+    public void testDecodedByHuffmanZip() throws Exception
+    {
+        byte[] data = Files.readAllBytes(Paths.get(FIXTURE));
+        Path source = folder.getRoot().toPath().resolve("testStream.hz");
+        Path target = folder.getRoot().toPath().resolve("testStream.txt");
+
+        OutputStream out = new HuffmanOutputStream(Files.newOutputStream(source), 100000);
+        out.write(data);
+        out.close();
+
+        // the stream keeps no index, so the file is read sequentially
+        BlockDecompressor.decompress(source, target, 2, false, null);
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertEquals((data.length + 99999) / 100000, BlockDecompressor.verify(source, 2, null, null));
+
+        ByteArrayOutputStream extracted = new ByteArrayOutputStream();
+        BlockDecompressor.extract(source, 99990, 200020, extracted, null);
+        assertArrayEquals(Arrays.copyOfRange(data, 99990, 300010), extracted.toByteArray());
+    }
+
+    @Test
+    public void testChannels() throws IOException
+    {
+        byte[] data = Files.readAllBytes(Paths.get(FIXTURE));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        WritableByteChannel out = HuffmanOutputStream.newChannel(Channels.newChannel(compressed));
+        out.write(ByteBuffer.wrap(data));
+        out.close();
+
+        ReadableByteChannel in = HuffmanInputStream.newChannel(
+                Channels.newChannel(new ByteArrayInputStream(compressed.toByteArray())));
+        ByteBuffer decoded = ByteBuffer.allocate(data.length + 1);
+
+        while (in.read(decoded) >= 0)
+        {
+        }
+
+        in.close();
+        decoded.flip();
+
+        assertEquals(data.length, decoded.remaining());
+        assertEquals(ByteBuffer.wrap(data), decoded);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAContainer() throws IOException
+    {
+        new HuffmanInputStream(new ByteArrayInputStream(new byte[] { 'H', 'Z', 2, 1 }));
+    }
+}
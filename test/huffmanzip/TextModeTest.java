@@ -0,0 +1,93 @@
+package huffmanzip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TextModeTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCodePoints() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 20000; i++)
+        {
+            text.appendCodePoint(0x4E00 + (i * 7919) % 20000);
+            text.appendCodePoint(i % 3 == 0 ? 0x1F600 + i % 50 : 'a' + i % 26);
+        }
+
+        // written and read back through the platform charset, as -text does
+        Path source = folder.getRoot().toPath().resolve("testText.txt");
+        Files.write(source, text.toString().getBytes(Charset.defaultCharset()));
+        byte[] expected = Files.readAllBytes(source);
+
+        HuffmanZip.encodeText(source.toString());
+
+        InputStream in = new BufferedInputStream(new FileInputStream(source + ".hz"));
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        HuffmanZip.decodeStream(in, decoded, new Options());
+        in.close();
+
+        assertEquals(new String(expected, Charset.defaultCharset()), new String(decoded.toByteArray(), Charset.defaultCharset()));
+    }
+
+    @Test
+    public void testSampledCodePoints() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 400000; i++)
+        {
+            text.append((char) ('a' + i % 26));
+
+            // symbols far from the samples at the start and end, which need escapes
+            if (i == 200000)
+            {
+                text.append("#~").appendCodePoint(0x1F600);
+            }
+        }
+
+        Path source = folder.getRoot().toPath().resolve("testText.txt");
+        Files.write(source, text.toString().getBytes(Charset.defaultCharset()));
+        byte[] expected = Files.readAllBytes(source);
+
+        Options options = new Options();
+        options.text = true;
+        options.sampleFraction = 0.1;
+        CompressionStats stats = HuffmanZip.encode(source.toString(), options);
+
+        InputStream in = new BufferedInputStream(new FileInputStream(source + ".hz"));
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        HuffmanZip.decodeStream(in, decoded, new Options());
+        in.close();
+
+        assertEquals(new String(expected, Charset.defaultCharset()), new String(decoded.toByteArray(), Charset.defaultCharset()));
+        assertTrue(stats.samplePenaltyBits.sum() > 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsupportedAlphabet() throws Exception
+    {
+        Path source = folder.getRoot().toPath().resolve("testText.txt.hz");
+        // alphabet 1 held raw bytes, which are now written as blocks
+        Files.write(source, new byte[] { 'H', 'Z', 2, 1, 'g', 'a', 'r', 'b', 'a', 'g', 'e' });
+
+        HuffmanZip.test(source.toString(), new Options());
+    }
+}
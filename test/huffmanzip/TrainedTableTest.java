@@ -0,0 +1,118 @@
+package huffmanzip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TrainedTableTest {
+
+    private static byte[] message(Random random, int length)
+    {
+        byte[] data = new byte[length];
+
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) ('a' + random.nextInt(1 + i % 20));
+        }
+
+        return data;
+    }
+
+    private static TrainedTable train(Random random)
+    {
+        long[] frequencies = new long[256];
+
+        for (int k = 0; k < 20; k++)
+        {
+            for (byte b : message(random, 2000))
+            {
+                frequencies[b & 0xFF]++;
+            }
+        }
+
+        return TrainedTable.fromFrequencies(frequencies, 0);
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception
+    {
+        TrainedTable table = train(new Random(20));
+
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        table.writeTo(saved);
+        TrainedTable loaded = TrainedTable.readFrom(new ByteArrayInputStream(saved.toByteArray()));
+
+        assertEquals(table.getId(), loaded.getId());
+
+        // bytes the samples never contain still get a code
+        assertTrue(loaded.getCodeTable().contains(0));
+        assertTrue(loaded.getCodeTable().contains(255));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        Random random = new Random(21);
+        TrainedTable table = train(random);
+        byte[] data = message(random, 1500);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        try (OutputStream out = new HuffmanOutputStream(compressed, table))
+        {
+            out.write(data);
+        }
+
+        ByteArrayOutputStream own = new ByteArrayOutputStream();
+
+        try (OutputStream out = new HuffmanOutputStream(own))
+        {
+            out.write(data);
+        }
+
+        assertTrue(compressed.size() < own.size());
+
+        try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(compressed.toByteArray()), table))
+        {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testWrongTable() throws Exception
+    {
+        Random random = new Random(22);
+        TrainedTable table = train(random);
+        TrainedTable other = train(random);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        try (OutputStream out = new HuffmanOutputStream(compressed, table))
+        {
+            out.write(message(random, 100));
+        }
+
+        for (TrainedTable given : new TrainedTable[] { null, other })
+        {
+            try
+            {
+                new HuffmanInputStream(new ByteArrayInputStream(compressed.toByteArray()), given).read();
+                fail("decoded without the right table");
+            }
+            catch (IOException e)
+            {
+                assertTrue(e.getMessage(), e.getMessage().contains(String.format("%08x", table.getId())));
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BitInputStreamTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPeekSkipRead() throws IOException
+    {
+        // 0xB6 0x05, then 3 significant bits (101) in the last byte
+        ByteBuffer bytes = ByteBuffer.wrap(new byte[] { (byte) 0xB6, 0x05, 0x05, 3 });
+        BitInputStream bitInput = new BitInputStream(bytes);
+
+        assertEquals(19, bitInput.remainingBits());
+        assertEquals(0b1011, bitInput.peekBits(4));
+        assertEquals(0b1011, bitInput.readBits(4));
+        bitInput.skipBits(4);
+        assertEquals(11, bitInput.remainingBits());
+        assertEquals(0x05, bitInput.readBits(8));
+        assertEquals(1, bitInput.readBit());
+        assertEquals(0b01, bitInput.readBits(2));
+        assertEquals(0, bitInput.remainingBits());
+        assertFalse(bitInput.hasNext());
+    }
+
+    @Test
+    public void testPeekPastEnd() throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.wrap(new byte[] { 0x03, 2 });
+        BitInputStream bitInput = new BitInputStream(bytes);
+
+        assertEquals(2, bitInput.ensureBits(10));
+        assertEquals(0b1100000000, bitInput.peekBits(10));
+        assertTrue(bitInput.hasNext());
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException
+    {
+        BitInputStream bitInput = new BitInputStream(ByteBuffer.allocate(0));
+
+        assertFalse(bitInput.hasNext());
+        assertEquals(0, bitInput.remainingBits());
+    }
+
+    @Test(expected = IOException.class)
+    public void testSkipPastEnd() throws IOException
+    {
+        BitInputStream bitInput = new BitInputStream(ByteBuffer.wrap(new byte[] { 0x7F, 8 }));
+
+        bitInput.skipBits(9);
+    }
+
+    @Test
+    public void testInvalidLastCount() throws IOException
+    {
+        byte[] bytes = { 0x12, 0x34, 0x05, (byte) 200 };
+        BitInputStream[] inputs = { new BitInputStream(ByteBuffer.wrap(bytes)),
+                                    new BitInputStream(new ByteArrayInputStream(bytes), false) };
+
+        for (BitInputStream bitInput : inputs)
+        {
+            try
+            {
+                bitInput.readBits(20);
+                fail("a count of 200 bits in the last byte was accepted");
+            }
+            catch (IOException e)
+            {
+                assertTrue(e.getMessage().contains("200"));
+            }
+        }
+    }
+
+    @Test
+    public void testLongStream() throws IOException
+    {
+        String fileName = folder.getRoot().toPath().resolve("testLong.text").toString();
+        BitOutputStream bitOutput = new UnsynchronizedBitOutputStream(fileName);
+
+        for (int i = 0; i < 100000; i++)
+        {
+            bitOutput.writeBits(i, 17);
+        }
+
+        bitOutput.close();
+
+        BitInputStream bitInput = new BitInputStream(fileName);
+
+        for (int i = 0; i < 100000; i++)
+        {
+            assertEquals(i, bitInput.readBits(17));
+        }
+
+        assertFalse(bitInput.hasNext());
+        assertEquals(0, bitInput.remainingBits());
+        bitInput.close();
+    }
+}
@@ -0,0 +1,101 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BitOutputStreamTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteBitsMatchesWriteBit() throws IOException
+    {
+        Random random = new Random(27);
+        long[] values = new long[5000];
+        int[] counts = new int[values.length];
+
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = random.nextLong();
+            counts[i] = random.nextInt(65);
+        }
+
+        String bitFile = folder.getRoot().toPath().resolve("testWriteBit.text").toString();
+        BitOutputStream bitOutput = new BitOutputStream(bitFile);
+
+        for (int i = 0; i < values.length; i++)
+        {
+            for (int b = counts[i] - 1; b >= 0; b--)
+            {
+                bitOutput.writeBit((int) (values[i] >>> b) & 1);
+            }
+        }
+
+        bitOutput.close();
+
+        String bitsFile = folder.getRoot().toPath().resolve("testWriteBits.text").toString();
+        BitOutputStream bitsOutput = new UnsynchronizedBitOutputStream(bitsFile);
+
+        for (int i = 0; i < values.length; i++)
+        {
+            bitsOutput.writeBits(values[i], counts[i]);
+        }
+
+        bitsOutput.close();
+
+        BitInputStream expected = new BitInputStream(bitFile);
+        BitInputStream actual = new BitInputStream(bitsFile);
+
+        while (expected.hasNext())
+        {
+            assertEquals(expected.readBit(), actual.readBit());
+        }
+
+        assertFalse(actual.hasNext());
+        expected.close();
+        actual.close();
+    }
+
+    @Test
+    public void testPartialLastByte() throws IOException
+    {
+        String fileName = folder.getRoot().toPath().resolve("testPartial.text").toString();
+        BitOutputStream bitOutput = new UnsynchronizedBitOutputStream(fileName);
+
+        bitOutput.writeBits(0b101, 3);
+        bitOutput.writeBits(0xABCDL, 16);
+        bitOutput.close();
+
+        BitInputStream bitInput = new BitInputStream(fileName);
+
+        assertEquals(0b101, bitInput.peekBits(3));
+        bitInput.skipBits(3);
+        assertEquals(0xABCDL, bitInput.peekBits(16));
+        bitInput.skipBits(16);
+        assertFalse(bitInput.hasNext());
+        bitInput.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCount() throws IOException
+    {
+        BitOutputStream bitOutput = new BitOutputStream(folder.getRoot().toPath().resolve("testInvalid.text").toString());
+
+        try
+        {
+            bitOutput.writeBits(0, 65);
+        }
+        finally
+        {
+            bitOutput.close();
+        }
+    }
+}
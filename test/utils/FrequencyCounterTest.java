@@ -0,0 +1,90 @@
+package utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FrequencyCounterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParallelMatchesSequential() throws IOException
+    {
+        String fileName = folder.getRoot().toPath().resolve("testCounter.bin").toString();
+        byte[] bytes = new byte[20 << 20];
+        new Random(27).nextBytes(bytes);
+
+        FileOutputStream out = new FileOutputStream(fileName);
+        out.write(bytes);
+        out.close();
+
+        long[] expected = new long[256];
+
+        for (byte b : bytes)
+        {
+            expected[b & 0xFF]++;
+        }
+
+        assertArrayEquals(expected, FrequencyCounter.countBytes(Paths.get(fileName), 1));
+        assertArrayEquals(expected, FrequencyCounter.countBytes(Paths.get(fileName), 4));
+    }
+
+    @Test
+    public void testSampleBytes() throws IOException
+    {
+        String fileName = folder.getRoot().toPath().resolve("testCounter.bin").toString();
+        byte[] bytes = new byte[20 << 20];
+        new Random(28).nextBytes(bytes);
+
+        FileOutputStream out = new FileOutputStream(fileName);
+        out.write(bytes);
+        out.close();
+
+        int samples = FrequencyCounter.sampleCount(bytes.length, 0.2);
+        long[] expected = new long[256];
+
+        for (int k = 0; k < samples; k++)
+        {
+            long position = FrequencyCounter.samplePosition(bytes.length, samples, k);
+
+            for (long i = position; i < position + FrequencyCounter.SAMPLE_SIZE; i++)
+            {
+                expected[bytes[(int) i] & 0xFF]++;
+            }
+        }
+
+        assertEquals(0, FrequencyCounter.samplePosition(bytes.length, samples, 0));
+        assertEquals(bytes.length - FrequencyCounter.SAMPLE_SIZE, FrequencyCounter.samplePosition(bytes.length, samples, samples - 1));
+        assertArrayEquals(expected, FrequencyCounter.sampleBytes(Paths.get(fileName), 0.2, 1));
+        assertArrayEquals(expected, FrequencyCounter.sampleBytes(Paths.get(fileName), 0.2, 4));
+
+        // samples that would cover the whole file are not taken
+        assertEquals(0, FrequencyCounter.sampleCount(bytes.length, 1.0));
+        assertArrayEquals(FrequencyCounter.countBytes(Paths.get(fileName), 1),
+                FrequencyCounter.sampleBytes(Paths.get(fileName), 1.0, 1));
+    }
+
+    @Test
+    public void testFixture() throws IOException
+    {
+        long[] frequencies = FrequencyCounter.countBytes(Paths.get("./test/resources/war-and-peace.txt"), 2);
+        long total = 0;
+
+        for (long frequency : frequencies)
+        {
+            total += frequency;
+        }
+
+        assertEquals(3223372, total);
+    }
+}
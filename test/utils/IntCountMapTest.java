@@ -0,0 +1,64 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntCountMapTest {
+
+    @Test
+    public void testMatchesHashMap()
+    {
+        IntCountMap map = new IntCountMap();
+        Map<Integer, Long> expected = new HashMap<>();
+        Random random = new Random(16);
+
+        for (int i = 0; i < 200000; i++)
+        {
+            // mostly CJK, some ASCII and supplementary code points
+            int key = random.nextInt(10) == 0 ? random.nextInt(128)
+                    : random.nextInt(10) == 0 ? 0x1F600 + random.nextInt(80)
+                    : 0x4E00 + random.nextInt(20000);
+
+            map.increment(key);
+            expected.merge(key, 1L, Long::sum);
+        }
+
+        assertEquals(expected.size(), map.size());
+
+        for (Map.Entry<Integer, Long> entry : expected.entrySet())
+        {
+            assertEquals((long) entry.getValue(), map.get(entry.getKey()));
+        }
+
+        assertEquals(0, map.get(0x10FFFF));
+
+        long[] dense = map.toArray();
+        assertEquals(map.maxKey() + 1, dense.length);
+
+        for (int key = 0; key < dense.length; key++)
+        {
+            assertEquals(expected.getOrDefault(key, 0L).longValue(), dense[key]);
+        }
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        IntCountMap map = new IntCountMap(0);
+
+        assertEquals(0, map.size());
+        assertEquals(-1, map.maxKey());
+        assertEquals(0, map.toArray().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeKey()
+    {
+        new IntCountMap().increment(-1);
+    }
+}
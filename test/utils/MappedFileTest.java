@@ -0,0 +1,58 @@
+package utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSmallWindows() throws IOException
+    {
+        // windows of 1000 bytes stand in for the 2 GB limit of a single mapping
+        byte[] data = new byte[10000];
+        new Random(27).nextBytes(data);
+
+        Path fileName = folder.getRoot().toPath().resolve("testMapped.bin");
+        MappedFileOutputStream out = new MappedFileOutputStream(fileName, 1000);
+        out.write(data, 0, 2500);
+        out.write(data[2500]);
+        out.write(data, 2501, data.length - 2501);
+        out.close();
+
+        assertArrayEquals(data, Files.readAllBytes(fileName));
+
+        FileChannel channel = FileChannel.open(fileName, StandardOpenOption.READ);
+        MappedFile mapped = new MappedFile(channel, FileChannel.MapMode.READ_ONLY, 1000, channel.size());
+
+        // inside a window, then straddling two windows
+        assertSlice(data, mapped.slice(3100, 800), 3100);
+        assertSlice(data, mapped.slice(1900, 2200), 1900);
+        assertSlice(data, mapped.slice(9000, 1000), 9000);
+        channel.close();
+    }
+
+    private static void assertSlice(byte[] data, ByteBuffer slice, int from)
+    {
+        byte[] bytes = new byte[slice.remaining()];
+        slice.get(bytes);
+
+        assertEquals(0, slice.remaining());
+        assertArrayEquals(Arrays.copyOfRange(data, from, from + bytes.length), bytes);
+    }
+}